@@ -75,6 +75,8 @@ public class XPCSConfig extends Configuration {
     
     public static final int ANALYSIS_TWOTIMES = 2;
     
+    public static final int ANALYSIS_LINEARTAU = 3;
+    
     public static final String SEP = ",";
     
     public static final String NEWLINE = "\n";
@@ -179,6 +181,169 @@ public class XPCSConfig extends Configuration {
         setBoolean("xpcs.input.kinetics", flag);
     }
     
+    /**
+     * @return true if the frame-offset index stored next to the IMM file 
+     *  should be used (and built when missing). 
+     */
+    public boolean getUseFrameIndex() {
+        return getBoolean("xpcs.input.index", true);
+    }
+    
+    public void setUseFrameIndex(boolean flag) {
+        setBoolean("xpcs.input.index", flag);
+    }
+    
+    /**
+     * @return true if inputs on the local file system should be 
+     *  memory-mapped instead of read through a stream.
+     */
+    public boolean getUseMappedInput() {
+        return getBoolean("xpcs.input.mmap", true);
+    }
+    
+    public void setUseMappedInput(boolean flag) {
+        setBoolean("xpcs.input.mmap", flag);
+    }
+    
+    /**
+     * @return number of frames read ahead by a background thread in the 
+     *  record reader, 0 disables prefetching.
+     */
+    public int getPrefetchFrames() {
+        return getInt("xpcs.input.prefetch", 0);
+    }
+    
+    public void setPrefetchFrames(int frames) {
+        setInt("xpcs.input.prefetch", frames);
+    }
+    
+    /**
+     * @return directory of the pixel-major (time-series) store, empty if 
+     *  the analysis should read the IMM file directly.
+     */
+    public String getSeriesStoreDir() {
+        return get("xpcs.series.dir", "");
+    }
+    
+    public void setSeriesStoreDir(String dir) {
+        set("xpcs.series.dir", dir);
+    }
+    
+    /**
+     * @return true if the pixel-major store has to be (re)built from the 
+     *  IMM file before running the analysis. Otherwise a complete store 
+     *  built from the same input and settings is reused.
+     */
+    public boolean getIsBuildSeriesStore() {
+        return getBoolean("xpcs.series.build", false);
+    }
+    
+    public void setIsBuildSeriesStore(boolean flag) {
+        setBoolean("xpcs.series.build", flag);
+    }
+    
+    /**
+     * @return number of contiguous pixel ranges (blocks) in the store.
+     */
+    public int getSeriesStoreBlocks() {
+        return getInt("xpcs.series.blocks", 16);
+    }
+    
+    public void setSeriesStoreBlocks(int blocks) {
+        setInt("xpcs.series.blocks", blocks);
+    }
+    
+    /**
+     * @return true if the frame filters run as one fused pass over the 
+     *  frame, false to run the filters one after the other.
+     */
+    public boolean getIsFusedFilter() {
+        return getBoolean("xpcs.filter.fused", true);
+    }
+    
+    public void setIsFusedFilter(boolean flag) {
+        setBoolean("xpcs.filter.fused", flag);
+    }
+    
+    /**
+     * @return true if the maps gather the pixel intensities of their split 
+     *  and emit one record per pixel instead of one per pixel and frame.
+     */
+    public boolean getIsAggregatePixels() {
+        return getBoolean("xpcs.mapper.aggregate", false);
+    }
+    
+    public void setIsAggregatePixels(boolean flag) {
+        setBoolean("xpcs.mapper.aggregate", flag);
+    }
+    
+    /**
+     * @return number of (pixel, frame) records a map buffers before it 
+     *  emits the pixels gathered so far.
+     */
+    public int getAggregateRecords() {
+        return getInt("xpcs.mapper.aggregate.records", 4 * 1024 * 1024);
+    }
+    
+    public void setAggregateRecords(int records) {
+        setInt("xpcs.mapper.aggregate.records", records);
+    }
+    
+    /**
+     * @return number of reducers of the G2 job, 0 to derive it from the
+     *  data size and the reducer memory.
+     */
+    public int getG2Reducers() {
+        return getInt("xpcs.g2.reducers", 0);
+    }
+    
+    public void setG2Reducers(int reducers) {
+        setInt("xpcs.g2.reducers", reducers);
+    }
+    
+    /**
+     * @return upper limit of the automatic G2 reducer count.
+     */
+    public int getMaxG2Reducers() {
+        return getInt("xpcs.g2.reducers.max", 1000);
+    }
+    
+    public void setMaxG2Reducers(int reducers) {
+        setInt("xpcs.g2.reducers.max", reducers);
+    }
+    
+    /**
+     * @return heap of a reducer in MB, 0 to read it from the -Xmx option of
+     *  the reduce task JVM.
+     */
+    public int getReducerMemoryMB() {
+        int mb = getInt("xpcs.reducer.memory.mb", 0);
+        if (mb > 0) return mb;
+        
+        String opts = get("mapred.reduce.child.java.opts", 
+                get("mapred.child.java.opts", ""));
+        for (String opt : opts.split("\\s+")) {
+            if (!opt.startsWith("-Xmx") || opt.length() < 6) continue;
+            
+            char unit = Character.toLowerCase(opt.charAt(opt.length() - 1));
+            try {
+                if (Character.isDigit(unit)) {
+                    return (int) (Long.parseLong(opt.substring(4)) >> 20);
+                }
+                long size = Long.parseLong(opt.substring(4, opt.length() - 1));
+                if (unit == 'g') return (int) (size * 1024);
+                if (unit == 'm') return (int) size;
+                if (unit == 'k') return (int) (size >> 10);
+            } catch (NumberFormatException e) {}
+        }
+        
+        return 1024;
+    }
+    
+    public void setReducerMemoryMB(int mb) {
+        setInt("xpcs.reducer.memory.mb", mb);
+    }
+    
     public int getFrameWidth() {
         return getInt("xpcs.frame.width", 0);
     }
@@ -259,6 +424,56 @@ public class XPCSConfig extends Configuration {
         setInt("xpcs.g2.dpl", dpl);
     }
     
+    /**
+     * @return true if the g2 reducers correlate each pixel in one pass with 
+     *  the register cascade correlator, false to rescan the smoothed 
+     *  intensities for every tau.
+     */
+    public boolean getIsStreamingMultitau() {
+        return getBoolean("xpcs.g2.streaming", true);
+    }
+    
+    public void setIsStreamingMultitau(boolean flag) {
+        setBoolean("xpcs.g2.streaming", flag);
+    }
+    
+    /**
+     * @return Pixels the g2 reducer correlates together in one frame-major
+     *  block, 0 to correlate one pixel at a time.
+     */
+    public int getG2BlockPixels() {
+        return getInt("xpcs.g2.block.pixels", 0);
+    }
+    
+    public void setG2BlockPixels(int pixels) {
+        setInt("xpcs.g2.block.pixels", pixels);
+    }
+    
+    /**
+     * @return Cap on the memory of a g2 pixel block in MB, the block is 
+     *  shrunk to fit.
+     */
+    public int getG2BlockMemoryMB() {
+        return getInt("xpcs.g2.block.mb", 256);
+    }
+    
+    public void setG2BlockMemoryMB(int mb) {
+        setInt("xpcs.g2.block.mb", mb);
+    }
+    
+    /**
+     * @return true if the g2 reducers sum their records per partition and 
+     *  tau instead of writing per pixel g2, replacing the norm job with a
+     *  merge of those sums.
+     */
+    public boolean getIsFoldPartitions() {
+        return getBoolean("xpcs.g2.fold.partitions", false);
+    }
+    
+    public void setIsFoldPartitions(boolean flag) {
+        setBoolean("xpcs.g2.fold.partitions", flag);
+    }
+    
     public void setQMap(QMaps qmap) {
         this.qmap = qmap;
     }
@@ -503,6 +718,193 @@ public class XPCSConfig extends Configuration {
         return getInt("xpcs.config.analysis_type", XPCSConfig.ANALYSIS_MULTITAU) == XPCSConfig.ANALYSIS_TWOTIMES;
    }
    
+   /**
+    * @return Pixels the two-time reducer stages before a blocked update of 
+    *  the two-time matrix, 0 to update one pixel at a time.
+    */
+   public int getTwoTimeBlockPixels() {
+        return getInt("xpcs.twotime.block.pixels", 128);
+   }
+   
+   public void setTwoTimeBlockPixels(int pixels) {
+        setInt("xpcs.twotime.block.pixels", pixels);
+   }
+   
+   /**
+    * @return Threads of a two-time reducer for the blocked update, 0 for 
+    *  all processors of the node.
+    */
+   public int getTwoTimeThreads() {
+        return getInt("xpcs.twotime.threads", 0);
+   }
+   
+   public void setTwoTimeThreads(int threads) {
+        setInt("xpcs.twotime.threads", threads);
+   }
+   
+   /**
+    * @return Segments the frames of a two-time q-bin are cut into, every
+    *  tile of segment pairs getting its own reducer. 1 keeps the whole 
+    *  matrix of a bin in one reducer.
+    */
+   public int getTwoTimeSegments() {
+        return getInt("xpcs.twotime.segments", 1);
+   }
+   
+   public void setTwoTimeSegments(int segments) {
+        setInt("xpcs.twotime.segments", segments);
+   }
+   
+   /**
+    * @return Half-width W of the two-time band, only the products of frames
+    *  at most W apart are computed and written. 0 for the whole matrix.
+    */
+   public int getTwoTimeBand() {
+        return getInt("xpcs.twotime.band", 0);
+   }
+   
+   public void setTwoTimeBand(int band) {
+        setInt("xpcs.twotime.band", band);
+   }
+   
+   /**
+    * @return Element type of the two-time results, "double", "float" or 
+    *  "compensated" (float sums with a float of their rounding error, 
+    *  written as floats).
+    */
+   public String getTwoTimePrecision() {
+        return get("xpcs.twotime.precision", "double");
+   }
+   
+   public void setTwoTimePrecision(String precision) {
+        set("xpcs.twotime.precision", precision);
+   }
+   
+   /**
+    * @return true to keep two-time results in direct buffers outside of 
+    *  the reducer heap.
+    */
+   public boolean getIsTwoTimeOffHeap() {
+        return getBoolean("xpcs.twotime.offheap", false);
+   }
+   
+   public void setIsTwoTimeOffHeap(boolean flag) {
+        setBoolean("xpcs.twotime.offheap", flag);
+   }
+   
+   /**
+    * @return Fraction of non zero frames under which a pixel's two-time 
+    *  products are added from its non zero frames instead of a staged 
+    *  block, 0 to always stage. Such a pixel first flushes the pixels 
+    *  staged before it, so q-bins that mix sparse and dense pixels lose 
+    *  most of the blocking. Pixels without non zero frames are skipped.
+    */
+   public float getTwoTimeSparseOccupancy() {
+        return getFloat("xpcs.twotime.sparse.occupancy", 0.25f);
+   }
+   
+   public void setTwoTimeSparseOccupancy(float occupancy) {
+        setFloat("xpcs.twotime.sparse.occupancy", occupancy);
+   }
+   
+   /**
+    * @return Rows and columns of the square chunks of the two-time 
+    *  datasets in the HDF5 result file.
+    */
+   public int getTwoTimeChunk() {
+        return getInt("xpcs.twotime.hdf5.chunk", 512);
+   }
+   
+   public void setTwoTimeChunk(int chunk) {
+        setInt("xpcs.twotime.hdf5.chunk", chunk);
+   }
+   
+   /**
+    * @return Threads reading strips of two-time results while they are 
+    *  written to the HDF5 result file, 0 for all processors.
+    */
+   public int getTwoTimeWriteThreads() {
+        return getInt("xpcs.twotime.hdf5.threads", 0);
+   }
+   
+   public void setTwoTimeWriteThreads(int threads) {
+        setInt("xpcs.twotime.hdf5.threads", threads);
+   }
+   
+   /**
+    * @return Megabytes of two-time strips held at once while writing the 
+    *  HDF5 result file, which bounds the strips read ahead independently 
+    *  of the number of threads. At least one strip is held.
+    */
+   public int getTwoTimeWriteMemoryMB() {
+        return getInt("xpcs.twotime.hdf5.memory.mb", 256);
+   }
+   
+   public void setTwoTimeWriteMemoryMB(int mb) {
+        setInt("xpcs.twotime.hdf5.memory.mb", mb);
+   }
+   
+   /**
+    * @return true to compute the frame sums and smoothed pixel sums of a 
+    *  two-time analysis on the cluster even if the HDF5 file has them.
+    */
+   public boolean getIsTwoTimeComputeSums() {
+        return getBoolean("xpcs.twotime.sums.compute", false);
+   }
+   
+   public void setIsTwoTimeComputeSums(boolean flag) {
+        setBoolean("xpcs.twotime.sums.compute", flag);
+   }
+   
+   /**
+    * @return Reducers smoothing the pixel sums of the static partitions.
+    */
+   public int getTwoTimeSumsReducers() {
+        return getInt("xpcs.twotime.sums.reducers", 16);
+   }
+   
+   public void setTwoTimeSumsReducers(int reducers) {
+        setInt("xpcs.twotime.sums.reducers", reducers);
+   }
+   
+   /**
+    * @return Odd number of pixels of the Savitzky-Golay window smoothing 
+    *  the pixel sums of a static partition.
+    */
+   public int getTwoTimeSGWindow() {
+        return getInt("xpcs.twotime.sg.window", 11);
+   }
+   
+   public void setTwoTimeSGWindow(int window) {
+        setInt("xpcs.twotime.sg.window", window);
+   }
+   
+   /**
+    * @return Order of the Savitzky-Golay polynomial.
+    */
+   public int getTwoTimeSGOrder() {
+        return getInt("xpcs.twotime.sg.order", 2);
+   }
+   
+   public void setTwoTimeSGOrder(int order) {
+        setInt("xpcs.twotime.sg.order", order);
+   }
+   
+   public boolean getIsLinearTau() {
+        return getInt("xpcs.config.analysis_type", XPCSConfig.ANALYSIS_MULTITAU) == XPCSConfig.ANALYSIS_LINEARTAU;
+   }
+   
+   /**
+    * @return Largest tau of the linear tau analysis, 0 for half the frames.
+    */
+   public int getLinearTauMax() {
+        return getInt("xpcs.g2.linear.maxtau", 0);
+   }
+   
+   public void setLinearTauMax(int tau) {
+        setInt("xpcs.g2.linear.maxtau", tau);
+   }
+   
    public void setH5Endpoint(String ep) {
 	   set("xpcs.config.hdf5.endpoint", ep);
    }
@@ -540,5 +942,19 @@ public class XPCSConfig extends Configuration {
    {
        setInt("xpcs.pixel.filter.stride", v);
    }
+
+   /**
+    * @return true if frame striding and summing are applied by the record 
+    *  readers instead of the reducers.
+    */
+   public boolean getIsMapSidePixelFilter()
+   {
+       return getBoolean("xpcs.pixel.filter.mapside", true);
+   }
+
+   public void setIsMapSidePixelFilter(boolean flag)
+   {
+       setBoolean("xpcs.pixel.filter.mapside", flag);
+   }
    
 }
@@ -168,6 +168,8 @@ public class XPCSHDFConfig {
         {
             if (param.equalsIgnoreCase("twotime"))
                 this.config.setAnalysisType(XPCSConfig.ANALYSIS_TWOTIMES);
+            else if (param.equalsIgnoreCase("lineartau"))
+                this.config.setAnalysisType(XPCSConfig.ANALYSIS_LINEARTAU);
             else
                 this.config.setAnalysisType(XPCSConfig.ANALYSIS_MULTITAU);
         }
@@ -56,22 +56,38 @@ import java.util.Collections;
 
 import gov.anl.aps.xpcs.config.XPCSConfig;
 import gov.anl.aps.xpcs.config.XPCSHDFConfig;
+import gov.anl.aps.xpcs.mapred.PartitionAccumulator;
+import gov.anl.aps.xpcs.mapred.io.NormResult;
+import gov.anl.aps.xpcs.mapred.io.PartitionKey;
+import gov.anl.aps.xpcs.mapred.io.PartitionValue;
 import gov.anl.aps.xpcs.mapred.job.G2JobConf;
+import gov.anl.aps.xpcs.mapred.job.FrameSumFileFilter;
 import gov.anl.aps.xpcs.mapred.job.NormJobConf;
+import gov.anl.aps.xpcs.mapred.job.PartitionStatsFileFilter;
+import gov.anl.aps.xpcs.mapred.job.SeriesG2JobConf;
+import gov.anl.aps.xpcs.mapred.job.SeriesTwoTimesJobConf;
+import gov.anl.aps.xpcs.mapred.job.TransposeJobConf;
+import gov.anl.aps.xpcs.mapred.job.TwoTimeSumsJobConf;
 import gov.anl.aps.xpcs.mapred.job.TwoTimesJobConf;
 import gov.anl.aps.xpcs.util.DarkImage;
 import gov.anl.aps.xpcs.util.FlatField;
 import gov.anl.aps.xpcs.util.QMaps;
+import gov.anl.aps.xpcs.util.SeriesStoreManifest;
 import gov.anl.aps.xpcs.util.FrameSum;
 import gov.anl.aps.xpcs.util.PixelSum;
 import gov.anl.aps.xpcs.util.SmoothedSG;
 import gov.anl.aps.xpcs.util.ResultCollector;
 import gov.anl.aps.xpcs.util.HDF5ResultHelper;
+import gov.anl.aps.xpcs.util.TwoTimeSums;
 
 import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.hadoop.mapred.RunningJob;
@@ -154,7 +170,13 @@ public class Application extends Configured implements Tool {
 		int ret = 0;
 
 		try {
-			if (this.configuration.getAnalysisType() == XPCSConfig.ANALYSIS_TWOTIMES) {
+			if (isSeriesStoreEnabled()) {
+				buildSeriesStore();
+			}
+
+			if (stopRequested) {
+				ret = 1;
+			} else if (this.configuration.getAnalysisType() == XPCSConfig.ANALYSIS_TWOTIMES) {
 				runTwoTimes();
 			} else {
 				runMultiTau();
@@ -181,6 +203,15 @@ public class Application extends Configured implements Tool {
 	}
 
 	private void runTwoTimes() throws Exception {
+		if (configuration.getIsTwoTimeComputeSums() || 
+				configuration.getFrameSum() == null || 
+				configuration.getSmoothedSG() == null) {
+			runTwoTimeSums();
+			if (stopRequested) {
+				return;
+			}
+		}
+
 		FrameSum fsum = configuration.getFrameSum();
 		fsum.writeHDFS(
 			configuration.getOutputDir() + "/frameSum", 
@@ -194,7 +225,15 @@ public class Application extends Configured implements Tool {
 			configuration.getOutputDir() + "/smoothedSG", 
 			configuration);
 
-		TwoTimesJobConf twotimes = new TwoTimesJobConf(configuration);
+		if (isSeriesStoreEnabled() && configuration.getTwoTimeSegments() > 1) {
+			// Every map of the series store job computes a whole bin.
+			logger.info("Two-time tiles are not used with the series store");
+			configuration.setTwoTimeSegments(1);
+		}
+
+		TwoTimesJobConf twotimes = isSeriesStoreEnabled() ? 
+				new SeriesTwoTimesJobConf(configuration) : 
+				new TwoTimesJobConf(configuration);
 		twotimes.setJarByClass(Application.class);
 
 		JobClient jobClient = new JobClient(configuration);
@@ -215,8 +254,33 @@ public class Application extends Configured implements Tool {
 		HDF5ResultHelper.writeTwoTime(configuration);
 	}
 
+	/**
+	 * Compute the frame sums and the smoothed pixel sums the two-time 
+	 * reducers normalize with, for HDF5 files that don't have them.
+	 */
+	private void runTwoTimeSums() throws Exception {
+		logger.info("Computing frame sums and smoothed pixel sums");
+
+		TwoTimeSumsJobConf sums = new TwoTimeSumsJobConf(configuration);
+		sums.setJarByClass(Application.class);
+
+		JobClient jobClient = new JobClient(configuration);
+		RunningJob runningJob = jobClient.submitJob(sums);
+
+		runAndMonitorJob(runningJob);
+
+		if (stopRequested) {
+			return;
+		}
+
+		TwoTimeSums.collect(configuration, 
+				new Path(configuration.getOutputDir() + "/sums"));
+	}
+
 	private void runMultiTau() throws Exception {
-		G2JobConf g2JobConf = new G2JobConf(configuration);
+		G2JobConf g2JobConf = isSeriesStoreEnabled() ? 
+				new SeriesG2JobConf(configuration) : 
+				new G2JobConf(configuration);
 		g2JobConf.setJarByClass(Application.class);
 
 		JobClient jobClient = new JobClient(configuration);
@@ -227,6 +291,10 @@ public class Application extends Configured implements Tool {
 		if (stopRequested) {
 			return;
 		}
+
+		if (isSeriesStoreEnabled()) {
+			copySeriesFrameSums();
+		}
 		
 		// Once the G2 job finish, we can collect some of the results and
 		// do some local processing
@@ -235,26 +303,32 @@ public class Application extends Configured implements Tool {
 		statisticsThread.start();
 
 		
-		NormJobConf normJobConf = new NormJobConf(configuration);
-		normJobConf.setJarByClass(Application.class);
-		
-		jobClient = new JobClient(configuration);
-		runningJob = jobClient.submitJob(normJobConf);
-
-		runAndMonitorJob(runningJob);
-
-		if (stopRequested) {
+		if (configuration.getIsFoldPartitions()) {
+			// The g2 reducers already summed their records per partition.
 			statisticsThread.join();
-			return;
-		}
+			mergePartitionStats();
+		} else {
+			NormJobConf normJobConf = new NormJobConf(configuration);
+			normJobConf.setJarByClass(Application.class);
+			
+			jobClient = new JobClient(configuration);
+			runningJob = jobClient.submitJob(normJobConf);
+
+			runAndMonitorJob(runningJob);
+
+			if (stopRequested) {
+				statisticsThread.join();
+				return;
+			}
 
-		// We need to make sure that relevant results from the first
-		// job are collected/written before recording results from the norm
-		// We might be able to relax this restriction, depending on how final
-		// results are gathered.
-		statisticsThread.join();
+			// We need to make sure that relevant results from the first
+			// job are collected/written before recording results from the norm
+			// We might be able to relax this restriction, depending on how final
+			// results are gathered.
+			statisticsThread.join();
 
-		copyG2NormResults();
+			copyG2NormResults();
+		}
 
 		mergeResults(configuration.getOutputDir() + File.separator + "norm",
 				configuration.getOutputDir() + File.separator + "norm");
@@ -263,6 +337,60 @@ public class Application extends Configured implements Tool {
 		HDF5ResultHelper.writeMultiTau(configuration, output);
 	}
 
+	private boolean isSeriesStoreEnabled() {
+		return !configuration.getSeriesStoreDir().isEmpty();
+	}
+
+	/**
+	 * Transpose the IMM file into the pixel-major store, unless a complete 
+	 * store built from the same input and settings can be reused.
+	 */
+	private void buildSeriesStore() throws Exception {
+		Path store = new Path(configuration.getSeriesStoreDir());
+		FileSystem fs = store.getFileSystem(configuration);
+
+		if (fs.exists(store)) {
+			if (!configuration.getIsBuildSeriesStore()) {
+				if (SeriesStoreManifest.matches(configuration, store)) {
+					logger.info("Reusing pixel series store " + store);
+					return;
+				}
+				logger.info("Pixel series store " + store + 
+						" is incomplete or was built from other settings, rebuilding");
+			}
+			fs.delete(store, true);
+		}
+
+		TransposeJobConf transpose = new TransposeJobConf(configuration);
+		transpose.setJarByClass(Application.class);
+
+		JobClient jobClient = new JobClient(configuration);
+		RunningJob runningJob = jobClient.submitJob(transpose);
+
+		runAndMonitorJob(runningJob);
+
+		if (!runningJob.isSuccessful()) {
+			throw new IOException("Failed to build pixel series store " + store);
+		}
+		SeriesStoreManifest.write(configuration, store);
+	}
+
+	/**
+	 * Frame sums are produced while building the store, place them with the
+	 * g2 results where the result collector expects them.
+	 */
+	private void copySeriesFrameSums() throws IOException {
+		Path store = new Path(configuration.getSeriesStoreDir());
+		Path g2 = new Path(configuration.getOutputDir() + "/g2");
+		FileSystem fs = store.getFileSystem(configuration);
+
+		FileStatus frameSums[] = fs.listStatus(store, new FrameSumFileFilter());
+		for (FileStatus f : frameSums) {
+			FileUtil.copy(fs, f.getPath(), fs, 
+					new Path(g2, f.getPath().getName()), false, configuration);
+		}
+	}
+
 	private void runAndMonitorJob(RunningJob runningJob) {
 
 		MonitorJob monitorjob = new MonitorJob(runningJob);
@@ -318,6 +446,47 @@ public class Application extends Configured implements Tool {
 		}
 	}
 
+	/**
+	 * Merge the per reducer partition sums of the g2 job into the norm 
+	 * results, in the format the norm job writes them.
+	 */
+	private void mergePartitionStats() throws IOException {
+		QMaps map = configuration.getMaps();
+		PartitionAccumulator stats = new PartitionAccumulator(
+				map.getStaticMapping(), map.getDynamicMapping());
+
+		Path g2 = new Path(configuration.getOutputDir() + "/g2");
+		FileSystem fs = g2.getFileSystem(configuration);
+		PartitionKey key = new PartitionKey();
+		PartitionValue value = new PartitionValue();
+
+		for (FileStatus f : fs.listStatus(g2, new PartitionStatsFileFilter())) {
+			SequenceFile.Reader reader = 
+					new SequenceFile.Reader(fs, f.getPath(), configuration);
+			try {
+				while (reader.next(key, value)) {
+					stats.add(key, value);
+				}
+			} finally {
+				reader.close();
+			}
+		}
+
+		File norm = new File(configuration.getOutputDir() + File.separator + "norm");
+		norm.mkdirs();
+		final BufferedWriter out = new BufferedWriter(
+				new FileWriter(new File(norm, "part-00000")));
+		try {
+			stats.collectNorm(new OutputCollector<PartitionKey, NormResult>() {
+				public void collect(PartitionKey k, NormResult v) throws IOException {
+					out.write(k + "\t" + v + "\n");
+				}
+			});
+		} finally {
+			out.close();
+		}
+	}
+
 	private void copyG2NormResults() throws IOException {
 		Path normOutput = new Path(this.configuration.getOutputDir() + "/norm");
 		FileSystem hdfs = FileSystem.get(this.configuration);
@@ -52,11 +52,17 @@ import java.util.Iterator;
 import gov.anl.aps.xpcs.config.XPCSConfig;
 import gov.anl.aps.xpcs.mapred.io.G2Key;
 import gov.anl.aps.xpcs.mapred.io.G2Value;
+import gov.anl.aps.xpcs.mapred.io.PixelFramesValue;
 import gov.anl.aps.xpcs.mapred.io.PixelKey;
 import gov.anl.aps.xpcs.mapred.io.PixelSumValue;
 import gov.anl.aps.xpcs.mapred.io.PixelValue;
+import gov.anl.aps.xpcs.mapred.pixelfilter.FrameCoarsening;
 import gov.anl.aps.xpcs.mapred.pixelfilter.PixelFilterStride;
 import gov.anl.aps.xpcs.mapred.pixelfilter.PixelFilterSum;
+import gov.anl.aps.xpcs.multitau.BlockCorrelator;
+import gov.anl.aps.xpcs.multitau.G2;
+import gov.anl.aps.xpcs.multitau.MultiTauCorrelator;
+import gov.anl.aps.xpcs.util.QMaps;
 
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.MapReduceBase;
@@ -122,6 +128,25 @@ public abstract class AbstractG2Reducer extends MapReduceBase implements
      * Kinetics slices per frame
      */
     protected int slicesPerFrame;
+    
+    /**
+     * One pass correlator, null to rescan the intensities for every tau.
+     */
+    protected MultiTauCorrelator correlator = null;
+    
+    /**
+     * Frame-major block of pixels correlated together, null when pixels 
+     * are correlated one at a time.
+     */
+    protected BlockCorrelator block = null;
+    
+    /**
+     * Per partition sums of the g2 records, null when records are written
+     * per pixel.
+     */
+    private PartitionAccumulator partitionStats = null;
+    
+    private Reporter reporter = Reporter.NULL;
 
     private PixelFilterStride pixelFilterStride = null;
 
@@ -131,6 +156,11 @@ public abstract class AbstractG2Reducer extends MapReduceBase implements
 
     private double[] tempIntensities;
 
+    /**
+     * Frames were already strided/summed by the record reader.
+     */
+    private boolean isMapSideFilter = false;
+
     @Override
     public void configure(JobConf job) {
         super.configure(job);
@@ -140,7 +170,12 @@ public abstract class AbstractG2Reducer extends MapReduceBase implements
         frameWindow = config.getStaticWindow();
         slicesPerFrame = config.getLastSlice() - config.getFirstSlice() + 1;
         
-        tempIntensities = new double[frameCount];
+        isMapSideFilter = FrameCoarsening.isMapSide(config);
+        if (isMapSideFilter) {
+            tempIntensities = new double[new FrameCoarsening(config).getFrameCount()];
+        } else {
+            tempIntensities = new double[frameCount];
+        }
 
         if (frameCount < 1) {
             throw new RuntimeException("Failed to read frame count in g2 job");
@@ -152,10 +187,29 @@ public abstract class AbstractG2Reducer extends MapReduceBase implements
         pixelFilterStride = new PixelFilterStride(config);
         pixelFilterSum = new PixelFilterSum(config);
 
+        if (config.getIsFoldPartitions()) {
+            try {
+                QMaps partitions = new QMaps(config);
+                partitionStats = new PartitionAccumulator(
+                        partitions.getStaticMapping(), 
+                        partitions.getDynamicMapping());
+            } catch (IOException e) {
+                throw new RuntimeException("Could not read partition file", e);
+            }
+        }
+
+        if (config.getIsStreamingMultitau()) {
+            correlator = new MultiTauCorrelator(dpl, 
+                    G2.calculateLevelMax(tempIntensities.length, dpl));
+        }
+
     }
     
     @Override
     public void close() throws IOException {
+        if (partitionStats != null) {
+            partitionStats.collect(mos.getCollector("partitions", reporter));
+        }
         this.mos.close();
     }
     
@@ -164,19 +218,66 @@ public abstract class AbstractG2Reducer extends MapReduceBase implements
             OutputCollector<G2Key, G2Value> output, Reporter reporter)
             throws IOException {
 
+        this.reporter = reporter;
         Arrays.fill(tempIntensities, 0.0d);
         readIntensities(values);
         multitau(key, output, reporter);
     }
     
+    /**
+     * Compute g2 from the per split records of a pixel, as emitted by 
+     * PixelAggregateMapper.
+     */
+    public void reduceFrames(PixelKey key, Iterator<PixelFramesValue> values,
+            OutputCollector<G2Key, G2Value> output, Reporter reporter)
+            throws IOException {
+
+        this.reporter = reporter;
+        Arrays.fill(tempIntensities, 0.0d);
+        while (values.hasNext()) {
+            PixelFramesValue value = values.next();
+            for (int i = 0; i < value.getCount(); i++) {
+                tempIntensities[value.getFrame(i)] += value.getValue(i);
+            }
+        }
+        applyPixelFilters();
+        multitau(key, output, reporter);
+    }
+    
+    /**
+     * Compute g2 from the complete series of a pixel, as stored in the 
+     * pixel-major store.
+     */
+    public void reduceSeries(PixelKey key, float[] series, int length,
+            OutputCollector<G2Key, G2Value> output, Reporter reporter)
+            throws IOException {
+
+        this.reporter = reporter;
+        Arrays.fill(tempIntensities, 0.0d);
+        int n = Math.min(length, tempIntensities.length);
+        for (int i = 0; i < n; i++) {
+            tempIntensities[i] = series[i];
+        }
+        applyPixelFilters();
+        multitau(key, output, reporter);
+    }
+    
     protected void readIntensities(Iterator<PixelValue> it) {
 
         while (it.hasNext()) {
             PixelValue value = it.next();
-            tempIntensities[value.getFrameIndex()] = value.getPixelIntensity();
+            // With map side summing a coarse frame cut by a split boundary
+            //  arrives in parts.
+            tempIntensities[value.getFrameIndex()] += value.getPixelIntensity();
         }
 
+        applyPixelFilters();
+    }
+
+    private void applyPixelFilters() {
         intensities = tempIntensities;
+
+        if (isMapSideFilter) return;
         
         if (this.config.getPixelFilterStride() > 1) {
             intensities = pixelFilterStride.apply(intensities);
@@ -189,6 +290,12 @@ public abstract class AbstractG2Reducer extends MapReduceBase implements
 
     protected void emit(double BigG2[], OutputCollector<G2Key, G2Value> output)
             throws IOException {
+        if (partitionStats != null) {
+            partitionStats.add(g2Key.getX(), g2Key.getY(), g2Key.getTau(), 
+                    BigG2[0], BigG2[1], BigG2[2]);
+            return;
+        }
+        
         g2Value.setG2(BigG2[0]);
         g2Value.setiFuture(BigG2[1]);
         g2Value.setiPast(BigG2[2]);
@@ -209,6 +316,60 @@ public abstract class AbstractG2Reducer extends MapReduceBase implements
         return (lastframe > fc);
     }
     
+    /**
+     * Run the multi-tau levels over the first 'frames' intensities and emit
+     * g2 for every tau, starting the key tau at 1.
+     */
+    protected void multitauLevels(int frames, double[] G2result, 
+            OutputCollector<G2Key, G2Value> output) throws IOException {
+        
+        if (correlator != null) {
+            correlator.correlate(intensities, frames);
+        }
+        emitLevels(frames, G2result, output, -1);
+    }
+    
+    /**
+     * Emit g2 for every tau of the current key, taken from pixel 
+     * blockPixel of the correlated block, or from the current intensities
+     * when blockPixel is negative.
+     */
+    protected void emitLevels(int frames, double[] G2result, 
+            OutputCollector<G2Key, G2Value> output, int blockPixel) 
+                    throws IOException {
+        
+        boolean isRescan = blockPixel < 0 && correlator == null;
+        int maxLevel = G2.calculateLevelMax(frames, dpl);
+        int tau = 1;
+        int level = 0;
+        while (level <= maxLevel) {
+            int tauIncrement = (int) Math.pow(2, level);
+            if (isRescan) {
+                G2.smooth(intensities, frames, tauIncrement);
+            }
+            int dplCount = G2.calculateDelayCount(dpl, level);
+            for (int delayIndex = 0; delayIndex < dplCount; delayIndex++) {
+                
+                //TODO get rid of this check
+                if (isOddFrame(tau+tauIncrement, level)) {
+                    break;
+                }
+                
+                g2Key.setTau(tau);
+                if (blockPixel >= 0) {
+                    block.getG2(G2result, blockPixel, tau, level);
+                } else if (correlator != null) {
+                    correlator.getG2(G2result, tau, level);
+                } else {
+                    G2.computeG2(intensities, G2result, frames, tau, level);
+                }
+                emit(G2result, output);
+                tau += tauIncrement;
+            }
+            level++;
+        }
+    }
+    
     protected void emitPixelSums(double[] intensities, 
                                  PixelKey key, 
                                  Reporter reporter) throws IOException {
@@ -246,6 +407,18 @@ public abstract class AbstractG2Reducer extends MapReduceBase implements
         }
     }
     
+    /**
+     * Reducer for the configured analysis, not yet configured.
+     */
+    public static AbstractG2Reducer newReducer(XPCSConfig config) {
+        if (config.getIsKinetics()) {
+            return new G2KineticsReducer();
+        } else if (config.getIsLinearTau()) {
+            return new G2LinearReducer();
+        }
+        return new G2Reducer();
+    }
+    
     protected abstract void multitau(PixelKey pixelKey,
         OutputCollector<G2Key, G2Value> output, Reporter reporter) 
             throws IOException;
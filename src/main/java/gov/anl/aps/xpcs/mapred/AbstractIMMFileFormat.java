@@ -0,0 +1,165 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.mapred;
+
+import gov.anl.aps.xpcs.config.XPCSConfig;
+import gov.anl.aps.xpcs.util.IMMIndex;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.net.NetworkTopology;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Common input format for IMM files. Splits are computed from the frame 
+ * index of the file (see IMMIndex) so that every split starts exactly at
+ * a frame header and only frames in [firstFrame, lastFrame] are handed to
+ * the record readers.
+ */
+public abstract class AbstractIMMFileFormat<K, V> extends FileInputFormat<K, V> {
+
+    private static final Logger logger = LoggerFactory.getLogger(AbstractIMMFileFormat.class.getName());
+
+    private static final String SPLIT_MINSIZE = 
+            "mapreduce.input.fileinputformat.split.minsize";
+
+    @Override
+    public InputSplit[] getSplits(JobConf job, int numSplits) throws IOException {
+        XPCSConfig config = new XPCSConfig(job);
+        FileStatus[] files = listStatus(job);
+
+        long totalSize = 0;
+        for (FileStatus file : files) {
+            totalSize += file.getLen();
+        }
+
+        long goalSize = totalSize / (numSplits == 0 ? 1 : numSplits);
+        long minSize = Math.max(job.getLong(SPLIT_MINSIZE, 1), 1);
+
+        ArrayList<FileSplit> splits = new ArrayList<FileSplit>(numSplits);
+        NetworkTopology clusterMap = new NetworkTopology();
+
+        for (FileStatus file : files) {
+            if (file.isDirectory() || file.getLen() == 0) continue;
+
+            long splitSize = computeSplitSize(goalSize, minSize, file.getBlockSize());
+            addFileSplits(job, config, file, splitSize, clusterMap, splits);
+        }
+
+        logger.info("Total # of frame aligned splits: " + splits.size());
+
+        return splits.toArray(new FileSplit[splits.size()]);
+    }
+
+    /**
+     * Walk the frame index of a single IMM file and cut it into splits 
+     * of roughly splitSize bytes. Frames outside the analysis range are
+     * not part of any split.
+     */
+    protected void addFileSplits(JobConf job, XPCSConfig config, 
+            FileStatus file, long splitSize, NetworkTopology clusterMap,
+            List<FileSplit> splits) throws IOException {
+
+        Path path = file.getPath();
+        FileSystem fs = path.getFileSystem(job);
+        BlockLocation[] blkLocations = fs.getFileBlockLocations(file, 0, file.getLen());
+
+        // The index is stored next to the file, so only the first analysis
+        //  of a file has to walk the header chain. 
+        IMMIndex index = IMMIndex.getOrBuild(config, path);
+        if (index == null) {
+            index = IMMIndex.build(fs, path, config.getIsSparse());
+        }
+
+        int frameStart = config.getFirstFrame();
+        int frameEnd = config.getLastFrame();
+        long length = file.getLen();
+
+        int first = index.find(frameStart, 0);
+        long splitStart = -1;
+        long splitEnd = -1;
+
+        for (int i = first; i < index.size(); i++) {
+            // Frames are stored in order, nothing else to collect. 
+            if (index.getFrameIndex(i) > frameEnd) break;
+
+            long pos = index.getOffset(i);
+            if (splitStart < 0) {
+                splitStart = pos;
+            } else if (pos - splitStart >= splitSize) {
+                splits.add(makeFrameSplit(path, splitStart, pos - splitStart,
+                        blkLocations, clusterMap));
+                splitStart = pos;
+            }
+            splitEnd = index.getEndOffset(i);
+        }
+
+        // Close the last split at the end of the last frame in range. 
+        if (splitStart >= 0) {
+            splitEnd = Math.min(splitEnd, length);
+            splits.add(makeFrameSplit(path, splitStart, splitEnd - splitStart,
+                    blkLocations, clusterMap));
+        }
+    }
+
+    private FileSplit makeFrameSplit(Path path, long start, long length,
+            BlockLocation[] blkLocations, NetworkTopology clusterMap) 
+                    throws IOException {
+        String[] hosts = getSplitHosts(blkLocations, start, length, clusterMap);
+        return new FileSplit(path, start, length, hosts);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.mapred;
+
+import gov.anl.aps.xpcs.mapred.io.Frame;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads and filters frames on a background thread while the map thread 
+ * consumes the previous ones. Frames are handed over through a fixed ring
+ * of Frame buffers, so memory is bounded by the prefetch depth. 
+ */
+public class FramePrefetcher implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FramePrefetcher.class.getName());
+
+    /**
+     * Source of filtered frames, called from the prefetch thread only.
+     */
+    public static interface FrameReader {
+        /**
+         * Read and filter the next frame into f.
+         * @return false when there are no more frames. 
+         */
+        public boolean readFrame(Frame f) throws IOException;
+    }
+
+    /**
+     * Marker queued after the last frame.
+     */
+    private static final Frame END = new Frame(0, 0, 0);
+
+    private final ArrayBlockingQueue<Frame> free;
+
+    private final ArrayBlockingQueue<Frame> full;
+
+    private final FrameReader reader;
+
+    private final Frame working;
+
+    private Thread thread = null;
+
+    /**
+     * Frame currently owned by the consumer. 
+     */
+    private Frame inUse = null;
+
+    private volatile boolean stopped = false;
+
+    private volatile IOException error = null;
+
+    /**
+     * @param reader  source of frames
+     * @param working frame the reader decodes into, owned by the prefetch thread
+     * @param depth   number of frames buffered ahead of the consumer
+     */
+    public FramePrefetcher(FrameReader reader, Frame working, int depth) {
+        this.reader = reader;
+        this.working = working;
+        this.free = new ArrayBlockingQueue<Frame>(depth);
+        // One extra place for the end marker.
+        this.full = new ArrayBlockingQueue<Frame>(depth + 1);
+
+        for (int i = 0; i < depth; i++) {
+            free.add(new Frame(working.getWidth(), working.getHeight(), 0));
+        }
+    }
+
+    public void start() {
+        thread = new Thread(this, "imm-prefetch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!stopped) {
+                Frame slot = free.take();
+                if (!reader.readFrame(working)) break;
+
+                slot.copyFrom(working);
+                full.put(slot);
+            }
+        } catch (InterruptedException e) {
+            // Closed by the consumer.
+        } catch (IOException e) {
+            error = e;
+        } catch (Throwable e) {
+            // Errors too, e.g. running out of memory on a large frame, must 
+            //  fail the task instead of ending the split early.
+            error = new IOException("Failed to prefetch frame", e);
+        } finally {
+            full.offer(END);
+        }
+    }
+
+    /**
+     * Wait for the next frame. The frame returned by the previous call is 
+     *  given back to the ring.
+     * @return the next frame, null when there are no more frames.
+     */
+    public Frame take() throws IOException {
+        if (inUse != null) {
+            free.offer(inUse);
+            inUse = null;
+        }
+
+        Frame f = null;
+        try {
+            f = full.take();
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while waiting for frame");
+        }
+
+        if (f == END) {
+            // Keep the marker for subsequent calls.
+            full.offer(END);
+            if (error != null) throw error;
+            return null;
+        }
+
+        inUse = f;
+        return f;
+    }
+
+    /**
+     * Stop the prefetch thread and wait for it to exit.
+     */
+    public void close() {
+        stopped = true;
+        if (thread == null) return;
+
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            logger.warn("Interrupted while stopping prefetch thread");
+        }
+        thread = null;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.mapred;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Collects (pixel, frame, intensity) records of a map task in primitive 
+ * arrays, and hands them out grouped by pixel. Records are grouped with a 
+ * counting sort on the pixel index, which keeps the frame order of every
+ * pixel.
+ */
+public class FrameSeriesBuffer {
+
+    public static interface SeriesCollector {
+        /**
+         * Called once per pixel with count records starting at offset.
+         */
+        public void collect(int pixel, int[] frames, float[] values, 
+                int offset, int count) throws IOException;
+    }
+
+    private int[] pixels;
+
+    private int[] frames;
+
+    private float[] values;
+
+    private int size = 0;
+
+    private int[] sortedFrames;
+
+    private float[] sortedValues;
+
+    /**
+     * Start of every pixel in the sorted arrays, one extra for the end.
+     */
+    private int[] starts;
+
+    /**
+     * @param pixelCount total number of pixels, pixel indices must be smaller
+     * @param capacity   number of records buffered before a flush is needed
+     */
+    public FrameSeriesBuffer(int pixelCount, int capacity) {
+        pixels = new int[capacity];
+        frames = new int[capacity];
+        values = new float[capacity];
+        sortedFrames = new int[capacity];
+        sortedValues = new float[capacity];
+        starts = new int[pixelCount + 1];
+    }
+
+    public void add(int pixel, int frame, float value) {
+        pixels[size] = pixel;
+        frames[size] = frame;
+        values[size] = value;
+        size++;
+    }
+
+    public boolean isFull() {
+        return size == pixels.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Hand out the buffered records grouped by pixel and empty the buffer.
+     */
+    public void flush(SeriesCollector collector) throws IOException {
+        if (size == 0) return;
+
+        int pixelCount = starts.length - 1;
+        Arrays.fill(starts, 0);
+
+        for (int i = 0; i < size; i++) {
+            starts[pixels[i] + 1]++;
+        }
+        for (int p = 0; p < pixelCount; p++) {
+            starts[p + 1] += starts[p];
+        }
+
+        // starts[p] is used as the insert position, it ends up at the start 
+        //  of pixel p + 1.
+        for (int i = 0; i < size; i++) {
+            int pos = starts[pixels[i]]++;
+            sortedFrames[pos] = frames[i];
+            sortedValues[pos] = values[i];
+        }
+
+        int start = 0;
+        for (int p = 0; p < pixelCount; p++) {
+            int end = starts[p];
+            if (end > start) {
+                collector.collect(p, sortedFrames, sortedValues, start, end - start);
+            }
+            start = end;
+        }
+
+        size = 0;
+    }
+}
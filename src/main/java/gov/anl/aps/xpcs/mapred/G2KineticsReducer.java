@@ -93,26 +93,7 @@ public class G2KineticsReducer extends AbstractG2Reducer {
         // Average out slices to form a single frame out of slicesPerFrame
         // The G2 for frame is now going to be on total number of frames averaged out. 
         int frames = G2.avergeOutSlices(intensities, slicesPerFrame);
-        int maxLevel = G2.calculateLevelMax(frames, dpl);
-        tau = 1;
-        int level = 0;
-        while (level <= maxLevel) {
-            int tauIncrement = (int) Math.pow(2, level);
-            G2.smooth(intensities, frames, tauIncrement);
-            int dplCount = G2.calculateDelayCount(dpl, level);
-            for (int delayIndex = 0; delayIndex < dplCount; delayIndex++) {
-                
-                if (isOddFrame(tau+tauIncrement, level)) {
-                    break;
-                }
-                
-                g2Key.setTau(tau);
-                G2.computeG2(intensities, G2result, frames, tau, level);
-                emit(G2result, output);
-                tau += tauIncrement;
-            }
-            level++;
-        }
+        multitauLevels(frames, G2result, output);
     }
 
 }
@@ -0,0 +1,98 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.mapred;
+
+import java.io.IOException;
+
+import gov.anl.aps.xpcs.config.XPCSConfig;
+import gov.anl.aps.xpcs.mapred.io.G2Key;
+import gov.anl.aps.xpcs.mapred.io.G2Value;
+import gov.anl.aps.xpcs.mapred.io.PixelKey;
+import gov.anl.aps.xpcs.multitau.LinearTauCorrelator;
+
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * G2 at every integer tau from 1 to xpcs.g2.linear.maxtau (half the frames
+ * by default), from the FFT of each pixel series. Results are the same 
+ * (G2, IF, IP) records as the multi-tau reducer, so normalization and the
+ * HDF5 writer pick up the taus unchanged.
+ */
+public class G2LinearReducer extends AbstractG2Reducer {
+    
+    private LinearTauCorrelator linear = new LinearTauCorrelator();
+    
+    private int maxTau = 0;
+    
+    @Override
+    public void configure(JobConf job) {
+        super.configure(job);
+        maxTau = new XPCSConfig(job).getLinearTauMax();
+    }
+  
+    protected void multitau(PixelKey pixelKey,
+                            OutputCollector<G2Key, G2Value> output,
+                            Reporter reporter) throws IOException {
+        
+        g2Key.setX(pixelKey.getX());
+        g2Key.setY(pixelKey.getY());
+        
+        emitPixelSums(intensities, pixelKey, reporter);
+        
+        int frames = intensities.length;
+        int lastTau = LinearTauCorrelator.getMaxTau(frames, maxTau);
+        linear.correlate(intensities, frames, lastTau);
+        
+        double[] G2result = new double[3];
+        for (int tau = 1; tau <= lastTau; tau++) {
+            g2Key.setTau(tau);
+            linear.getG2(G2result, tau);
+            emit(G2result, output);
+        }
+    }
+}
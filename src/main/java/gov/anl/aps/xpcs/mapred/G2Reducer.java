@@ -55,6 +55,7 @@ import gov.anl.aps.xpcs.mapred.io.G2Value;
 import gov.anl.aps.xpcs.mapred.io.PixelKey;
 import gov.anl.aps.xpcs.mapred.io.PixelSumValue;
 import gov.anl.aps.xpcs.mapred.io.PixelValue;
+import gov.anl.aps.xpcs.multitau.BlockCorrelator;
 import gov.anl.aps.xpcs.multitau.G2;
 
 import org.apache.hadoop.mapred.JobConf;
@@ -66,42 +67,89 @@ import org.apache.hadoop.mapred.lib.MultipleOutputs;
 
 public class G2Reducer extends AbstractG2Reducer {
     
+    private int blockPixels = 0;
+    
+    private long blockBytes = 0;
+    
+    private short[] blockX = null;
+    
+    private short[] blockY = null;
+    
+    private OutputCollector<G2Key, G2Value> blockOutput = null;
+    
+    private double[] G2result = new double[3];
+    
     @Override
     public void configure(JobConf job) {
         super.configure(job);
+        XPCSConfig config = new XPCSConfig(job);
+        blockPixels = config.getG2BlockPixels();
+        blockBytes = config.getG2BlockMemoryMB() * 1024L * 1024L;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (block != null && block.getCount() > 0) {
+            flushBlock();
+        }
+        super.close();
     }
   
     protected void multitau(PixelKey pixelKey,
                             OutputCollector<G2Key, G2Value> output,
                             Reporter reporter) throws IOException {
         
+        emitPixelSums(intensities, pixelKey, reporter);
+        
+        if (blockPixels > 0) {
+            addToBlock(pixelKey, output);
+            return;
+        }
+        
         g2Key.setX(pixelKey.getX());
         g2Key.setY(pixelKey.getY());
+
+        multitauLevels(intensities.length, G2result, output);
+    }
+    
+    /**
+     * Queue the pixel in the current block, correlating and emitting the 
+     * block once it is full.
+     */
+    private void addToBlock(PixelKey pixelKey,
+                            OutputCollector<G2Key, G2Value> output) 
+                                    throws IOException {
         
-        emitPixelSums(intensities, pixelKey, reporter);
+        // The series length is only known after the pixel filters ran.
+        if (block == null) {
+            int frames = intensities.length;
+            int capacity = BlockCorrelator.getCapacity(frames, blockPixels, 
+                    blockBytes);
+            block = new BlockCorrelator(dpl, G2.calculateLevelMax(frames, dpl), 
+                    frames, capacity);
+            blockX = new short[capacity];
+            blockY = new short[capacity];
+        }
         
-
-        double[] G2result = new double[3];
-        int maxLevel = G2.calculateLevelMax(intensities.length, dpl);
-        int tau = 1;
-        int level = 0;
-        while (level <= maxLevel) {
-            int tauIncrement = (int) Math.pow(2, level);
-            G2.smooth(intensities, intensities.length, tauIncrement);
-            int dplCount = G2.calculateDelayCount(dpl, level);
-            for (int delayIndex = 0; delayIndex < dplCount; delayIndex++) {
-                
-                //TODO get rid of this check
-                if (isOddFrame(tau+tauIncrement, level)) {
-                    break;
-                }
-                
-                g2Key.setTau(tau);
-                G2.computeG2(intensities, G2result, intensities.length, tau, level);
-                emit(G2result, output);
-                tau += tauIncrement;
-            }
-            level++;
+        blockOutput = output;
+        int p = block.add(intensities);
+        blockX[p] = pixelKey.getX();
+        blockY[p] = pixelKey.getY();
+        
+        if (block.isFull()) {
+            flushBlock();
+        }
+    }
+    
+    private void flushBlock() throws IOException {
+        block.correlate();
+        
+        int frames = intensities.length;
+        for (int p = 0; p < block.getCount(); p++) {
+            g2Key.setX(blockX[p]);
+            g2Key.setY(blockY[p]);
+            emitLevels(frames, G2result, blockOutput, p);
         }
+        block.clear();
     }
 }
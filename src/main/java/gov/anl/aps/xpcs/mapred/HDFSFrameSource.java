@@ -0,0 +1,106 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.mapred;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.fs.ByteBufferReadable;
+import org.apache.hadoop.fs.FSDataInputStream;
+
+/**
+ * Frame source on top of an HDFS stream. When the stream supports it, data
+ * is read straight into a direct buffer (ByteBufferReadable), which avoids
+ * the copy through a byte array for short-circuit local reads.
+ */
+public class HDFSFrameSource extends FrameSource {
+
+    private FSDataInputStream fileIn = null;
+
+    private ByteBuffer buffer = null;
+
+    private boolean byteBufferReadable = false;
+
+    public HDFSFrameSource(FSDataInputStream fileIn) {
+        this.fileIn = fileIn;
+        this.byteBufferReadable = fileIn.getWrappedStream() instanceof ByteBufferReadable;
+    }
+
+    @Override
+    public ByteBuffer read(long offset, int length) throws IOException {
+        if (buffer == null || buffer.capacity() < length) {
+            buffer = byteBufferReadable ? ByteBuffer.allocateDirect(length)
+                                        : ByteBuffer.allocate(length);
+        }
+
+        if (fileIn.getPos() != offset) {
+            fileIn.seek(offset);
+        }
+
+        buffer.clear();
+        buffer.limit(length);
+
+        if (byteBufferReadable) {
+            while (buffer.hasRemaining()) {
+                if (fileIn.read(buffer) < 0) {
+                    throw new EOFException("Unexpected end of file at " + fileIn.getPos());
+                }
+            }
+            buffer.flip();
+        } else {
+            fileIn.readFully(buffer.array(), 0, length);
+        }
+
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The stream is owned by the record reader.
+        buffer = null;
+    }
+}
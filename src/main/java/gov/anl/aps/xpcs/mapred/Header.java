@@ -71,13 +71,25 @@ public class Header {
     // private int cameraType;
     private double clock;
     
+    /**
+     * Number of 0xFF marker bytes at the end of every header.
+     */
+    public static final int HEADER_MARKER_BYTES = 12;
+
     public Header() {
         // this.cameraType = camerType;
     }
     
     public void update(byte[] buffer) throws IOException {
-        ByteBuffer header = ByteBuffer.wrap(buffer, 0, HEADER_SIZE_IN_BYTES)
-                .order(ByteOrder.LITTLE_ENDIAN);
+        update(ByteBuffer.wrap(buffer, 0, HEADER_SIZE_IN_BYTES));
+    }
+
+    /**
+     * Read the header starting at the current position of the buffer. The 
+     *  position of the buffer is not changed.
+     */
+    public void update(ByteBuffer buffer) throws IOException {
+        ByteBuffer header = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
 
         this.setNumber(header.get(14*4));
         this.setClock(header.getDouble(16*8));
@@ -90,6 +102,17 @@ public class Header {
         this.setCorecoTick(header.getInt(155*4));
     }
 
+    /**
+     * Check if the buffer begins with a frame header, i.e. the header ends 
+     * with the marker bytes. 
+     */
+    public static boolean hasMarker(byte[] buffer) {
+        for (int i = HEADER_SIZE_IN_BYTES - HEADER_MARKER_BYTES; i < HEADER_SIZE_IN_BYTES; i++) {
+            if (buffer[i] != (byte) 0xFF) return false;
+        }
+        return true;
+    }
+
     /**
      * @return the pixelCount
      */
@@ -0,0 +1,230 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.mapred;
+
+import gov.anl.aps.xpcs.config.XPCSConfig;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * Locate the first IMM frame header at or after a given position in the 
+ * input stream. The stream is read in large blocks and searched for the run
+ * of marker bytes at the end of a header, skipping ahead by the marker 
+ * length whenever possible. Every candidate is validated against the 
+ * header layout, and against the marker of the following header, so that 
+ * 0xFF runs in pixel data are not mistaken for a header.
+ */
+public class HeaderSynchronizer {
+
+    /**
+     * Counters reported to the framework for every sync.
+     */
+    public static enum Counters {
+        SYNC_CALLS,
+        BYTES_SCANNED,
+        CANDIDATES_REJECTED
+    }
+
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    private static final int MARKER = Header.HEADER_MARKER_BYTES;
+
+    private final byte[] block = new byte[BLOCK_SIZE];
+
+    private final byte[] headerBuffer = new byte[Header.HEADER_SIZE_IN_BYTES];
+
+    private final Header header = new Header();
+
+    private final int frameWidth;
+
+    private final int frameHeight;
+
+    private final int bytesPerPixel;
+
+    private long bytesScanned = 0;
+
+    private long candidatesRejected = 0;
+
+    public HeaderSynchronizer(XPCSConfig config) {
+        this.frameWidth = config.getFrameWidth();
+        this.frameHeight = config.getFrameHeight();
+        this.bytesPerPixel = config.getIsSparse() ? XPCSConfig.BYTES_PER_PIXEL
+                                                  : XPCSConfig.BYTES_PER_PIXEL_VALUE;
+    }
+
+    /**
+     * Find the first header that starts in [fileIn.getPos(), lastByte) and 
+     *  seek the stream to it. 
+     * @return offset of the header, -1 if there is no header in the range.
+     */
+    public long sync(FSDataInputStream fileIn, long lastByte, long fileLength) 
+            throws IOException {
+        long start = fileIn.getPos();
+        long scanned = 0;
+
+        // Frame aligned splits start right at a header.
+        if (isHeader(fileIn, start, fileLength)) {
+            fileIn.seek(start);
+            return start;
+        }
+
+        // The marker of a header starting before lastByte ends before this.
+        long scanEnd = Math.min(fileLength, lastByte + Header.HEADER_SIZE_IN_BYTES);
+        // Headers must start at or after start, so their marker does too.
+        long blockStart = start + Header.HEADER_SIZE_IN_BYTES - MARKER;
+
+        try {
+            while (blockStart + MARKER <= scanEnd) {
+                int length = (int) Math.min(BLOCK_SIZE, scanEnd - blockStart);
+                fileIn.readFully(blockStart, block, 0, length);
+                scanned += length;
+
+                int p = 0;
+                while (p + MARKER <= length) {
+                    if (block[p + MARKER - 1] != (byte) 0xFF) {
+                        p += MARKER;
+                        continue;
+                    }
+
+                    // Find the beginning of the run ending at p + MARKER - 1. 
+                    int runStart = p + MARKER - 1;
+                    while (runStart > p && block[runStart - 1] == (byte) 0xFF) {
+                        runStart--;
+                    }
+
+                    // Extend the run to the full marker length.
+                    int q = p + MARKER;
+                    while (q < runStart + MARKER && q < length && block[q] == (byte) 0xFF) {
+                        q++;
+                    }
+
+                    if (q < runStart + MARKER) {
+                        if (q >= length) break; // Marker crosses the block
+                        p = q + 1;
+                        continue;
+                    }
+
+                    long headerStart = blockStart + runStart + MARKER 
+                            - Header.HEADER_SIZE_IN_BYTES;
+                    if (headerStart >= lastByte) {
+                        return -1;
+                    }
+                    if (isHeader(fileIn, headerStart, fileLength)) {
+                        fileIn.seek(headerStart);
+                        return headerStart;
+                    }
+
+                    candidatesRejected++;
+                    p = runStart + 1;
+                }
+
+                // Keep the tail, a marker may cross into the next block. 
+                if (blockStart + length >= scanEnd) break;
+                blockStart += p;
+            }
+        } finally {
+            bytesScanned += scanned;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Validate that a header starts at the given offset.
+     */
+    private boolean isHeader(FSDataInputStream fileIn, long offset, long fileLength) 
+            throws IOException {
+        if (offset < 0 || offset + Header.HEADER_SIZE_IN_BYTES > fileLength) {
+            return false;
+        }
+
+        fileIn.readFully(offset, headerBuffer, 0, Header.HEADER_SIZE_IN_BYTES);
+        if (!Header.hasMarker(headerBuffer)) return false;
+
+        header.update(headerBuffer);
+        int pixels = header.getPixelCount();
+        int width = header.getWidthInPixels();
+        int height = header.getHeightInPixels();
+
+        if (pixels < 0) return false;
+        if (frameWidth > 0 && width != 0 && width != frameWidth) return false;
+        if (frameHeight > 0 && height != 0 && height != frameHeight) return false;
+        if (frameWidth > 0 && frameHeight > 0 
+                && (long) pixels > (long) frameWidth * frameHeight) return false;
+
+        // The frame has to end at the file end or at the next header.
+        long next = offset + Header.HEADER_SIZE_IN_BYTES + (long) pixels * bytesPerPixel;
+        if (next > fileLength) return false;
+        if (next + Header.HEADER_SIZE_IN_BYTES > fileLength) return true;
+
+        fileIn.readFully(next, headerBuffer, 0, Header.HEADER_SIZE_IN_BYTES);
+        return Header.hasMarker(headerBuffer);
+    }
+
+    /**
+     * Report and reset the metrics collected since the last call.
+     */
+    public void report(Reporter reporter) {
+        if (reporter != null) {
+            reporter.incrCounter(Counters.SYNC_CALLS, 1);
+            reporter.incrCounter(Counters.BYTES_SCANNED, bytesScanned);
+            reporter.incrCounter(Counters.CANDIDATES_REJECTED, candidatesRejected);
+        }
+        bytesScanned = 0;
+        candidatesRejected = 0;
+    }
+
+    public long getBytesScanned() {
+        return bytesScanned;
+    }
+
+    public long getCandidatesRejected() {
+        return candidatesRejected;
+    }
+}
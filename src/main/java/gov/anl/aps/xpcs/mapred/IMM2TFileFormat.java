@@ -50,13 +50,12 @@ import gov.anl.aps.xpcs.mapred.io.QMapValue;
 
 import java.io.IOException;
 
-import org.apache.hadoop.mapred.FileInputFormat;
 import org.apache.hadoop.mapred.InputSplit;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.RecordReader;
 import org.apache.hadoop.mapred.Reporter;
 
-public class IMM2TFileFormat extends FileInputFormat<QMapKey, QMapValue>{
+public class IMM2TFileFormat extends AbstractIMMFileFormat<QMapKey, QMapValue>{
 
     @Override
     public RecordReader<QMapKey, QMapValue> getRecordReader(
@@ -50,13 +50,12 @@ import gov.anl.aps.xpcs.mapred.io.PixelValue;
 
 import java.io.IOException;
 
-import org.apache.hadoop.mapred.FileInputFormat;
 import org.apache.hadoop.mapred.InputSplit;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.RecordReader;
 import org.apache.hadoop.mapred.Reporter;
 
-public class IMMFileFormat extends FileInputFormat<PixelKey, PixelValue>{
+public class IMMFileFormat extends AbstractIMMFileFormat<PixelKey, PixelValue>{
 
     @Override
     public RecordReader<PixelKey, PixelValue> getRecordReader(
@@ -51,6 +51,8 @@ import gov.anl.aps.xpcs.mapred.io.Frame;
 import gov.anl.aps.xpcs.mapred.io.FrameValue;
 import gov.anl.aps.xpcs.mapred.io.PixelKey;
 import gov.anl.aps.xpcs.mapred.io.PixelValue;
+import gov.anl.aps.xpcs.mapred.pixelfilter.FrameCoarsening;
+import gov.anl.aps.xpcs.util.IMMIndex;
 import gov.anl.aps.xpcs.util.QMaps;
 
 import java.io.DataInputStream;
@@ -216,6 +218,28 @@ public class IMMRecordReader
 
     private ImageFormat fileFormat = null;
 
+    private IMMIndex immIndex = null;
+
+    private HeaderSynchronizer synchronizer = null;
+
+    private BufferImageFormat bufferFormat = null;
+
+    private FrameSource frameSource = null;
+
+    /**
+     * Offset of the next frame header to be read.
+     */
+    private volatile long position = 0;
+
+    /**
+     * Frame being handed out by next().
+     */
+    private Frame currentFrame = null;
+
+    private FramePrefetcher prefetcher = null;
+
+    private long fileLength = 0;
+
     private boolean hasFrames = true;
 
     private int[] pixels = null;
@@ -234,6 +258,39 @@ public class IMMRecordReader
     
     private int frameHeightBin = 0;
 
+    /**
+     * Frame striding/summing done in the reader, null if left to the reducers.
+     */
+    private FrameCoarsening coarsening = null;
+
+    /**
+     * Frame index written to the emitted pixel values.
+     */
+    private int emitFrameIndex = 0;
+
+    /**
+     * Per pixel sums of the frames in the current coarse frame.
+     */
+    private double[] accumulator = null;
+
+    /**
+     * Pixels with a non zero sum in accumulator.
+     */
+    private int[] touched = null;
+
+    private int touchedCount = 0;
+
+    /**
+     * Coarse frame being accumulated, -1 if none.
+     */
+    private int coarseFrame = -1;
+
+    private boolean coarseFrameComplete = false;
+
+    private int[] coarsePixels = null;
+
+    private float[] coarseValues = null;
+
     /**
      * 
      * @param split
@@ -280,6 +337,20 @@ public class IMMRecordReader
 
 		frame = new Frame(this.frameWidth, this.frameHeight, this.frameStart);
 
+		if (FrameCoarsening.isMapSide(this.configuration)) {
+			coarsening = new FrameCoarsening(this.configuration);
+			if (coarsening.getSum() > 1) {
+				int size = this.frameWidthBin * this.frameHeightBin;
+				accumulator = new double[size];
+				touched = new int[size];
+				coarsePixels = new int[size];
+				coarseValues = new float[size];
+			}
+		}
+
+		synchronizer = new HeaderSynchronizer(this.configuration);
+		bufferFormat = (BufferImageFormat) this.fileFormat;
+
 		// Read input split
 		readSplit(split);
 
@@ -293,6 +364,10 @@ public class IMMRecordReader
         final Path file = fileSplit.getPath();
         final FileSystem fs = file.getFileSystem(getConf());
         fileIn = fs.open(file);
+        fileLength = fs.getFileStatus(file).getLen();
+        frameSource = FrameSource.open(this.configuration, file, fileIn);
+        immIndex = IMMIndex.load(this.configuration, file);
+        this.fileFormat.setFrameIndex(immIndex);
         firstByte = fileSplit.getStart();
         lastByte = fileSplit.getLength() + firstByte;
         fileIn.seek(firstByte);
@@ -300,9 +375,23 @@ public class IMMRecordReader
 
     protected void sync() throws IOException {
         try {
-            syncToHeader();
+            // The index locates the next header directly.
+            if (immIndex == null && !syncToHeader()) {
+                this.hasFrames = false;
+                return;
+            }
             this.hasFrames = this.fileFormat.skip(fileIn, 
                 this.frameStart, this.lastByte);
+            this.position = fileIn.getPos();
+
+            if (this.hasFrames && configuration.getPrefetchFrames() > 0) {
+                prefetcher = new FramePrefetcher(new FramePrefetcher.FrameReader() {
+                    public boolean readFrame(Frame f) throws IOException {
+                        return IMMRecordReader.this.readFrame(f);
+                    }
+                }, this.frame, configuration.getPrefetchFrames());
+                prefetcher.start();
+            }
             
             // We are at the top of the frame we want. 
             nextFrame();
@@ -312,105 +401,216 @@ public class IMMRecordReader
         }
     }
     /**
-     * Locate the next marker (consecutive sequence of 12 bytes)
-     *  from the beginning of the data block.
+     * Locate the next frame header (marked by 12 consecutive 0xFF bytes at 
+     *  its end) from the current position within the split.
+     * @return false if no frame header starts in this split.
      * @throws IOException
      */
-    protected void syncToHeader() throws IOException {
-        byte value = 0x00;
-        int consecutiveBytes = 0;
-        while (true) {
-            value = fileIn.readByte();
-            if (value == (byte) 0xFF) {
-                consecutiveBytes++;
-                // There was a bug in previous version of this software where not
-                //  checking the consecutive count at each iteration could cause
-                //  us to skip the header by few bytes depending on the composition of
-                //  actual data right next to the header . 
-                //  TODO: We will need to make this check more robust. 
-
-                if (consecutiveBytes == 12) {
-                    //  We found the header, now seek back to begining of it, as
-                    //   magic bytes are located at the end of the header. 
-                    fileIn.seek(fileIn.getPos() - 1024);
-                    return;
-                }
-                
-            } else {
-                consecutiveBytes = 0;
-            }
-        }
+    protected boolean syncToHeader() throws IOException {
+        long offset = synchronizer.sync(fileIn, this.lastByte, this.fileLength);
+        synchronizer.report(reporter);
+
+        return offset >= 0;
     }
     
     public void nextFrame() throws IOException {
     	if (! this.hasFrames) return;
-   	    
-        if (fileIn.getPos() >= this.lastByte || 
-            frame.getFrameActualIndex() > this.frameEnd) {
+
+        if (this.accumulator != null) {
+            hasFrames = nextCoarseFrame();
+            return;
+        }
+
+        Frame next = fetchFrame();
+        if (next == null) {
+            hasFrames = false;
+            return;
+        }
+        this.currentFrame = next;
+
+        emitFrameSum(currentFrame.getFrameSum(), 
+                     currentFrame.getFrameIndex(),
+				     currentFrame.getFrameClock(),
+                     currentFrame.getFrameTick());
+        
+        pixels = currentFrame.getIndices();
+        values = currentFrame.getPixels();
+        this.pixelCounts = currentFrame.getPixelCounts();
+        currentPixelCount = 0;
+
+        emitFrameIndex = coarsening != null ? 
+                coarsening.getCoarseFrame(currentFrame.getFrameIndex()) : 
+                currentFrame.getFrameIndex();
+
+        hasFrames = true;
+    }
+
+    private Frame fetchFrame() throws IOException {
+        if (this.prefetcher != null) {
+            return this.prefetcher.take();
+        } 
+        return readFrame(this.frame) ? this.frame : null;
+    }
+
+    /**
+     * Sum the frames of the next coarse frame. A coarse frame cut by the 
+     *  split boundary is emitted partially, the reducer adds up the parts.
+     * @return false if there are no more frames in the split.
+     */
+    private boolean nextCoarseFrame() throws IOException {
+        while (true) {
+            if (coarseFrameComplete) {
+                flushCoarseFrame();
+                return true;
+            }
+
+            Frame next = fetchFrame();
+            if (next == null) {
+                if (coarseFrame < 0) return false;
+
+                flushCoarseFrame();
+                return true;
+            }
+            this.currentFrame = next;
+
+            emitFrameSum(next.getFrameSum(), 
+                         next.getFrameIndex(),
+                         next.getFrameClock(),
+                         next.getFrameTick());
+
+            int index = next.getFrameIndex();
+            int group = coarsening.getCoarseFrame(index);
+            boolean flushed = false;
+
+            // Frames of the previous coarse frame are missing.
+            if (coarseFrame >= 0 && group != coarseFrame) {
+                flushCoarseFrame();
+                flushed = true;
+            }
+
+            accumulate(next, group);
+            coarseFrameComplete = coarsening.isLastInGroup(index);
+
+            if (flushed) return true;
+        }
+    }
+
+    private void accumulate(Frame f, int group) {
+        int[] index = f.getIndices();
+        float[] value = f.getPixels();
+        int count = f.getPixelCounts();
+
+        // Filtered frames only hold the valid (positive) pixels.
+        for (int i = 0; i < count; i++) {
+            if (value[i] <= 0) continue;
+
+            int px = index[i];
+            if (accumulator[px] == 0) {
+                touched[touchedCount++] = px;
+            }
+            accumulator[px] += value[i];
+        }
+
+        coarseFrame = group;
+    }
+
+    private void flushCoarseFrame() {
+        int sum = coarsening.getSum();
+
+        for (int i = 0; i < touchedCount; i++) {
+            int px = touched[i];
+            coarsePixels[i] = px;
+            coarseValues[i] = (float) (accumulator[px] / sum);
+            accumulator[px] = 0;
+        }
+
+        pixels = coarsePixels;
+        values = coarseValues;
+        this.pixelCounts = touchedCount;
+        currentPixelCount = 0;
+        emitFrameIndex = coarseFrame;
+
+        touchedCount = 0;
+        coarseFrame = -1;
+        coarseFrameComplete = false;
+    }
+
+    /**
+     * Read the next frame of the split into f and apply the filters. 
+     *  Called by the prefetch thread when prefetching is enabled.
+     * @return false if there are no more frames in the split.
+     */
+    protected boolean readFrame(Frame f) throws IOException {
+        if (this.position >= this.lastByte || 
+            f.getFrameActualIndex() > this.frameEnd) {
             // If we have read a kinetics frame, we need to process it 
             //  fully before giving up the processing for this map.
             if (this.configuration.getIsKinetics()) {
                 KineticsImageFormat imf = (KineticsImageFormat) this.fileFormat;
                 if (!imf.hasSlicesInFrame())
                 {
-                    hasFrames = false;
-                    return;
+                    return false;
                 }
             } else {
-
-                hasFrames = false;
-                return;
+                return false;
             }
 
         }
 
-        this.fileFormat.readNextFrame(fileIn, frame);
+        if (this.coarsening != null && !skipToSelectedFrame(f)) {
+            return false;
+        }
 
-        if (frame.getFrameActualIndex() > this.frameEnd) {
-            hasFrames = false;
-            return;
+        this.position = bufferFormat.readNextFrame(frameSource, this.position, f);
+
+        if (f.getFrameActualIndex() > this.frameEnd) {
+            return false;
         }
 
-        this.filters.apply(frame);
+        this.filters.apply(f);
 
-        emitFrameSum(frame.getFrameSum(), 
-                     frame.getFrameIndex(),
-				     frame.getFrameClock(),
-                     frame.getFrameTick());
-        
-        pixels = frame.getIndices();
-        values = frame.getPixels();
-        this.pixelCounts = frame.getPixelCounts();
-        currentPixelCount = 0;
+        return true;
+    }
 
-        hasFrames = true;
+    /**
+     * Move past the frames that are dropped by striding or do not complete 
+     *  a coarse frame, reading only their headers.
+     * @return false if there are no more selected frames in the split.
+     */
+    private boolean skipToSelectedFrame(Frame f) throws IOException {
+        while (this.position < this.lastByte) {
+            long next = bufferFormat.skipFrame(frameSource, this.position, f);
+
+            if (f.getFrameActualIndex() > this.frameEnd) return false;
+            if (coarsening.isSelected(f.getFrameIndex())) return true;
+
+            this.position = next;
+        }
+        return false;
     }
 
     public boolean next(PixelKey key, PixelValue value) throws IOException {    
         if (! hasFrames)
             return false;
 
-        if (currentPixelCount < this.pixelCounts) {
-            pixelIndex = pixels[currentPixelCount];
-            pixelIntensity = values[currentPixelCount];
-        }  else {
+        // Skip frames left without valid pixels.
+        while (currentPixelCount >= this.pixelCounts) {
             // currentPixelCount will be reset by this method.
             nextFrame();
 
-            if (hasFrames) {
-                pixelIndex = pixels[currentPixelCount];
-                pixelIntensity = values[currentPixelCount];
-            } else {
+            if (! hasFrames) {
                 return false;
             }
         }
 
+        pixelIndex = pixels[currentPixelCount];
+        pixelIntensity = values[currentPixelCount];
         currentPixelCount++;
 
         key.setX((short) (pixelIndex % frameWidthBin));
         key.setY((short) (pixelIndex / frameWidthBin));
 
-        value.setFrameIndex(frame.getFrameIndex());
+        value.setFrameIndex(emitFrameIndex);
         value.setPixelIntensity(pixelIntensity);
 
         return true;
@@ -437,10 +637,13 @@ public class IMMRecordReader
     }
 
     public long getPos() throws IOException {
-        return this.fileIn.getPos();
+        return this.position;
     }
 
     public void close() throws IOException {
+        if (this.prefetcher != null)
+            this.prefetcher.close();
+        this.frameSource.close();
         this.fileIn.close();
         if (this.mos != null)
             this.mos.close();
@@ -452,7 +655,7 @@ public class IMMRecordReader
     }
 
     public Frame getFrame() {
-        return this.frame;
+        return this.currentFrame != null ? this.currentFrame : this.frame;
     }
 
 }
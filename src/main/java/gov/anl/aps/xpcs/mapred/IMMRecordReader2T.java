@@ -53,6 +53,7 @@ import gov.anl.aps.xpcs.mapred.io.PixelKey;
 import gov.anl.aps.xpcs.mapred.io.PixelValue;
 import gov.anl.aps.xpcs.mapred.io.QMapKey;
 import gov.anl.aps.xpcs.mapred.io.QMapValue;
+import gov.anl.aps.xpcs.util.IMMIndex;
 import gov.anl.aps.xpcs.util.QMaps;
 
 import java.io.DataInputStream;
@@ -62,6 +63,7 @@ import java.nio.ByteOrder;
 import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 
 import org.apache.hadoop.conf.Configured;
@@ -205,6 +207,21 @@ public class IMMRecordReader2T
 
     private ImageFormat fileFormat = null;
 
+    private IMMIndex immIndex = null;
+
+    private HeaderSynchronizer synchronizer = null;
+
+    private BufferImageFormat bufferFormat = null;
+
+    private FrameSource frameSource = null;
+
+    /**
+     * Offset of the next frame header to be read.
+     */
+    private long position = 0;
+
+    private long fileLength = 0;
+
     private boolean hasFrames = true;
 
     private int[] pixels = null;
@@ -218,14 +235,21 @@ public class IMMRecordReader2T
     private float pixelIntensity = 0;
     
     private FilterMain filters = null;
-    
+
     private int frameWidthBin = 0;
     
     private int frameHeightBin = 0;
     
-    private short[][] dynamicMapping = null;
+    /**
+     * Dynamic bin of every pixel, -1 if the bin is not processed.
+     */
+    private short[] pixelBins = null;
+
+    /**
+     * Sorted indices of the pixels in the processed bins.
+     */
+    private int[] selectedPixels = null;
 
-    private HashSet<Short> binsToProcess = null;
     /**
      * 
      * @param split
@@ -251,7 +275,7 @@ public class IMMRecordReader2T
 		this.lastSlice = configuration.getLastSlice();
 		this.sliceHeight = configuration.getSliceHeight();
 		this.sliceTop = configuration.getSliceTop();
-		binsToProcess = new HashSet<Short>();
+		HashSet<Short> binsToProcess = new HashSet<Short>();
         String temp[] = configuration.getQMapBinsToProcess();
 
         if (temp != null) {
@@ -268,16 +292,57 @@ public class IMMRecordReader2T
         }
 
 		QMaps partitions = new QMaps(this.configuration);
-	    dynamicMapping = partitions.getDynamicMapping();
+	    selectPixels(partitions.getDynamicMapping(), binsToProcess);
+
+        // Dense frames without binning are only decoded at the selected 
+        //  pixels.
+        if (this.fileFormat instanceof NonSparseImageFormat && 
+                configuration.getBinX() <= 1 && configuration.getBinY() <= 1) {
+            ((NonSparseImageFormat) this.fileFormat).setPixelSelection(selectedPixels);
+        }
 
         frame = new Frame(this.frameWidth, this.frameHeight, this.frameStart);
 
+		synchronizer = new HeaderSynchronizer(this.configuration);
+		bufferFormat = (BufferImageFormat) this.fileFormat;
+
 		// Read input split
 		readSplit(split);
 
 		sync();
     }
     
+    /**
+     * Look up the bin of every pixel once, and list the pixels of the 
+     *  processed bins in index order.
+     */
+    private void selectPixels(short[][] dynamicMapping, 
+            HashSet<Short> binsToProcess) {
+        int width = dynamicMapping.length;
+        int height = width > 0 ? dynamicMapping[0].length : 0;
+
+        pixelBins = new short[frameWidthBin * height];
+        Arrays.fill(pixelBins, (short) -1);
+
+        int count = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < Math.min(width, frameWidthBin); x++) {
+                if (binsToProcess.contains(dynamicMapping[x][y])) {
+                    pixelBins[y * frameWidthBin + x] = dynamicMapping[x][y];
+                    count++;
+                }
+            }
+        }
+
+        selectedPixels = new int[count];
+        count = 0;
+        for (int px = 0; px < pixelBins.length; px++) {
+            if (pixelBins[px] >= 0) {
+                selectedPixels[count++] = px;
+            }
+        }
+    }
+    
     protected void readSplit(InputSplit split) throws IOException {
         if (split == null) return;
         
@@ -285,6 +350,10 @@ public class IMMRecordReader2T
         final Path file = fileSplit.getPath();
         final FileSystem fs = file.getFileSystem(getConf());
         fileIn = fs.open(file);
+        fileLength = fs.getFileStatus(file).getLen();
+        frameSource = FrameSource.open(this.configuration, file, fileIn);
+        immIndex = IMMIndex.load(this.configuration, file);
+        this.fileFormat.setFrameIndex(immIndex);
         firstByte = fileSplit.getStart();
         lastByte = fileSplit.getLength() + firstByte;
         //System.out.println("Split " + firstByte + " " + lastByte); 
@@ -293,9 +362,14 @@ public class IMMRecordReader2T
 
     protected void sync() throws IOException {
         try {
-            syncToHeader();
+            // The index locates the next header directly.
+            if (immIndex == null && !syncToHeader()) {
+                this.hasFrames = false;
+                return;
+            }
             this.hasFrames = this.fileFormat.skip(fileIn, 
                 this.frameStart, this.lastByte);
+            this.position = fileIn.getPos();
             
             // We are at the top of the frame we want. 
             nextFrame();
@@ -305,47 +379,29 @@ public class IMMRecordReader2T
         }
     }
     /**
-     * Locate the next marker (consecutive sequence of 12 bytes)
-     *  from the beginning of the data block.
+     * Locate the next frame header (marked by 12 consecutive 0xFF bytes at 
+     *  its end) from the current position within the split.
+     * @return false if no frame header starts in this split.
      * @throws IOException
      */
-    protected void syncToHeader() throws IOException {
-        byte value = 0x00;
-        int consecutiveBytes = 0;
-        while (true) {
-            value = fileIn.readByte();
-            if (value == (byte) 0xFF) {
-                consecutiveBytes++;
-                // There was a bug in previous version of this software where not
-                //  checking the consecutive count at each iteration could cause
-                //  us to skip the header by few bytes depending on the composition of
-                //  actual data right next to the header . 
-                //  TODO: We will need to make this check more robust. 
-
-                if (consecutiveBytes == 12) {
-                    //  We found the header, now seek back to begining of it, as
-                    //   magic bytes are located at the end of the header. 
-                    fileIn.seek(fileIn.getPos() - 1024);
-                    return;
-                }
-                
-            } else {
-                consecutiveBytes = 0;
-            }
-        }
+    protected boolean syncToHeader() throws IOException {
+        long offset = synchronizer.sync(fileIn, this.lastByte, this.fileLength);
+        synchronizer.report(reporter);
+
+        return offset >= 0;
     }
     
     public void nextFrame() throws IOException {
     	
     	if (! this.hasFrames) return;
    	
-        if (fileIn.getPos() >= this.lastByte || 
+        if (this.position >= this.lastByte || 
             frame.getFrameActualIndex() >= this.frameEnd) {
         	hasFrames = false;
         	return;
         }
 
-        this.fileFormat.readNextFrame(fileIn, frame);
+        this.position = bufferFormat.readNextFrame(frameSource, this.position, frame);
         
         if (frame.getFrameActualIndex() >= this.frameEnd) {
         	hasFrames = false;
@@ -366,32 +422,26 @@ public class IMMRecordReader2T
         if (! hasFrames)
             return false;
 
-    	short x = 0;
-    	short y = 0;
+    	short bin = -1;
 
         do {
-    	    if (currentPixelCount < this.pixelCounts) {
-    			pixelIndex = pixels[currentPixelCount];
-    			pixelIntensity = values[currentPixelCount];
-    		}  else {
+    	    while (currentPixelCount >= this.pixelCounts) {
     			// currentPixelCount will be reset by this method.
     			nextFrame();
 
-    			if (hasFrames) {
-    				pixelIndex = pixels[currentPixelCount];
-    				pixelIntensity = values[currentPixelCount];
-    			} else {
+    			if (!hasFrames) {
     				return false;
     			}
     		}
 
+    		pixelIndex = pixels[currentPixelCount];
+    		pixelIntensity = values[currentPixelCount];
     		currentPixelCount++;
-    		x = (short) (pixelIndex % frameWidthBin);
-    		y = (short) (pixelIndex / frameWidthBin);
+    		bin = pixelBins[pixelIndex];
 
-    	} while (!binsToProcess.contains(this.dynamicMapping[x][y]));
+    	} while (bin < 0);
 
-        key.setQ(this.dynamicMapping[x][y]);
+        key.setQ(bin);
         key.setPixelIndex(pixelIndex);
         
         value.setIndex(pixelIndex);
@@ -410,10 +460,11 @@ public class IMMRecordReader2T
     }
 
     public long getPos() throws IOException {
-        return this.fileIn.getPos();
+        return this.position;
     }
 
     public void close() throws IOException {
+        this.frameSource.close();
         this.fileIn.close();
     }
 
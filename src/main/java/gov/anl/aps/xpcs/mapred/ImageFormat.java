@@ -46,6 +46,7 @@
 package gov.anl.aps.xpcs.mapred;
 
 import gov.anl.aps.xpcs.mapred.io.Frame;
+import gov.anl.aps.xpcs.util.IMMIndex;
 
 import java.io.IOException;
 
@@ -63,4 +64,9 @@ public interface ImageFormat {
      * Skip frames to get to toFrame
      */
     public boolean skip(FSDataInputStream fileIn, int toFrame, long lastByte) throws IOException;
+
+    /**
+     * Frame-offset index of the input file, used by skip() when available. 
+     */
+    public void setFrameIndex(IMMIndex index);
 }
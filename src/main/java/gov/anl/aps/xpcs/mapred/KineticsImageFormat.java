@@ -47,6 +47,7 @@ package gov.anl.aps.xpcs.mapred;
 
 import gov.anl.aps.xpcs.config.XPCSConfig;
 import gov.anl.aps.xpcs.mapred.io.Frame;
+import gov.anl.aps.xpcs.util.IMMIndex;
 import gov.anl.aps.xpcs.mapred.io.PixelKey;
 import gov.anl.aps.xpcs.mapred.io.PixelValue;
 import gov.anl.aps.xpcs.util.DarkImage;
@@ -63,7 +64,7 @@ import org.apache.hadoop.mapred.InputSplit;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.Reporter;
 
-public class KineticsImageFormat implements ImageFormat {
+public class KineticsImageFormat implements ImageFormat, BufferImageFormat {
 
     protected static final int BYTES_PER_PIXEL_VALUE = 2;
     
@@ -73,6 +74,8 @@ public class KineticsImageFormat implements ImageFormat {
             + BYTES_PER_PIXEL_INDEX;
 
     private Header currentHeader = null;
+
+    private IMMIndex immIndex = null;
     
     private byte[] buffer = null;
     
@@ -131,6 +134,8 @@ public class KineticsImageFormat implements ImageFormat {
     
     private ShortBuffer valueBuffer = null;
 
+    private long nextFrameOffset = 0;
+
     public KineticsImageFormat(XPCSConfig config) {
         currentHeader = new Header();
         this.frameWidth = config.getFrameWidth();
@@ -163,35 +168,81 @@ public class KineticsImageFormat implements ImageFormat {
     		// read next frame
     		fileIn.readFully(buffer, 0, Header.HEADER_SIZE_IN_BYTES);
             currentHeader.update(buffer);
-            int frameIndex = currentHeader.getFrameIndex();
             int pixelCounts = currentHeader.getPixelCount();
      
             fileIn.readFully(buffer, 0, BYTES_PER_PIXEL_VALUE * pixelCounts);
-            valueBuffer = ByteBuffer
+            startFrame(ByteBuffer
                     .wrap(buffer, 0, BYTES_PER_PIXEL_VALUE * pixelCounts)
-                    .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
-
-            // Setup the kinetics pixel index, reset only when we read the next full frame.
-            // Once the index is set, it linearly increments as all slices are contiguous. 
-            //  A -1 as next method will increment by 1 before looking up the index.
-            this.kineticsPixelIndex = this.kineticsFirstPixel;
+                    .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer());
+    	} else {
+            nextSlice();
+    	}
 
-            // This gives the last effective slice in this frame.
-            this.kineticsFrameIndex = 
-            		(frameIndex - this.frameStart + 1) * this.kineticsSlicesPerFrame - 1;
+        readSlice(f);
+    }
 
-            // Subtract total slices per frame to get the starting slice number in this frame. 
-            this.kineticsFrameIndex -= (this.kineticsSlicesPerFrame - 1);
-            this.kineticsSlicesIndex = this.kineticsSlicesPerFrame - 1;
+    @Override
+    public long readNextFrame(FrameSource source, long offset, Frame f) throws IOException {
+		if (valueBuffer == null
+				|| this.kineticsSlicesIndex == 0) {
+            currentHeader.update(source.read(offset, Header.HEADER_SIZE_IN_BYTES));
+            int pixelCounts = currentHeader.getPixelCount();
 
-            // The current slice number within this frame that we are going to process. 
-            this.sliceNumber = 2;
+            // The slices of this frame are decoded from the source buffer, 
+            //  it stays valid as no other read happens until the next frame.
+            startFrame(source.read(offset + Header.HEADER_SIZE_IN_BYTES,
+                    BYTES_PER_PIXEL_VALUE * pixelCounts)
+                    .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer());
+            this.nextFrameOffset = offset + Header.HEADER_SIZE_IN_BYTES 
+                    + BYTES_PER_PIXEL_VALUE * pixelCounts;
     	} else {
-            this.kineticsSlicesIndex--;
-            this.kineticsFrameIndex++;
-            this.sliceNumber++;
+            nextSlice();
     	}
-		
+
+        readSlice(f);
+        return this.nextFrameOffset;
+    }
+
+    /**
+     * Every slice of a kinetics frame is a separate frame for the analysis,
+     *  so frames can't be skipped as a whole; the frame is read instead.
+     */
+    @Override
+    public long skipFrame(FrameSource source, long offset, Frame f) throws IOException {
+        return readNextFrame(source, offset, f);
+    }
+
+    /**
+     * Setup the slice indices for a new physical frame.
+     */
+    private void startFrame(ShortBuffer values) {
+        int frameIndex = currentHeader.getFrameIndex();
+        this.valueBuffer = values;
+
+        // Setup the kinetics pixel index, reset only when we read the next full frame.
+        // Once the index is set, it linearly increments as all slices are contiguous. 
+        //  A -1 as next method will increment by 1 before looking up the index.
+        this.kineticsPixelIndex = this.kineticsFirstPixel;
+
+        // This gives the last effective slice in this frame.
+        this.kineticsFrameIndex = 
+        		(frameIndex - this.frameStart + 1) * this.kineticsSlicesPerFrame - 1;
+
+        // Subtract total slices per frame to get the starting slice number in this frame. 
+        this.kineticsFrameIndex -= (this.kineticsSlicesPerFrame - 1);
+        this.kineticsSlicesIndex = this.kineticsSlicesPerFrame - 1;
+
+        // The current slice number within this frame that we are going to process. 
+        this.sliceNumber = 2;
+    }
+
+    private void nextSlice() {
+        this.kineticsSlicesIndex--;
+        this.kineticsFrameIndex++;
+        this.sliceNumber++;
+    }
+
+    private void readSlice(Frame f) {
 		int cnt = 0;
 		short value = 0;
 
@@ -215,6 +266,14 @@ public class KineticsImageFormat implements ImageFormat {
 
     public boolean skip(FSDataInputStream fileIn, int toFrame, long lastByte)
             throws IOException {
+        if (this.immIndex != null) {
+            long offset = this.immIndex.seekOffset(toFrame, fileIn.getPos(), lastByte);
+            if (offset < 0) return false;
+
+            fileIn.seek(offset);
+            return true;
+        }
+
         boolean found = false;
 
         while (true) {
@@ -252,4 +311,8 @@ public class KineticsImageFormat implements ImageFormat {
         return this.kineticsSlicesIndex != 0;
     }
 
+    @Override
+    public void setFrameIndex(IMMIndex index) {
+        this.immIndex = index;
+    }
 }
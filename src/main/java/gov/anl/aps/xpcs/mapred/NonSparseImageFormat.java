@@ -47,6 +47,7 @@ package gov.anl.aps.xpcs.mapred;
 
 import gov.anl.aps.xpcs.config.XPCSConfig;
 import gov.anl.aps.xpcs.mapred.io.Frame;
+import gov.anl.aps.xpcs.util.IMMIndex;
 
 import java.io.IOException;
 import java.nio.BufferUnderflowException;
@@ -56,7 +57,7 @@ import java.nio.ShortBuffer;
 
 import org.apache.hadoop.fs.FSDataInputStream;
 
-public class NonSparseImageFormat implements ImageFormat {
+public class NonSparseImageFormat implements ImageFormat, BufferImageFormat {
 
     protected static final int BYTES_PER_PIXEL_VALUE = 2;
     
@@ -66,12 +67,19 @@ public class NonSparseImageFormat implements ImageFormat {
             + BYTES_PER_PIXEL_INDEX;
 
     private Header currentHeader = null;
+
+    private IMMIndex immIndex = null;
     
     private byte[] buffer = null;
     
    	private int[]  pixelIndices = null;
 
     private float[]  pixelValues = null;
+
+    /**
+     * Sorted pixels to decode, null to decode every pixel. 
+     */
+    private int[] selection = null;
     
     public NonSparseImageFormat(XPCSConfig config) {
         currentHeader = new Header();
@@ -96,15 +104,61 @@ public class NonSparseImageFormat implements ImageFormat {
                 .wrap(buffer, 0, BYTES_PER_PIXEL_VALUE * pixelCounts)
                 .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
 
-        short value = 0;
-        int cnt = 0;
-        
-        try {
-        	while (true) {
-        		value = valueBuffer.get();
-        		pixelValues[cnt++] = value; 
-        	}
-        } catch (BufferUnderflowException b) {}
+        if (selection != null) {
+            gather(valueBuffer, 0, selectedCount(pixelCounts), frameIndex, f);
+        } else {
+            decode(valueBuffer, pixelCounts, frameIndex, f);
+        }
+    }
+
+    @Override
+    public long readNextFrame(FrameSource source, long offset, Frame f) throws IOException {
+        currentHeader.update(source.read(offset, Header.HEADER_SIZE_IN_BYTES));
+        int frameIndex = currentHeader.getFrameIndex();
+        int pixelCounts = currentHeader.getPixelCount();
+
+        if (selection != null) {
+            // Only the span of pixels from the first to the last selected 
+            //  one is read.
+            int count = selectedCount(pixelCounts);
+            int first = count > 0 ? selection[0] : 0;
+            int span = count > 0 ? selection[count - 1] + 1 - first : 0;
+            ShortBuffer valueBuffer = source.read(offset + 
+                    Header.HEADER_SIZE_IN_BYTES + BYTES_PER_PIXEL_VALUE * first,
+                    BYTES_PER_PIXEL_VALUE * span)
+                    .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+
+            gather(valueBuffer, first, count, frameIndex, f);
+        } else {
+            ShortBuffer valueBuffer = source.read(offset + Header.HEADER_SIZE_IN_BYTES,
+                    BYTES_PER_PIXEL_VALUE * pixelCounts)
+                    .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+
+            decode(valueBuffer, pixelCounts, frameIndex, f);
+        }
+
+        return offset + Header.HEADER_SIZE_IN_BYTES + BYTES_PER_PIXEL_VALUE * pixelCounts;
+    }
+
+    @Override
+    public long skipFrame(FrameSource source, long offset, Frame f) throws IOException {
+        currentHeader.update(source.read(offset, Header.HEADER_SIZE_IN_BYTES));
+        int pixelCounts = currentHeader.getPixelCount();
+
+        f.setImage(pixelIndices, 
+                   pixelValues, 
+                   0, 
+                   currentHeader.getFrameIndex(), 
+                   currentHeader.getClock(), 
+                   currentHeader.getCorecoTick());
+
+        return offset + Header.HEADER_SIZE_IN_BYTES + BYTES_PER_PIXEL_VALUE * pixelCounts;
+    }
+
+    private void decode(ShortBuffer valueBuffer, int pixelCounts, int frameIndex, Frame f) {
+        for (int cnt = 0; cnt < pixelCounts; cnt++) {
+            pixelValues[cnt] = valueBuffer.get(cnt);
+        }
         
         f.setImage(pixelIndices, 
                    pixelValues, 
@@ -114,8 +168,59 @@ public class NonSparseImageFormat implements ImageFormat {
                    currentHeader.getCorecoTick());
     }
 
+    /**
+     * Decode only the given pixels of the following frames, as a sparse 
+     *  frame holding them in the same order. Pixels past the end of a 
+     *  frame are left out.
+     *  
+     * @param pixels Sorted pixel indices, null to decode every pixel.
+     */
+    public void setPixelSelection(int[] pixels) {
+        this.selection = pixels;
+    }
+
+    /**
+     * @return Selected pixels within a frame of pixelCounts pixels.
+     */
+    private int selectedCount(int pixelCounts) {
+        int count = selection.length;
+        while (count > 0 && selection[count - 1] >= pixelCounts) {
+            count--;
+        }
+        return count;
+    }
+
+    /**
+     * Decode the first count selected pixels, valueBuffer starting at 
+     *  pixel first. The filters compact the indices in place, they are 
+     *  copied from the selection for every frame.
+     */
+    private void gather(ShortBuffer valueBuffer, int first, int count, 
+            int frameIndex, Frame f) {
+        for (int cnt = 0; cnt < count; cnt++) {
+            int px = selection[cnt];
+            pixelIndices[cnt] = px;
+            pixelValues[cnt] = valueBuffer.get(px - first);
+        }
+
+        f.setSparseImage(pixelIndices, 
+                   pixelValues, 
+                   count, 
+                   frameIndex, 
+                   currentHeader.getClock(), 
+                   currentHeader.getCorecoTick());
+    }
+
     public boolean skip(FSDataInputStream fileIn, int toFrame, long lastByte)
             throws IOException {
+        if (this.immIndex != null) {
+            long offset = this.immIndex.seekOffset(toFrame, fileIn.getPos(), lastByte);
+            if (offset < 0) return false;
+
+            fileIn.seek(offset);
+            return true;
+        }
+
         boolean found = false;
 
         while (true) {
@@ -145,4 +250,8 @@ public class NonSparseImageFormat implements ImageFormat {
         return found;
     }
 
+    @Override
+    public void setFrameIndex(IMMIndex index) {
+        this.immIndex = index;
+    }
 }
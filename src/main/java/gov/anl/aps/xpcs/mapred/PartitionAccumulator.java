@@ -0,0 +1,291 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.mapred;
+
+import gov.anl.aps.xpcs.mapred.io.NormResult;
+import gov.anl.aps.xpcs.mapred.io.PartitionKey;
+import gov.anl.aps.xpcs.mapred.io.PartitionValue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+import org.apache.hadoop.mapred.OutputCollector;
+
+/**
+ * Per (dynamic partition, static partition, tau) sums of the g2 records, 
+ * enough to compute the normalized g2 of {@link PartitionReducer} without 
+ * keeping every record.
+ * 
+ * Each distinct (dynamic, static) pair of the q-maps is a cell, numbered 
+ * in (dynamic, static) order. A tau gets a row of sums for all cells the 
+ * first time it is seen.
+ */
+public class PartitionAccumulator {
+
+    private static final int COUNT = StaticPartitionSums.COUNT;
+    private static final int G2 = StaticPartitionSums.G2;
+    private static final int G2_SQUARE = StaticPartitionSums.G2_SQUARE;
+    private static final int IFUTURE = StaticPartitionSums.IFUTURE;
+    private static final int IPAST = StaticPartitionSums.IPAST;
+    private static final int FIELDS = StaticPartitionSums.FIELDS;
+
+    /**
+     * Cell of each pixel, -1 outside of any dynamic partition.
+     */
+    private int[][] pixelCells;
+    
+    private short[] cellDynamic;
+    
+    private short[] cellStatic;
+    
+    /**
+     * First cell of each static partition, further cells of a static 
+     * partition spread over dynamic partitions are chained in nextCell.
+     */
+    private int[] staticFirstCell;
+    
+    private int[] nextCell;
+    
+    private int cells;
+    
+    /**
+     * Cell numbers in order, the slots of a cell range.
+     */
+    private int[] cellIndex;
+    
+    private ArrayList<double[]> rows = new ArrayList<double[]>();
+    
+    private ArrayList<Integer> taus = new ArrayList<Integer>();
+    
+    private HashMap<Integer, Integer> tauRows = new HashMap<Integer, Integer>();
+    
+    /**
+     * Row of the last tau, pixels emit their taus in the same order.
+     */
+    private int lastRow = -1;
+    
+    private PartitionKey key = new PartitionKey();
+    
+    private PartitionValue stats = new PartitionValue();
+    
+    private NormResult normResult = new NormResult();
+    
+    public PartitionAccumulator(short[][] staticMapping, 
+                                short[][] dynamicMapping) {
+        int width = staticMapping.length;
+        int height = width > 0 ? staticMapping[0].length : 0;
+        
+        int maxStatic = 0;
+        int maxDynamic = 0;
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                maxStatic = Math.max(maxStatic, staticMapping[x][y]);
+                maxDynamic = Math.max(maxDynamic, dynamicMapping[x][y]);
+            }
+        }
+        
+        // Flag the pairs in use, then number them in (dynamic, static) order.
+        boolean[] used = new boolean[(maxDynamic + 1) * (maxStatic + 1)];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                int d = dynamicMapping[x][y];
+                int s = staticMapping[x][y];
+                if (d > 0 && s >= 0) {
+                    used[d * (maxStatic + 1) + s] = true;
+                }
+            }
+        }
+        
+        int[] pairCells = new int[used.length];
+        ArrayList<Integer> pairs = new ArrayList<Integer>();
+        for (int i = 0; i < used.length; i++) {
+            pairCells[i] = used[i] ? pairs.size() : -1;
+            if (used[i]) pairs.add(i);
+        }
+        
+        cells = pairs.size();
+        cellDynamic = new short[cells];
+        cellStatic = new short[cells];
+        staticFirstCell = new int[maxStatic + 1];
+        nextCell = new int[cells];
+        cellIndex = new int[cells];
+        for (int c = 0; c < cells; c++) cellIndex[c] = c;
+        Arrays.fill(staticFirstCell, -1);
+        
+        for (int c = cells - 1; c >= 0; c--) {
+            int pair = pairs.get(c);
+            cellDynamic[c] = (short) (pair / (maxStatic + 1));
+            cellStatic[c] = (short) (pair % (maxStatic + 1));
+            nextCell[c] = staticFirstCell[cellStatic[c]];
+            staticFirstCell[cellStatic[c]] = c;
+        }
+        
+        pixelCells = new int[width][height];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                int d = dynamicMapping[x][y];
+                int s = staticMapping[x][y];
+                pixelCells[x][y] = d > 0 && s >= 0 ? 
+                        pairCells[d * (maxStatic + 1) + s] : -1;
+            }
+        }
+    }
+    
+    /**
+     * Add the g2 record of one pixel.
+     */
+    public void add(short x, short y, int tau, double g2, double iFuture,
+            double iPast) {
+        int cell = pixelCells[x][y];
+        if (cell < 0) return;
+        
+        double[] row = getRow(tau);
+        int i = cell * FIELDS;
+        row[i + COUNT] += 1;
+        row[i + G2] += g2;
+        row[i + G2_SQUARE] += g2 * g2;
+        row[i + IFUTURE] += iFuture;
+        row[i + IPAST] += iPast;
+    }
+    
+    /**
+     * Merge partial sums, as written by 
+     * {@link #collect(OutputCollector)}.
+     */
+    public void add(PartitionKey partitionKey, PartitionValue value) {
+        short s = value.getStaticPartition();
+        int cell = s >= 0 && s < staticFirstCell.length ? 
+                staticFirstCell[s] : -1;
+        while (cell >= 0 && 
+                cellDynamic[cell] != partitionKey.getDynamicPartition()) {
+            cell = nextCell[cell];
+        }
+        if (cell < 0) {
+            throw new IllegalArgumentException("No partition " + 
+                    partitionKey + " with static partition " + s);
+        }
+        
+        double[] row = getRow(partitionKey.getTau());
+        int i = cell * FIELDS;
+        row[i + COUNT] += value.getCount();
+        row[i + G2] += value.getG2();
+        row[i + G2_SQUARE] += value.getG2Square();
+        row[i + IFUTURE] += value.getiFuture();
+        row[i + IPAST] += value.getiPast();
+    }
+    
+    /**
+     * Emit the sums of every (dynamic, static, tau) that has records.
+     */
+    public void collect(OutputCollector<PartitionKey, PartitionValue> output)
+            throws IOException {
+        for (int r = 0; r < rows.size(); r++) {
+            double[] row = rows.get(r);
+            key.setTau(taus.get(r));
+            for (int c = 0; c < cells; c++) {
+                int i = c * FIELDS;
+                if (row[i + COUNT] == 0) continue;
+                
+                key.setDynamicPartition(cellDynamic[c]);
+                stats.set(cellStatic[c], (long) row[i + COUNT], row[i + G2], 
+                        row[i + G2_SQUARE], row[i + IFUTURE], row[i + IPAST]);
+                output.collect(key, stats);
+            }
+        }
+    }
+    
+    /**
+     * Emit the normalized g2 mean and standard error of every (dynamic, 
+     * tau) that has records, in key order, as {@link PartitionReducer} 
+     * computes them.
+     */
+    public void collectNorm(OutputCollector<PartitionKey, NormResult> output)
+            throws IOException {
+        Integer[] order = new Integer[taus.size()];
+        for (int r = 0; r < order.length; r++) order[r] = r;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return taus.get(a).compareTo(taus.get(b));
+            }
+        });
+        
+        int start = 0;
+        while (start < cells) {
+            int end = start;
+            while (end < cells && cellDynamic[end] == cellDynamic[start]) end++;
+            
+            key.setDynamicPartition(cellDynamic[start]);
+            for (Integer r : order) {
+                if (StaticPartitionSums.normalize(rows.get(r), cellIndex, 
+                        start, end, normResult)) {
+                    key.setTau(taus.get(r));
+                    output.collect(key, normResult);
+                }
+            }
+            start = end;
+        }
+    }
+    
+    private double[] getRow(int tau) {
+        int next = lastRow + 1;
+        if (next < taus.size() && taus.get(next) == tau) {
+            lastRow = next;
+        } else {
+            Integer r = tauRows.get(tau);
+            if (r == null) {
+                r = rows.size();
+                rows.add(new double[cells * FIELDS]);
+                taus.add(tau);
+                tauRows.put(tau, r);
+            }
+            lastRow = r;
+        }
+        return rows.get(lastRow);
+    }
+}
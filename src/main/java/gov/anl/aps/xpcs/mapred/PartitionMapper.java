@@ -147,10 +147,9 @@ public class PartitionMapper extends MapReduceBase
         if (dPartition > 0) {
             partitionKey.setDynamicPartition(dPartition);
             partitionKey.setTau(key.getTau());
-            partitionValue.setG2(value.getG2());
-            partitionValue.setiFuture(value.getiFuture());
-            partitionValue.setiPast(value.getiPast());
-            partitionValue.setStaticPartition(calcStaticPartition(key));
+            double g2 = value.getG2();
+            partitionValue.set(calcStaticPartition(key), 1, g2, g2 * g2, 
+                    value.getiFuture(), value.getiPast());
             output.collect(partitionKey, partitionValue);
         }
     }
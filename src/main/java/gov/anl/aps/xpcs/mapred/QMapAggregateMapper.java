@@ -0,0 +1,129 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.mapred;
+
+import gov.anl.aps.xpcs.config.XPCSConfig;
+import gov.anl.aps.xpcs.mapred.io.PixelFramesValue;
+import gov.anl.aps.xpcs.mapred.io.QMapKey;
+import gov.anl.aps.xpcs.mapred.io.QMapValue;
+
+import java.io.IOException;
+
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * Two-time counterpart of PixelAggregateMapper, emits one record per pixel
+ * and split keyed by the q-bin and pixel.
+ */
+public class QMapAggregateMapper extends MapReduceBase implements 
+    Mapper<QMapKey, QMapValue, QMapKey, PixelFramesValue>, 
+    FrameSeriesBuffer.SeriesCollector {
+
+    private FrameSeriesBuffer buffer = null;
+
+    /**
+     * q-bin of every pixel seen by this map.
+     */
+    private short[] pixelQ = null;
+
+    private OutputCollector<QMapKey, PixelFramesValue> output = null;
+
+    private Reporter reporter = null;
+
+    private QMapKey qmapKey = new QMapKey();
+
+    private PixelFramesValue framesValue = new PixelFramesValue();
+
+    @Override
+    public void configure(JobConf job) {
+        super.configure(job);
+        XPCSConfig config = new XPCSConfig(job);
+
+        int pixels = (config.getFrameWidth() / (int) config.getBinX()) * 
+                     (config.getFrameHeight() / (int) config.getBinY());
+
+        pixelQ = new short[pixels];
+        buffer = new FrameSeriesBuffer(pixels, config.getAggregateRecords());
+    }
+
+    @Override
+    public void map(QMapKey key, QMapValue value,
+            OutputCollector<QMapKey, PixelFramesValue> output, Reporter reporter)
+            throws IOException {
+        this.output = output;
+        this.reporter = reporter;
+
+        int pixel = value.getIndex();
+        pixelQ[pixel] = key.getQ();
+        buffer.add(pixel, value.getFrameIndex(), value.getFrameValue());
+
+        if (buffer.isFull()) {
+            buffer.flush(this);
+        }
+    }
+
+    @Override
+    public void collect(int pixel, int[] frames, float[] values, int offset,
+            int count) throws IOException {
+        qmapKey.setQ(pixelQ[pixel]);
+        qmapKey.setPixelIndex(pixel);
+        framesValue.set(pixel, frames, values, offset, count);
+
+        output.collect(qmapKey, framesValue);
+        reporter.progress();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (output != null) {
+            buffer.flush(this);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.mapred;
+
+import gov.anl.aps.xpcs.config.XPCSConfig;
+import gov.anl.aps.xpcs.mapred.io.PixelKey;
+import gov.anl.aps.xpcs.mapred.io.PixelRangePartitioner;
+import gov.anl.aps.xpcs.mapred.io.PixelSeriesValue;
+import gov.anl.aps.xpcs.mapred.io.QMapKey;
+import gov.anl.aps.xpcs.mapred.io.TwoTimeBinaryValue;
+import gov.anl.aps.xpcs.util.QMaps;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Map-only two-time over the pixel-major store. Every input line names one
+ * q-bin. The series of the pixels in that bin are looked up through the 
+ * index of the store blocks and accumulated with the two-time reducer logic.
+ */
+public class SeriesTwoTimesMapper extends MapReduceBase implements 
+    Mapper<LongWritable, Text, QMapKey, TwoTimeBinaryValue> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SeriesTwoTimesMapper.class.getName());
+
+    private TwoTimesReducer reducer = null;
+
+    private MapFile.Reader[] readers = null;
+
+    private PixelRangePartitioner<PixelSeriesValue> partitioner = 
+            new PixelRangePartitioner<PixelSeriesValue>();
+
+    private short[][] dynamicMapping = null;
+
+    private int frameWidthBin = 0;
+
+    private int frameHeightBin = 0;
+
+    private PixelKey pixelKey = new PixelKey();
+
+    private PixelSeriesValue seriesValue = new PixelSeriesValue();
+
+    private QMapKey qmapKey = new QMapKey();
+
+    @Override
+    public void configure(JobConf job) {
+        super.configure(job);
+        XPCSConfig config = new XPCSConfig(job);
+
+        frameWidthBin = config.getFrameWidth() / (int) config.getBinX();
+        frameHeightBin = config.getFrameHeight() / (int) config.getBinY();
+        partitioner.configure(job);
+
+        reducer = new TwoTimesReducer();
+        reducer.configure(job);
+
+        try {
+            QMaps partitions = new QMaps(config);
+            dynamicMapping = partitions.getDynamicMapping();
+            readers = openReaders(new Path(config.getSeriesStoreDir()), job);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open pixel series store", e);
+        }
+    }
+
+    /**
+     * Open the store blocks in partition order (part-00000, part-00001, ...).
+     */
+    static MapFile.Reader[] openReaders(Path dir, JobConf job) throws IOException {
+        FileSystem fs = dir.getFileSystem(job);
+        FileStatus[] parts = fs.listStatus(dir);
+        ArrayList<Path> names = new ArrayList<Path>();
+        for (FileStatus part : parts) {
+            if (part.isDirectory() && part.getPath().getName().startsWith("part-")) {
+                names.add(part.getPath());
+            }
+        }
+
+        Path[] sorted = names.toArray(new Path[names.size()]);
+        Arrays.sort(sorted);
+
+        MapFile.Reader[] readers = new MapFile.Reader[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            readers[i] = new MapFile.Reader(fs, sorted[i].toString(), job);
+        }
+        return readers;
+    }
+
+    @Override
+    public void map(LongWritable offset, Text line,
+            OutputCollector<QMapKey, TwoTimeBinaryValue> output, Reporter reporter)
+            throws IOException {
+        String bin = line.toString().trim();
+        if (bin.isEmpty()) return;
+
+        short q = (short) Float.parseFloat(bin);
+        logger.info("Processing qmap " + q);
+
+        int pixels = 0;
+        // Visiting pixels in key order keeps the reads sequential within a block.
+        for (short x = 0; x < frameWidthBin; x++) {
+            for (short y = 0; y < frameHeightBin; y++) {
+                if (dynamicMapping[x][y] != q) continue;
+
+                pixelKey.setX(x);
+                pixelKey.setY(y);
+                int part = partitioner.getPartition(pixelKey, seriesValue, readers.length);
+                if (readers[part].get(pixelKey, seriesValue) == null) continue;
+
+                reducer.accumulate(y * frameWidthBin + x, 
+                        seriesValue.getSeries(), seriesValue.getLength());
+                pixels++;
+            }
+            reporter.progress();
+        }
+
+        logger.info("Processed " + pixels + " pixels for qmap " + q);
+
+        qmapKey.setQ(q);
+        output.collect(qmapKey, reducer.getResult(q));
+        reducer.reset();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reducer != null) {
+            reducer.close();
+        }
+        if (readers == null) return;
+        for (MapFile.Reader reader : readers) {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.mapred;
+
+import gov.anl.aps.xpcs.config.XPCSConfig;
+import gov.anl.aps.xpcs.mapred.io.PixelTotalValue;
+import gov.anl.aps.xpcs.util.SavitzkyGolay;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * Sum the split totals of every pixel of a static partition and smooth 
+ * them with a Savitzky-Golay filter over the pixels of the partition in 
+ * index order. The smoothed totals are emitted per pixel, the caller 
+ * divides them by the number of frames.
+ */
+public class SmoothedSGReducer extends MapReduceBase implements
+        Reducer<IntWritable, PixelTotalValue, IntWritable, DoubleWritable> {
+
+    private SavitzkyGolay filter = null;
+
+    private IntWritable pixelKey = new IntWritable();
+
+    private DoubleWritable smoothedValue = new DoubleWritable();
+
+    @Override
+    public void configure(JobConf job) {
+        super.configure(job);
+        XPCSConfig config = new XPCSConfig(job);
+
+        filter = new SavitzkyGolay(config.getTwoTimeSGWindow(), 
+                config.getTwoTimeSGOrder());
+    }
+
+    @Override
+    public void reduce(IntWritable key, Iterator<PixelTotalValue> values,
+            OutputCollector<IntWritable, DoubleWritable> output,
+            Reporter reporter) throws IOException {
+        TreeMap<Integer, Double> totals = new TreeMap<Integer, Double>();
+
+        while (values.hasNext()) {
+            PixelTotalValue value = values.next();
+            Double sum = totals.get(value.getPixel());
+            totals.put(value.getPixel(), 
+                    sum == null ? value.getSum() : sum + value.getSum());
+        }
+
+        int[] pixels = new int[totals.size()];
+        double[] sums = new double[totals.size()];
+        int count = 0;
+        for (Map.Entry<Integer, Double> entry : totals.entrySet()) {
+            pixels[count] = entry.getKey();
+            sums[count] = entry.getValue();
+            count++;
+        }
+
+        double[] smoothed = filter.smooth(sums, count);
+        for (int i = 0; i < count; i++) {
+            pixelKey.set(pixels[i]);
+            smoothedValue.set(smoothed[i]);
+            output.collect(pixelKey, smoothedValue);
+        }
+        reporter.progress();
+    }
+}
@@ -47,6 +47,7 @@ package gov.anl.aps.xpcs.mapred;
 
 import gov.anl.aps.xpcs.config.XPCSConfig;
 import gov.anl.aps.xpcs.mapred.io.Frame;
+import gov.anl.aps.xpcs.util.IMMIndex;
 import gov.anl.aps.xpcs.mapred.io.PixelKey;
 import gov.anl.aps.xpcs.mapred.io.PixelValue;
 import gov.anl.aps.xpcs.util.DarkImage;
@@ -64,7 +65,7 @@ import org.apache.hadoop.mapred.InputSplit;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.Reporter;
 
-public class SparseImageFormat implements ImageFormat {
+public class SparseImageFormat implements ImageFormat, BufferImageFormat {
 
     protected static final int BYTES_PER_PIXEL_VALUE = 2;
     
@@ -74,6 +75,8 @@ public class SparseImageFormat implements ImageFormat {
             + BYTES_PER_PIXEL_INDEX;
 
     private Header currentHeader = null;
+
+    private IMMIndex immIndex = null;
     
     private byte[] buffer = null;
     
@@ -111,23 +114,60 @@ public class SparseImageFormat implements ImageFormat {
                 BYTES_PER_PIXEL_VALUE * pixelCounts)
                     .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
 
-        Arrays.fill(pixelValues, 0.0f);
-        
-        int index = 0;
-        short value = 0;
-        
-		try {
-			while (true) {
-				index = indexBuffer.get();
-				value = valueBuffer.get();
-				pixelValues[index] = value;
-			}
-		} catch (BufferUnderflowException bn) {
-		}
+        decode(indexBuffer, valueBuffer, pixelCounts, frameIndex, f);
+    }
+
+    @Override
+    public long readNextFrame(FrameSource source, long offset, Frame f) throws IOException {
+        currentHeader.update(source.read(offset, Header.HEADER_SIZE_IN_BYTES));
+        int frameIndex = currentHeader.getFrameIndex();
+        int pixelCounts = currentHeader.getPixelCount();
+
+        f.setFrameClock(currentHeader.getClock());
+        f.setFrameTick(currentHeader.getCorecoTick());
+
+        ByteBuffer data = source.read(offset + Header.HEADER_SIZE_IN_BYTES,
+                BYTES_PER_PIXEL * pixelCounts);
+
+        data.limit(BYTES_PER_PIXEL_INDEX * pixelCounts);
+        IntBuffer indexBuffer = data.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        data.limit(BYTES_PER_PIXEL * pixelCounts);
+        data.position(BYTES_PER_PIXEL_INDEX * pixelCounts);
+        ShortBuffer valueBuffer = data.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+
+        decode(indexBuffer, valueBuffer, pixelCounts, frameIndex, f);
+
+        return offset + Header.HEADER_SIZE_IN_BYTES + BYTES_PER_PIXEL * pixelCounts;
+    }
+
+    @Override
+    public long skipFrame(FrameSource source, long offset, Frame f) throws IOException {
+        currentHeader.update(source.read(offset, Header.HEADER_SIZE_IN_BYTES));
+        int pixelCounts = currentHeader.getPixelCount();
+
+        f.setSparseImage(pixelIndices, 
+                   pixelValues, 
+                   0, 
+                   currentHeader.getFrameIndex(), 
+                   currentHeader.getClock(), 
+                   currentHeader.getCorecoTick());
+
+        return offset + Header.HEADER_SIZE_IN_BYTES + BYTES_PER_PIXEL * pixelCounts;
+    }
+
+    private void decode(IntBuffer indexBuffer, ShortBuffer valueBuffer, 
+            int pixelCounts, int frameIndex, Frame f) {
+        // Keep the frame sparse, filters work on the (index, value) pairs and 
+        //  only binning expands it to the full image. 
+        for (int i = 0; i < pixelCounts; i++) {
+            pixelIndices[i] = indexBuffer.get(i);
+            pixelValues[i] = valueBuffer.get(i);
+        }
+
         // Update the image contained in the frame. 
-        f.setImage(pixelIndices, 
+        f.setSparseImage(pixelIndices, 
                    pixelValues, 
-                   fullFrame, 
+                   pixelCounts, 
                    frameIndex, 
                    currentHeader.getClock(), 
                    currentHeader.getCorecoTick());
@@ -135,6 +175,14 @@ public class SparseImageFormat implements ImageFormat {
    
 	public boolean skip(FSDataInputStream fileIn, int toFrame, long lastByte)
 			throws IOException {
+        if (this.immIndex != null) {
+            long offset = this.immIndex.seekOffset(toFrame, fileIn.getPos(), lastByte);
+            if (offset < 0) return false;
+
+            fileIn.seek(offset);
+            return true;
+        }
+
         boolean found = false;
 
         while (true) {
@@ -164,4 +212,8 @@ public class SparseImageFormat implements ImageFormat {
         return found;
     }
 
+    @Override
+    public void setFrameIndex(IMMIndex index) {
+        this.immIndex = index;
+    }
 }
@@ -0,0 +1,182 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.mapred;
+
+import gov.anl.aps.xpcs.mapred.io.NormResult;
+import gov.anl.aps.xpcs.mapred.io.PartitionKey;
+import gov.anl.aps.xpcs.mapred.io.PartitionValue;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.mapred.OutputCollector;
+
+/**
+ * Merged {@link PartitionValue} statistics per static partition, for one 
+ * (dynamic partition, tau) key at a time. Only the static partitions that
+ * were seen are tracked and cleared, so the cost of a key does not depend
+ * on the total number of static partitions.
+ */
+public class StaticPartitionSums {
+
+    static final int COUNT = 0;
+    static final int G2 = 1;
+    static final int G2_SQUARE = 2;
+    static final int IFUTURE = 3;
+    static final int IPAST = 4;
+    static final int FIELDS = 5;
+
+    /**
+     * FIELDS sums per static partition, grown as partitions show up.
+     */
+    private double[] sums = new double[64 * FIELDS];
+    
+    private int[] present = new int[64];
+    
+    private int presentCount = 0;
+    
+    private PartitionValue value = new PartitionValue();
+    
+    public void add(PartitionValue v) {
+        int s = v.getStaticPartition();
+        int i = s * FIELDS;
+        if (i + FIELDS > sums.length) {
+            sums = Arrays.copyOf(sums, Math.max(i + FIELDS, 2 * sums.length));
+        }
+        
+        if (sums[i + COUNT] == 0) {
+            if (presentCount == present.length) {
+                present = Arrays.copyOf(present, 2 * present.length);
+            }
+            present[presentCount++] = s;
+        }
+        
+        sums[i + COUNT] += v.getCount();
+        sums[i + G2] += v.getG2();
+        sums[i + G2_SQUARE] += v.getG2Square();
+        sums[i + IFUTURE] += v.getiFuture();
+        sums[i + IPAST] += v.getiPast();
+    }
+    
+    public void clear() {
+        for (int k = 0; k < presentCount; k++) {
+            Arrays.fill(sums, present[k] * FIELDS, (present[k] + 1) * FIELDS, 0.0d);
+        }
+        presentCount = 0;
+    }
+    
+    /**
+     * Emit one merged value per static partition seen.
+     */
+    public void collect(PartitionKey key, 
+            OutputCollector<PartitionKey, PartitionValue> output) 
+                    throws IOException {
+        for (int k = 0; k < presentCount; k++) {
+            int i = present[k] * FIELDS;
+            value.set((short) present[k], (long) sums[i + COUNT], sums[i + G2], 
+                    sums[i + G2_SQUARE], sums[i + IFUTURE], sums[i + IPAST]);
+            output.collect(key, value);
+        }
+    }
+    
+    /**
+     * Normalized g2 mean and standard error over the static partitions 
+     * seen.
+     * 
+     * @return false if no static partition was seen.
+     */
+    public boolean normalize(NormResult result) {
+        Arrays.sort(present, 0, presentCount);
+        return normalize(sums, present, 0, presentCount, result);
+    }
+    
+    /**
+     * Normalized g2 mean and standard error of a dynamic partition from the
+     * statistics of its static partitions, stored FIELDS apart at the 
+     * given slots. 
+     * 
+     * Each g2 is normalized by the product of the average IF and IP of its
+     * static partition, and static partitions where either is zero are left
+     * out. The mean is the sum of the static partition means over the 
+     * number of static partitions, the error is that of all normalized g2.
+     * 
+     * @return false if none of the slots has records.
+     */
+    static boolean normalize(double[] sums, int[] slots, int from, int to, 
+            NormResult result) {
+        int staticPartitions = 0;
+        double normalizedSum = 0;
+        double samples = 0;
+        double sum = 0;
+        double squareSum = 0;
+        
+        for (int k = from; k < to; k++) {
+            int i = slots[k] * FIELDS;
+            double n = sums[i + COUNT];
+            if (n == 0) continue;
+            staticPartitions++;
+            
+            double iFutureAvg = sums[i + IFUTURE] / n;
+            double iPastAvg = sums[i + IPAST] / n;
+            if (iFutureAvg == 0 || iPastAvg == 0) continue;
+            
+            double factor = iFutureAvg * iPastAvg;
+            normalizedSum += sums[i + G2] / n / factor;
+            samples += n;
+            sum += sums[i + G2] / factor;
+            squareSum += sums[i + G2_SQUARE] / (factor * factor);
+        }
+        
+        if (staticPartitions == 0) return false;
+        
+        double mean = sum / samples;
+        double deviations = Math.max(0, squareSum - samples * mean * mean);
+        
+        result.setMean(normalizedSum / staticPartitions);
+        result.setError(Math.sqrt(1 / samples) * Math.sqrt(deviations / samples));
+        return true;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.mapred;
+
+import gov.anl.aps.xpcs.config.XPCSConfig;
+import gov.anl.aps.xpcs.mapred.io.QMapValue;
+import gov.anl.aps.xpcs.mapred.io.TileKey;
+import gov.anl.aps.xpcs.mapred.io.TwoTimeBinaryValue;
+import gov.anl.aps.xpcs.multitau.TwoTimeAccumulator;
+import gov.anl.aps.xpcs.multitau.TwoTimeStore;
+import gov.anl.aps.xpcs.util.FrameSum;
+import gov.anl.aps.xpcs.util.SmoothedSG;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Two-time of one tile of a q-bin. The pixel records of the tile's row and
+ * column segments arrive grouped by pixel, each pixel is normalized like in
+ * TwoTimesReducer and its products added to the tile.
+ * 
+ * A tile is written as q, row segment, column segment and segment count, 
+ * followed by the packed upper triangle of a diagonal tile or the row-major
+ * rectangle of any other tile. Products are summed in pixel order, so the 
+ * stitched tiles equal the two-time of a single reducer.
+ */
+public class TwoTimeTileReducer extends MapReduceBase implements 
+    Reducer<TileKey, QMapValue, TileKey, TwoTimeBinaryValue> {
+
+    private static final Logger logger = LoggerFactory.getLogger(
+            TwoTimeTileReducer.class.getName());
+
+    /**
+     * Doubles ahead of the tile data.
+     */
+    public static final int HEADER = 4;
+
+    private int frameCount = 0;
+    
+    private int segments = 1;
+    
+    private int segmentFrames = 1;
+    
+    private double frameSum[] = null;
+
+    private double smoothedSG[] = null;
+    
+    private XPCSConfig config = null;
+    
+    private double[] series = null;
+    
+    private TwoTimeStore tileStore = null;
+    
+    private TwoTimeBinaryValue twotime = new TwoTimeBinaryValue();
+
+    @Override
+    public void configure(JobConf job) {
+        super.configure(job);
+        config = new XPCSConfig(job);
+        
+        frameCount = config.getFramecount();
+        if (frameCount < 1) {
+            throw new RuntimeException("Failed to read frame count in two-time job");
+        }
+        
+        segments = config.getTwoTimeSegments();
+        segmentFrames = TileKey.getSegmentFrames(frameCount, segments);
+        
+        try {
+            FrameSum fsum = new FrameSum(config);
+            frameSum = fsum.getFrameSum();
+
+            SmoothedSG smg = new SmoothedSG(config);
+            smoothedSG = smg.getSmoothedSG();    
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read frame sums", e);
+        }
+    }
+
+    /**
+     * @return Frames of a segment.
+     */
+    public static int getSegmentLength(int segment, int frames, int segments) {
+        int segmentFrames = TileKey.getSegmentFrames(frames, segments);
+        return Math.max(0, Math.min(segmentFrames, frames - segment * segmentFrames));
+    }
+
+    /**
+     * @return Doubles of tile data, without the header.
+     */
+    public static long getTileSize(int row, int column, int frames, int segments) {
+        long rows = getSegmentLength(row, frames, segments);
+        if (row == column) {
+            return rows * (rows - 1) / 2;
+        }
+        return rows * getSegmentLength(column, frames, segments);
+    }
+
+    @Override
+    public void reduce(TileKey key, Iterator<QMapValue> values,
+            OutputCollector<TileKey, TwoTimeBinaryValue> output, Reporter reporter)
+            throws IOException {
+        int row = TileKey.getTileRow(key.getTile(), segments);
+        int column = TileKey.getTileColumn(key.getTile(), segments);
+        int rows = getSegmentLength(row, frameCount, segments);
+        int columns = row == column ? 0 : getSegmentLength(column, frameCount, segments);
+        
+        logger.info("Processing qmap " + key.getQ() + " tile " + row + "," + column);
+        
+        long size = HEADER + getTileSize(row, column, frameCount, segments);
+        if (tileStore == null || tileStore.size() != size) {
+            if (tileStore != null) {
+                tileStore.free();
+            }
+            tileStore = TwoTimeStore.create(size, config.getTwoTimePrecision(), 
+                    config.getIsTwoTimeOffHeap());
+        } else {
+            tileStore.clear();
+        }
+        if (series == null || series.length != rows + columns) {
+            series = new double[rows + columns];
+        }
+        
+        int blockPixels = Math.max(1, config.getTwoTimeBlockPixels());
+        TwoTimeAccumulator accumulator = row == column ? 
+                new TwoTimeAccumulator(rows, HEADER, blockPixels, 
+                        config.getTwoTimeThreads()) : 
+                new TwoTimeAccumulator(rows, columns, HEADER, blockPixels, 
+                        config.getTwoTimeThreads());
+        accumulator.setSparseOccupancy(config.getTwoTimeSparseOccupancy());
+        
+        try {
+            int pixel = -1;
+            while (values.hasNext()) {
+                QMapValue value = values.next();
+                
+                if (value.getIndex() != pixel) {
+                    if (pixel != -1) {
+                        accumulator.add(series, tileStore);
+                    }
+                    Arrays.fill(series, 0.0d);
+                    pixel = value.getIndex();
+                }
+                
+                int frame = value.getFrameIndex();
+                int offset = frame / segmentFrames == row ? 
+                        frame - row * segmentFrames : 
+                        rows + frame - column * segmentFrames;
+                if (value.getFrameValue() != 0 && smoothedSG[pixel] != 0 && 
+                        frameSum[frame] != 0) {
+                    series[offset] = value.getFrameValue() / 
+                            smoothedSG[pixel] / frameSum[frame];
+                }
+                reporter.progress();
+            }
+            
+            if (pixel != -1) {
+                accumulator.add(series, tileStore);
+            }
+            accumulator.flush(tileStore);
+        } finally {
+            accumulator.close();
+        }
+        
+        tileStore.set(0, key.getQ());
+        tileStore.set(1, row);
+        tileStore.set(2, column);
+        tileStore.set(3, segments);
+        twotime.setStore(tileStore);
+        output.collect(key, twotime);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (tileStore != null) {
+            tileStore.free();
+        }
+    }
+}
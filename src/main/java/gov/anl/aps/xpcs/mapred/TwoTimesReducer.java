@@ -55,6 +55,7 @@ import java.nio.DoubleBuffer;
 import gov.anl.aps.xpcs.config.XPCSConfig;
 import gov.anl.aps.xpcs.mapred.io.G2Key;
 import gov.anl.aps.xpcs.mapred.io.G2Value;
+import gov.anl.aps.xpcs.mapred.io.PixelFramesValue;
 import gov.anl.aps.xpcs.mapred.io.PixelKey;
 import gov.anl.aps.xpcs.mapred.io.PixelSumValue;
 import gov.anl.aps.xpcs.mapred.io.PixelValue;
@@ -63,12 +64,12 @@ import gov.anl.aps.xpcs.mapred.io.QMapValue;
 import gov.anl.aps.xpcs.mapred.io.TwoTimeBinaryValue;
 import gov.anl.aps.xpcs.mapred.io.PixelSumValue;
 import gov.anl.aps.xpcs.multitau.G2;
+import gov.anl.aps.xpcs.multitau.TwoTimeAccumulator;
+import gov.anl.aps.xpcs.multitau.TwoTimeStore;
 import gov.anl.aps.xpcs.util.QMaps;
 import gov.anl.aps.xpcs.util.FrameSum;
 import gov.anl.aps.xpcs.util.PixelSum;
 import gov.anl.aps.xpcs.util.SmoothedSG;
-import gov.anl.aps.xpcs.mapred.pixelfilter.PixelFilterStride;
-import gov.anl.aps.xpcs.mapred.pixelfilter.PixelFilterSum;
 
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.MapReduceBase;
@@ -94,6 +95,16 @@ Reducer<QMapKey, QMapValue, QMapKey, TwoTimeBinaryValue> {
 
     private double[] twotimesBuffer = null;
 
+    /**
+     * Packed two-time result, the q value followed by the upper triangle or
+     * the band.
+     */
+    private TwoTimeStore store = null;
+
+    private double[] seriesBuffer = null;
+
+    private float[] mergedSeries = null;
+
 	private int frameCount;
 	
 	private QMapValue lastvalue = null;
@@ -117,10 +128,12 @@ Reducer<QMapKey, QMapValue, QMapKey, TwoTimeBinaryValue> {
 
     // private int[] pixelsPerBin = null;
 
-    private PixelFilterStride pixelFilterStride = null;
-    private PixelFilterSum pixelFilterSum = null;
-    
     private XPCSConfig config = null;
+    
+    /**
+     * Blocked update of the two-time matrix, null to update pixel by pixel.
+     */
+    private TwoTimeAccumulator accumulator = null;
 
     @Override
     public void configure(JobConf job) {
@@ -130,9 +143,6 @@ Reducer<QMapKey, QMapValue, QMapKey, TwoTimeBinaryValue> {
         frameCount = config.getFramecount();
         intensities = new double[frameCount];
 
-        //twotimes = new byte[(frameCount * frameCount * 4) + 8];
-        twotimesBuffer = new double[frameCount * frameCount]; //ByteBuffer.wrap(twotimes).asDoubleBuffer();
-
         this.frameWidthBin = config.getFrameWidth() / (int) config.getBinX();
 
         if (frameCount < 1) {
@@ -149,6 +159,35 @@ Reducer<QMapKey, QMapValue, QMapKey, TwoTimeBinaryValue> {
         } catch (IOException e) {
             e.printStackTrace();
         }
+
+        int band = config.getTwoTimeBand();
+        int blockPixels = config.getTwoTimeBlockPixels();
+        String precision = config.getTwoTimePrecision();
+        boolean offHeap = config.getIsTwoTimeOffHeap();
+        
+        if (band <= 0 && blockPixels <= 0 && !offHeap && 
+                TwoTimeStore.DOUBLE.equals(precision)) {
+            // Pixel by pixel update of the packed upper triangle.
+            twotimesBuffer = new double[(int) (1 + 
+                    TwoTimeAccumulator.getTriangleSize(frameCount))];
+            store = TwoTimeStore.wrap(twotimesBuffer);
+            return;
+        }
+        
+        if (band > 0) {
+            // Only the band of W products per frame is kept and written.
+            store = TwoTimeStore.create(1 + (long) frameCount * band, 
+                    precision, offHeap);
+            accumulator = TwoTimeAccumulator.forBand(frameCount, band, 1, 
+                    Math.max(1, blockPixels), config.getTwoTimeThreads());
+        } else {
+            store = TwoTimeStore.create(1 + 
+                    TwoTimeAccumulator.getTriangleSize(frameCount), 
+                    precision, offHeap);
+            accumulator = new TwoTimeAccumulator(frameCount, 
+                    Math.max(1, blockPixels), config.getTwoTimeThreads());
+        }
+        accumulator.setSparseOccupancy(config.getTwoTimeSparseOccupancy());
     }
   
     @Override
@@ -175,12 +214,116 @@ Reducer<QMapKey, QMapValue, QMapKey, TwoTimeBinaryValue> {
             update2T();
         }
 
-        this.twotimesBuffer[0] = key.getQ();
-        this.twotime.setData(this.twotimesBuffer);
-        output.collect(key, this.twotime);
+        output.collect(key, getResult(key.getQ()));
+    }
+
+    /**
+     * Add the two-time contribution of one pixel from its complete series, 
+     * as stored in the pixel-major store.
+     * 
+     * @param pixelIndex index of the pixel in the binned frame (y * width + x)
+     * @param series raw intensity of the pixel for every frame
+     * @param length number of valid values in series
+     */
+    public void accumulate(int pixelIndex, float[] series, int length) {
+        if (seriesBuffer == null) {
+            seriesBuffer = new double[frameCount];
+        }
+        
+        Arrays.fill(seriesBuffer, 0.0d);
+        
+        double sg = smoothedSG[pixelIndex];
+        if (sg != 0) {
+            int n = Math.min(length, frameCount);
+            for (int i = 0; i < n; i++) {
+                if (series[i] != 0 && frameSum[i] != 0) {
+                    seriesBuffer[i] = series[i] / sg / frameSum[i];
+                }
+            }
+        }
+        
+        intensities = seriesBuffer;
+        
+        update2T();
+    }
+    
+    /**
+     * @return the accumulated two-time result for the given q-bin.
+     */
+    public TwoTimeBinaryValue getResult(short q) {
+        flush2T();
+        this.store.set(0, q);
+        this.twotime.setStore(this.store);
+        return this.twotime;
+    }
+    
+    /**
+     * Clear the accumulated result before processing the next q-bin.
+     */
+    public void reset() {
+        store.clear();
+    }
+
+    /**
+     * Two-time from the per split records of the pixels in a q-bin, as 
+     * emitted by QMapAggregateMapper. Records of a pixel arrive next to 
+     * each other and are merged before the pixel is accumulated.
+     */
+    public void reduceFrames(QMapKey key, Iterator<PixelFramesValue> values,
+            OutputCollector<QMapKey, TwoTimeBinaryValue> output, Reporter reporter)
+            throws IOException {
+
+        logger.info("Processing qmap " + key.getQ());
+
+        if (mergedSeries == null) {
+            mergedSeries = new float[frameCount];
+        }
+
+        int pixel = -1;
+        while (values.hasNext()) {
+            PixelFramesValue value = values.next();
+
+            if (value.getPixelIndex() != pixel) {
+                if (pixel != -1) {
+                    accumulate(pixel, mergedSeries, frameCount);
+                    Arrays.fill(mergedSeries, 0.0f);
+                }
+                pixel = value.getPixelIndex();
+            }
+
+            for (int i = 0; i < value.getCount(); i++) {
+                int frame = value.getFrame(i);
+                if (frame >= 0 && frame < frameCount) {
+                    mergedSeries[frame] = value.getValue(i);
+                }
+            }
+            reporter.progress();
+        }
+
+        if (pixel != -1) {
+            accumulate(pixel, mergedSeries, frameCount);
+            Arrays.fill(mergedSeries, 0.0f);
+        }
+
+        output.collect(key, getResult(key.getQ()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (accumulator != null) {
+            accumulator.close();
+        }
+        if (store != null) {
+            store.free();
+        }
     }
 
     private void update2T() {
+        if (accumulator != null) {
+            accumulator.add(intensities, store);
+            return;
+        }
+        
         int index = 1;
 
     	for (int i = 0 ; i < this.intensities.length; i++) {
@@ -208,6 +351,15 @@ Reducer<QMapKey, QMapValue, QMapKey, TwoTimeBinaryValue> {
     	}
     }
 
+    /**
+     * Apply the pixels still staged for a blocked update.
+     */
+    private void flush2T() {
+        if (accumulator != null) {
+            accumulator.flush(store);
+        }
+    }
+
     protected void readIntensities(Iterator<QMapValue> it) {
         int pixelmark = -1;
         if (lastvalue != null) {
@@ -245,16 +397,6 @@ Reducer<QMapKey, QMapValue, QMapKey, TwoTimeBinaryValue> {
             }
 
         }
-
-        if (this.config.getPixelFilterStride() > 1)
-        {
-            intensities = pixelFilterStride.apply(intensities);
-        }
-
-        if (this.config.getPixelFilterSum() > 1)
-        {
-            intensities = pixelFilterSum.apply(intensities);
-        }
         
     }
 }
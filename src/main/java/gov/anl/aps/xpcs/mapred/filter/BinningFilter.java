@@ -62,7 +62,15 @@ public class BinningFilter implements Filter {
     	ybin = (int) configuration.getBinY();
     }
 
+    public BinningFilter(int xbin, int ybin) {
+        this.xbin = xbin;
+        this.ybin = ybin;
+    }
+
     public void apply(Frame f) {
+        // Binning works on the image layout. 
+        f.densify();
+
         int width = f.getWidth();
         int height = f.getHeight();
         
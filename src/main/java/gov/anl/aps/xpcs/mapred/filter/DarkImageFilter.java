@@ -67,12 +67,26 @@ public class DarkImageFilter implements Filter {
         }
 	}
 
+	public DarkImageFilter(DarkImage darkImage) {
+		this.darkImage = darkImage;
+	}
+
 	public void apply(Frame f) {
 		float values[] = f.getPixels();
 		
 		float value = 0;
 		int kineticsOffset = f.getKineticsPixelOffset();
 		
+		if (f.isSparse()) {
+			int index[] = f.getIndices();
+			if (darkImage == null) return;
+
+			for (int i = 0; i < f.getPixelCounts(); i++) {
+				values[i] = darkImage.darkSubtract(values[i], index[i] + kineticsOffset);
+			}
+			return;
+		}
+
 		for (int px = 0; px < f.getPixelCounts(); px++) {			
 			if (darkImage != null) {
 				value = darkImage.darkSubtract(values[px], px + kineticsOffset);
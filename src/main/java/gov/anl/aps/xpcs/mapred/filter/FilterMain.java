@@ -62,6 +62,16 @@ public class FilterMain implements Filter {
 	private ArrayList<Filter> filters = new ArrayList<Filter>();
 
 	public FilterMain(XPCSConfig config) {
+		if (config.getIsFusedFilter()) {
+			try {
+				filters.add(new FusedFilter(config));
+				logger.debug("Fused filter added");
+			} catch (IOException e) {
+				throw new RuntimeException("Could not read partition file", e);
+			}
+			return;
+		}
+		
 		FlatFieldFilter flatfield = new FlatFieldFilter(config);
 		BinningFilter binning = new BinningFilter(config);
 		DarkImageFilter darkImage = null;
@@ -85,8 +95,7 @@ public class FilterMain implements Filter {
 			filters.add(new QMapFilter(config));
 			logger.debug("QMap filter added");
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			throw new RuntimeException("Could not read partition file", e);
 		}
 	}
 	
@@ -67,8 +67,18 @@ public class FlatFieldFilter implements Filter {
 		flatImage = f.getFlatField();
 	}
 
+	public FlatFieldFilter(double[] flatImage) {
+		this.flatImage = flatImage;
+	}
+
 	public void apply(Frame f) {
 
+		if (f.isSparse()) {
+			FlatField.applyFlatField(f.getPixels(), f.getIndices(), 
+					f.getPixelCounts(), this.flatImage);
+			return;
+		}
+
 		FlatField.applyFlatField(f.getPixels(), f.getPixelCounts(),
 				this.flatImage);
 	}
@@ -0,0 +1,311 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.mapred.filter;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+import gov.anl.aps.xpcs.config.XPCSConfig;
+import gov.anl.aps.xpcs.mapred.io.Frame;
+import gov.anl.aps.xpcs.util.DarkImage;
+import gov.anl.aps.xpcs.util.FlatField;
+import gov.anl.aps.xpcs.util.QMaps;
+
+/**
+ * Flat field, dark subtraction, binning and the qmap mask applied in a 
+ * single pass over the frame. The result is the same as running 
+ * FlatFieldFilter, DarkImageFilter, BinningFilter and QMapFilter one after 
+ * the other.
+ */
+public class FusedFilter implements Filter {
+
+    /**
+     * Flat field image, null if disabled.
+     */
+    private double[] flatImage = null;
+
+    /**
+     * Dark image, null if disabled.
+     */
+    private DarkImage darkImage = null;
+
+    private int xbin = 1;
+
+    private int ybin = 1;
+
+    /**
+     * Pixels that are not part of any partition. 
+     */
+    private BitSet pixelMask = null;
+
+    /**
+     * Index of the first pixel of every bin, computed for the frame size 
+     * in binWidth and binHeight.
+     */
+    private int[] binAnchors = null;
+
+    private int binWidth = -1;
+
+    private int binHeight = -1;
+
+    /**
+     * True if binning reads pixels that were already overwritten by the 
+     * in-place Binning.bin, so it can't be done in a single pass.
+     */
+    private boolean irregularBins = false;
+
+    public FusedFilter(XPCSConfig config) throws IOException {
+        if (config.getIsFlatFieldEnabled()) {
+            flatImage = new FlatField(config).getFlatField();
+        }
+
+        if (!config.getIsSparse() && config.getDarkFrames() > 0) {
+            darkImage = DarkImage.initFromFiles(config,
+                    "darkAverages", "darkStds");
+        }
+
+        xbin = (int) config.getBinX();
+        ybin = (int) config.getBinY();
+
+        QMaps partitions = new QMaps(config);
+        pixelMask = partitions.getPixelMaskBits();
+        if (pixelMask == null) {
+            throw new IOException ("Invalid partition data");
+        }
+    }
+
+    public FusedFilter(double[] flatImage, DarkImage darkImage, int xbin, 
+            int ybin, BitSet pixelMask) {
+        this.flatImage = flatImage;
+        this.darkImage = darkImage;
+        this.xbin = xbin;
+        this.ybin = ybin;
+        this.pixelMask = pixelMask;
+    }
+
+    public void apply(Frame f) {
+        boolean binning = xbin > 1 || ybin > 1;
+
+        if (f.isSparse()) {
+            if (!binning) {
+                applySparse(f);
+                return;
+            }
+            // Binning works on the image layout. 
+            f.densify();
+        }
+
+        if (binning) {
+            applyBinned(f);
+        } else {
+            applyDense(f, true);
+        }
+    }
+
+    private float correct(float value, int px, int kineticsOffset) {
+        if (flatImage != null) {
+            value *= flatImage[px];
+        }
+        if (darkImage != null) {
+            value = darkImage.darkSubtract(value, px + kineticsOffset);
+        }
+        return value;
+    }
+
+    private void applySparse(Frame f) {
+        float values[] = f.getPixels();
+        int index[] = f.getIndices();
+        int kineticsOffset = f.getKineticsPixelOffset();
+        int pixels = f.getPixelCounts();
+
+        double frameSum = 0;
+        int cnt = 0;
+
+        for (int i = 0; i < pixels; i++) {
+            int px = index[i];
+            if (pixelMask.get(px)) continue;
+
+            float value = correct(values[i], px, kineticsOffset);
+            if (value <= 0) continue;
+
+            index[cnt] = px;
+            values[cnt] = value;
+            frameSum += value;
+            cnt++;
+        }
+
+        f.setPixelCounts(cnt);
+        f.setFrameSum(frameSum);
+    }
+
+    private void applyDense(Frame f, boolean correct) {
+        float values[] = f.getPixels();
+        int index[] = f.getIndices();
+        int kineticsOffset = f.getKineticsPixelOffset();
+        int pixels = f.getPixelCounts();
+
+        double frameSum = 0;
+        int cnt = 0;
+
+        for (int px = 0; px < pixels; px++) {
+            if (pixelMask.get(px)) continue;
+
+            float value = correct ? correct(values[px], px, kineticsOffset) : 
+                                    values[px];
+            if (value <= 0) continue;
+
+            index[cnt] = px;
+            values[cnt] = value;
+            frameSum += value;
+            cnt++;
+        }
+
+        f.setPixelCounts(cnt);
+        f.setFrameSum(frameSum);
+        f.setSparse(true);
+    }
+
+    private void applyBinned(Frame f) {
+        int width = f.getWidth();
+        int height = f.getHeight();
+
+        if (width != binWidth || height != binHeight) {
+            computeBinAnchors(width, height);
+        }
+
+        if (irregularBins) {
+            applyInPlace(f);
+            return;
+        }
+
+        float values[] = f.getPixels();
+        int index[] = f.getIndices();
+        int kineticsOffset = f.getKineticsPixelOffset();
+        int bins = binAnchors.length;
+
+        double frameSum = 0;
+        int cnt = 0;
+
+        // Compacted output only overwrites pixels before the anchor of the 
+        // current bin, which are never read again.
+        for (int x = 0; x < bins; x++) {
+            if (pixelMask.get(x)) continue;
+
+            int sum = 0;
+            int anchor = binAnchors[x];
+            for (int i = 0; i < ybin; i++) {
+                int px = anchor + i * width;
+                for (int j = 0; j < xbin; j++, px++) {
+                    sum += correct(values[px], px, kineticsOffset);
+                }
+            }
+
+            float value = sum;
+            if (value <= 0) continue;
+
+            index[cnt] = x;
+            values[cnt] = value;
+            frameSum += value;
+            cnt++;
+        }
+
+        f.setPixelCounts(cnt);
+        f.setFrameSum(frameSum);
+        f.setSparse(true);
+    }
+
+    /**
+     * Fallback for bin layouts where Binning.bin overlaps its own output. 
+     */
+    private void applyInPlace(Frame f) {
+        float values[] = f.getPixels();
+        int kineticsOffset = f.getKineticsPixelOffset();
+        int pixels = f.getPixelCounts();
+
+        for (int px = 0; px < pixels; px++) {
+            values[px] = correct(values[px], px, kineticsOffset);
+        }
+
+        Binning.bin(values, f.getWidth(), f.getHeight(), xbin, ybin);
+        f.setPixelCounts(binAnchors.length);
+
+        applyDense(f, false);
+    }
+
+    /**
+     * Walk the bins in the same order as Binning.bin and record the first 
+     * pixel of every bin.
+     */
+    private void computeBinAnchors(int width, int height) {
+        int xbins = (int) Math.floor((double) width / xbin);
+        int ybins = (int) Math.floor((double) height / ybin);
+
+        binAnchors = new int[xbins * ybins];
+        binWidth = width;
+        binHeight = height;
+        irregularBins = false;
+
+        if (binAnchors.length == 0) return;
+
+        int maxcols = width - (width % xbins);
+        int row = 0;
+        int col = 0;
+
+        for (int x = 0; x < binAnchors.length; x++) {
+            binAnchors[x] = row * width + col;
+
+            // A bin has to start after every bin written before it.
+            if (binAnchors[x] < x) {
+                irregularBins = true;
+            }
+
+            col = (col + xbin) % maxcols;
+            if (col == 0) {
+                row = row + ybin;
+            }
+        }
+    }
+}
@@ -68,6 +68,10 @@ public class QMapFilter implements Filter {
             throw new IOException ("Invalid partition data");
         }
 	}
+
+	public QMapFilter(HashSet<Integer> pixelMask) {
+		this.pixelMask = pixelMask;
+	}
 	
 	public void apply(Frame f) {
 		float values[] = f.getPixels();	
@@ -77,6 +81,24 @@ public class QMapFilter implements Filter {
 		
 		int cnt = 0;
 		
+		if (f.isSparse()) {
+			int px = 0;
+			for (int i = 0; i < f.getPixelCounts(); i++) {
+				px = index[i];
+				if (pixelMask.contains(px)) continue;
+				if (values[i] <= 0) continue;
+
+				index[cnt] = px;
+				values[cnt] = values[i];
+				frameSum += values[i];
+				cnt++;
+			}
+
+			f.setPixelCounts(cnt);
+			f.setFrameSum(frameSum);
+			return;
+		}
+
 		for (int px = 0; px < f.getPixelCounts(); px++) {
 			
 			if (pixelMask.contains(px)) continue;
@@ -91,5 +113,6 @@ public class QMapFilter implements Filter {
 		// Update total number of valid pixels in the frame
 		f.setPixelCounts(cnt);
 		f.setFrameSum(frameSum);
+		f.setSparse(true);
 	}
 }
@@ -48,9 +48,26 @@ package gov.anl.aps.xpcs.mapred.io;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.io.WritableComparator;
 
+/**
+ * Sorts serialized QMapKey records by (q, pixelIndex) directly on the 
+ * shuffle bytes, without deserializing either key.
+ */
 public class CompositeKeyComparator extends WritableComparator {
 	protected CompositeKeyComparator() {
-		super(QMapKey.class, true);
+		super(QMapKey.class);
+	}
+	
+	@Override
+	public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+		int res = QMapKey.compareQ(b1, s1, b2, s2);
+		if (res != 0) {
+			return res;
+		}
+		
+		int p1 = readInt(b1, s1 + 2);
+		int p2 = readInt(b2, s2 + 2);
+		
+		return p1 < p2 ? -1 : (p1 == p2 ? 0 : 1);
 	}
 	
 	@Override
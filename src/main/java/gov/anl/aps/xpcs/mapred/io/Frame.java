@@ -49,6 +49,7 @@ import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
 import java.nio.BufferUnderflowException;
 
+import java.util.Arrays;
 import java.util.HashSet;
 
 public class Frame {
@@ -104,6 +105,17 @@ public class Frame {
 
     private int frameOffset = 0;
 
+    /**
+     * True if the frame holds (index, value) pairs of non-zero pixels only, 
+     * false if values are stored at their pixel index (dense frame).
+     */
+    private boolean sparse = false;
+
+    /**
+     * Buffer used when a sparse frame has to be expanded.
+     */
+    private float[] denseValues = null;
+
 	// Frame constructor. The frame object can be reused
     // as long as the height and width remains the same.
     // 
@@ -126,6 +138,51 @@ public class Frame {
     	this.frameIndex = frameNo;
     	this.frameClock = clock;
         this.frameTick = tick;
+        this.sparse = false;
+    }
+
+    /**
+     * Set a sparse image, index[i] is the pixel index of values[i].
+     */
+	public void setSparseImage(int[] index, 
+                        float[] values, 
+                        int pixels, 
+                        int frameNo,
+                        double clock,
+                        double tick) {
+        setImage(index, values, pixels, frameNo, clock, tick);
+        this.sparse = true;
+    }
+
+    public boolean isSparse() {
+        return this.sparse;
+    }
+
+    public void setSparse(boolean flag) {
+        this.sparse = flag;
+    }
+
+    /**
+     * Expand a sparse frame into a full (width * height) image. Only needed 
+     *  by filters that work on the image layout, i.e. binning. 
+     */
+    public void densify() {
+        if (!this.sparse) return;
+
+        int size = this.frameWidth * this.frameHeight;
+        if (denseValues == null || denseValues.length < size) {
+            denseValues = new float[size];
+        } else {
+            Arrays.fill(denseValues, 0, size, 0.0f);
+        }
+
+        for (int i = 0; i < this.pixelCounts; i++) {
+            denseValues[this.pixelIndices[i]] = this.pixelValues[i];
+        }
+
+        this.pixelValues = denseValues;
+        this.pixelCounts = size;
+        this.sparse = false;
     }
    
     public float[] getPixels() {
@@ -209,6 +266,33 @@ public class Frame {
     }
 
 
+    /**
+     * Copy the valid pixels and the frame information from another frame. 
+     *  The pixel arrays of this frame are allocated on first use, so the
+     *  copy does not share any state with the source frame.
+     */
+    public void copyFrom(Frame other) {
+        int count = other.getPixelCounts();
+        int capacity = Math.max(count, this.frameWidth * this.frameHeight);
+
+        if (this.pixelIndices == null || this.pixelIndices.length < capacity) {
+            this.pixelIndices = new int[capacity];
+            this.pixelValues = new float[capacity];
+        }
+
+        System.arraycopy(other.getIndices(), 0, this.pixelIndices, 0, count);
+        System.arraycopy(other.getPixels(), 0, this.pixelValues, 0, count);
+
+        this.pixelCounts = count;
+        this.frameIndex = other.getFrameActualIndex();
+        this.frameOffset = other.frameOffset;
+        this.frameSum = other.getFrameSum();
+        this.frameClock = other.getFrameClock();
+        this.frameTick = other.getFrameTick();
+        this.kineticsPixelOffset = other.getKineticsPixelOffset();
+        this.sparse = other.isSparse();
+    }
+
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("Frame - ");
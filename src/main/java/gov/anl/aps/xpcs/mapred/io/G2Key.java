@@ -49,8 +49,6 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 
-import org.apache.commons.lang.builder.EqualsBuilder;
-import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.io.WritableComparator;
 
@@ -87,13 +85,13 @@ public class G2Key implements WritableComparable<G2Key> {
         this.tau = in.readInt();
     }
     
+    /**
+     * Same value as HashCodeBuilder().append(X).append(Y).append(tau), 
+     * without the allocation.
+     */
     @Override
     public int hashCode() {
-        return new HashCodeBuilder().append(X)
-                                    .append(Y)
-                                    .append(tau)
-                                    .toHashCode();
-        
+        return ((17 * 37 + X) * 37 + Y) * 37 + tau;
     }
     
     
@@ -137,9 +135,7 @@ public class G2Key implements WritableComparable<G2Key> {
     public boolean equals(Object obj) {
         if (obj instanceof G2Key) {
             G2Key key = (G2Key) obj;
-            return new EqualsBuilder().append(this.X, key.getX())
-                    .append(this.Y, key.getY())
-                    .append(this.tau, key.getTau()).isEquals();
+            return this.X == key.X && this.Y == key.Y && this.tau == key.tau;
         }
         return false;
     }
@@ -48,12 +48,22 @@ package gov.anl.aps.xpcs.mapred.io;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.io.WritableComparator;
 
+/**
+ * Groups serialized QMapKey records on q alone, reading the leading short
+ * from the shuffle bytes.
+ */
 public class NaturalKeyGroupingComparator extends WritableComparator {
 	
 	public NaturalKeyGroupingComparator	() {
-		super(QMapValue.class, true);
+		super(QMapKey.class);
 	}
 	
+	@Override
+	public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+		return QMapKey.compareQ(b1, s1, b2, s2);
+	}
+	
+	@Override
 	public int compare(WritableComparable w1, WritableComparable w2) {
 		QMapKey k1 = (QMapKey) w1;
 		QMapKey k2 = (QMapKey) w2;
@@ -50,32 +50,52 @@ import gov.anl.aps.xpcs.config.XPCSConfig;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.Partitioner;
 
-import java.util.HashMap;
+import java.util.Arrays;
 
 
 
 public class NaturalKeyPartitioner implements Partitioner {
 	
-    private HashMap<Short, Integer> partitions = new HashMap<Short, Integer>();
+    /**
+     * Partition number indexed by q, -1 for bins not in the process list.
+     * A flat table keeps the per-record lookup free of boxing.
+     */
+    private int[] partitions = new int[0];
 
     @Override
 	public int getPartition(Object k, Object v, int numParitions) {
 		QMapKey key = (QMapKey) k;
+		int q = key.getQ();
+		
+		int part = (q >= 0 && q < partitions.length) ? partitions[q] : -1;
+		if (part < 0) {
+		    part = q & Integer.MAX_VALUE;
+		}
         
-		return partitions.get(key.getQ()) % numParitions;
+		return part % numParitions;
 	}
 	
 	public void configure(JobConf conf) { 
         XPCSConfig config = new XPCSConfig(conf);
         String[] bins = config.getQMapBinsToProcess();
 
-        int partno = 0;
+        short[] qs = new short[bins.length];
+        int maxQ = -1;
 
-        for (String bin: bins) {
-            String[] tkn = bin.split("\\.");
-            partitions.put(Short.parseShort(tkn[0]), partno++);
+        for (int i = 0; i < bins.length; i++) {
+            String[] tkn = bins[i].split("\\.");
+            qs[i] = Short.parseShort(tkn[0]);
+            maxQ = Math.max(maxQ, qs[i]);
         }
 
+        partitions = new int[maxQ + 1];
+        Arrays.fill(partitions, -1);
+        
+        for (int partno = 0; partno < qs.length; partno++) {
+            if (qs[partno] >= 0) {
+                partitions[qs[partno]] = partno;
+            }
+        }
     }
 
 }
\ No newline at end of file
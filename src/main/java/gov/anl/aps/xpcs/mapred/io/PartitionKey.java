@@ -49,8 +49,6 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 
-import org.apache.commons.lang.builder.EqualsBuilder;
-import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.io.WritableComparator;
 
@@ -85,6 +83,10 @@ public class PartitionKey implements WritableComparable<PartitionKey> {
         this.tau = tau;
     }
 
+    public int getTau() {
+        return tau;
+    }
+
     /**
      * @return the timeInSeconds
      */
@@ -92,10 +94,13 @@ public class PartitionKey implements WritableComparable<PartitionKey> {
         return tau;
     }
 
+    /**
+     * Same value as HashCodeBuilder().append(tau).append(dynamicPartition),
+     * without the allocation.
+     */
     @Override
     public int hashCode() {
-        return new HashCodeBuilder().append(tau)
-                .append(dynamicPartition).toHashCode();
+        return (17 * 37 + tau) * 37 + dynamicPartition;
     }
 
     @Override
@@ -113,9 +118,7 @@ public class PartitionKey implements WritableComparable<PartitionKey> {
     @Override
     public boolean equals(Object obj) {
         PartitionKey key = (PartitionKey) obj;
-        return new EqualsBuilder()
-                .append(dynamicPartition, key.dynamicPartition)
-                .append(tau, key.tau).isEquals();
+        return dynamicPartition == key.dynamicPartition && tau == key.tau;
     }
     
     @Override
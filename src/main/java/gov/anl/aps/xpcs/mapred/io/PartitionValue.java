@@ -50,27 +50,46 @@ import java.io.DataOutput;
 import java.io.IOException;
 
 import org.apache.hadoop.io.Writable;
-
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Sufficient statistics of the g2 records of one static partition, for the
+ * dynamic partition and tau of the key: the record count and the sums of 
+ * g2, g2 squared, IF and IP. A single pixel record has a count of one, and
+ * partial statistics of the same static partition merge by adding them.
+ */
 public class PartitionValue implements Writable {
 
     private static final String SEP = ",";
 
+    private short staticPartition;
+    private long count;
     private double g2;
+    private double g2Square;
     private double iFuture;
     private double iPast;
-    private short staticPartition;
 
     public PartitionValue() {
         super();
     }
 
+    /**
+     * Statistics of a single g2 record.
+     */
     public PartitionValue(double g2, double iFuture,
             double iPast, short staticPartition) {
         super();
+        set(staticPartition, 1, g2, g2 * g2, iFuture, iPast);
+    }
+
+    public void set(short staticPartition, long count, double g2, 
+            double g2Square, double iFuture, double iPast) {
+        this.staticPartition = staticPartition;
+        this.count = count;
         this.g2 = g2;
+        this.g2Square = g2Square;
         this.iFuture = iFuture;
         this.iPast = iPast;
-        this.staticPartition = staticPartition;
     }
 
     public short getStaticPartition() {
@@ -81,44 +100,56 @@ public class PartitionValue implements Writable {
         this.staticPartition = staticPartition;
     }
 
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return Sum of the g2 values.
+     */
     public double getG2() {
         return g2;
     }
 
-    public void setG2(double g2) {
-        this.g2 = g2;
+    /**
+     * @return Sum of the squared g2 values.
+     */
+    public double getG2Square() {
+        return g2Square;
     }
 
+    /**
+     * @return Sum of the IF values.
+     */
     public double getiFuture() {
         return iFuture;
     }
 
-    public void setiFuture(double iFuture) {
-        this.iFuture = iFuture;
-    }
-
+    /**
+     * @return Sum of the IP values.
+     */
     public double getiPast() {
         return iPast;
     }
 
-    public void setiPast(double iPast) {
-        this.iPast = iPast;
-    }
-
     @Override
     public void readFields(DataInput input) throws IOException {
+        staticPartition = input.readShort();
+        count = WritableUtils.readVLong(input);
         g2 = input.readDouble();
+        g2Square = input.readDouble();
         iFuture = input.readDouble();
         iPast = input.readDouble();
-        staticPartition = input.readShort();
     }
     
     @Override
     public void write(DataOutput output) throws IOException {
+        output.writeShort(staticPartition);
+        WritableUtils.writeVLong(output, count);
         output.writeDouble(g2);
+        output.writeDouble(g2Square);
         output.writeDouble(iFuture);
         output.writeDouble(iPast);
-        output.writeShort(staticPartition);
     }
     
     @Override
@@ -131,11 +162,11 @@ public class PartitionValue implements Writable {
         sb.append(iFuture);
         sb.append(SEP);
         sb.append(staticPartition);
+        sb.append(SEP);
+        sb.append(count);
+        sb.append(SEP);
+        sb.append(g2Square);
         
         return sb.toString();
     }
-
-   
-
-
 }
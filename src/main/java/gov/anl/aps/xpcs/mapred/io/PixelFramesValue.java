@@ -0,0 +1,143 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.mapred.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Intensities of one pixel over a range of frames, packed as delta encoded
+ * frame indices followed by the intensities. Replaces one PixelValue record 
+ * per (pixel, frame) in the shuffle.
+ */
+public class PixelFramesValue implements Writable {
+
+    private int pixelIndex = 0;
+
+    private int[] frames = new int[0];
+
+    private float[] values = new float[0];
+
+    private int offset = 0;
+
+    private int count = 0;
+
+    public PixelFramesValue() {
+        super();
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, pixelIndex);
+        WritableUtils.writeVInt(out, count);
+
+        int last = 0;
+        for (int i = offset; i < offset + count; i++) {
+            WritableUtils.writeVInt(out, frames[i] - last);
+            last = frames[i];
+        }
+
+        for (int i = offset; i < offset + count; i++) {
+            out.writeFloat(values[i]);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        this.pixelIndex = WritableUtils.readVInt(in);
+        this.count = WritableUtils.readVInt(in);
+        this.offset = 0;
+
+        if (frames.length < count) {
+            frames = new int[count];
+            values = new float[count];
+        }
+
+        int last = 0;
+        for (int i = 0; i < count; i++) {
+            last += WritableUtils.readVInt(in);
+            frames[i] = last;
+        }
+
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readFloat();
+        }
+    }
+
+    /**
+     * Reference count entries of the given arrays starting at offset, the 
+     *  arrays are not copied. Frames should be in increasing order to keep 
+     *  the deltas small.
+     */
+    public void set(int pixelIndex, int[] frames, float[] values, int offset, 
+            int count) {
+        this.pixelIndex = pixelIndex;
+        this.frames = frames;
+        this.values = values;
+        this.offset = offset;
+        this.count = count;
+    }
+
+    public int getPixelIndex() {
+        return pixelIndex;
+    }
+
+    public int getFrame(int i) {
+        return frames[offset + i];
+    }
+
+    public float getValue(int i) {
+        return values[offset + i];
+    }
+
+    public int getCount() {
+        return count;
+    }
+}
@@ -49,7 +49,6 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 
-import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.io.WritableComparator;
 
@@ -118,11 +117,13 @@ public class PixelKey implements WritableComparable<PixelKey> {
         return sb.toString();
     }
 
+    /**
+     * Same value as HashCodeBuilder().append(X).append(Y), without the 
+     * allocation, so hash partitioning is unchanged.
+     */
     @Override
     public int hashCode() {
-        return new HashCodeBuilder().append(this.X)
-                                    .append(this.Y)
-                                    .toHashCode();
+        return (17 * 37 + this.X) * 37 + this.Y;
     }
     
     @Override
@@ -49,8 +49,6 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 
-import org.apache.commons.lang.builder.EqualsBuilder;
-import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.io.WritableComparator;
 
@@ -82,10 +80,12 @@ public class QMapKey implements WritableComparable<QMapKey> {
         this.pixelIndex = in.readInt();
     }
     
+    /**
+     * Same value as HashCodeBuilder().append(q), without the allocation.
+     */
     @Override
     public int hashCode() {
-        return new HashCodeBuilder().append(this.q)
-                                    .toHashCode();
+        return 17 * 37 + this.q;
     }
     
  	public short getQ() {
@@ -118,8 +118,7 @@ public class QMapKey implements WritableComparable<QMapKey> {
     public boolean equals(Object obj) {
         if (obj instanceof QMapKey) {
             QMapKey key = (QMapKey) obj;
-            return new EqualsBuilder().append(this.q, key.getQ())
-                    				  .isEquals();
+            return this.q == key.q;
         }
         return false;
     }
@@ -144,6 +143,17 @@ public class QMapKey implements WritableComparable<QMapKey> {
     	return 0;
     }
     
+    /**
+     * Compare the q values of two serialized keys. q is the leading signed
+     * short written by {@link #write(DataOutput)}.
+     */
+    public static int compareQ(byte[] b1, int s1, byte[] b2, int s2) {
+        short q1 = (short) WritableComparator.readUnsignedShort(b1, s1);
+        short q2 = (short) WritableComparator.readUnsignedShort(b2, s2);
+        
+        return q1 < q2 ? -1 : (q1 == q2 ? 0 : 1);
+    }
+    
 //    // TODO : Check if these comparator in multiple classes can be generalized.
 //    public static class G2KeyComparator extends WritableComparator {
 //        public G2KeyComparator() {
@@ -0,0 +1,135 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.mapred.io;
+
+import gov.anl.aps.xpcs.config.XPCSConfig;
+import gov.anl.aps.xpcs.util.QMaps;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Partitioner;
+
+/**
+ * Split the pixels into contiguous ranges of the PixelKey order holding 
+ * the same number of valid (non masked) qmap pixels, so every reducer gets 
+ * a spatially local range and the same amount of work.
+ */
+public class QMapRangePartitioner<V> implements Partitioner<PixelKey, V> {
+
+    private int frameWidthBin = 0;
+
+    private int frameHeightBin = 0;
+
+    /**
+     * Number of valid pixels before every pixel, indexed by its rank in the
+     * PixelKey order (x * height + y).
+     */
+    private int[] validBefore = null;
+
+    private long totalValid = 0;
+
+    @Override
+    public void configure(JobConf conf) {
+        XPCSConfig config = new XPCSConfig(conf);
+
+        // In kinetics mode pixel keys and the qmap are local to a slice.
+        int height = config.getIsKinetics() ? config.getSliceHeight() : 
+                                              config.getFrameHeight();
+        frameWidthBin = config.getFrameWidth() / (int) config.getBinX();
+        frameHeightBin = height / (int) config.getBinY();
+
+        BitSet mask = null;
+        int mapWidth = frameWidthBin;
+        try {
+            QMaps partitions = new QMaps(config);
+            mask = partitions.getPixelMaskBits();
+            if (mask != null) {
+                mapWidth = partitions.getWidth();
+                frameWidthBin = Math.min(frameWidthBin, partitions.getWidth());
+                frameHeightBin = Math.min(frameHeightBin, partitions.getHeight());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read partition data", e);
+        }
+
+        validBefore = new int[frameWidthBin * frameHeightBin];
+        int valid = 0;
+        int rank = 0;
+        for (int x = 0; x < frameWidthBin; x++) {
+            for (int y = 0; y < frameHeightBin; y++) {
+                validBefore[rank++] = valid;
+                if (mask == null || !mask.get(y * mapWidth + x)) {
+                    valid++;
+                }
+            }
+        }
+        totalValid = valid;
+    }
+
+    @Override
+    public int getPartition(PixelKey key, V value, int numPartitions) {
+        if (totalValid == 0) return 0;
+
+        int rank = key.getX() * frameHeightBin + key.getY();
+        if (rank < 0 || rank >= validBefore.length) return 0;
+
+        int partition = (int) ((long) validBefore[rank] * numPartitions / totalValid);
+
+        return Math.min(partition, numPartitions - 1);
+    }
+
+    /**
+     * @return number of pixels that are part of a partition.
+     */
+    public static long countValidPixels(QMaps partitions) {
+        long total = (long) partitions.getWidth() * partitions.getHeight();
+        BitSet mask = partitions.getPixelMaskBits();
+
+        return mask == null ? total : total - mask.cardinality();
+    }
+}
@@ -0,0 +1,221 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.mapred.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+
+/**
+ * Key of a pixel record sent to one tile of the two-time matrix of a q-bin.
+ * 
+ * The frames are cut into segments of equal length, and tile (row, column)
+ * with row <= column holds the products of the frames of segment row with 
+ * those of segment column. The tiles of the upper triangle are numbered 
+ * row by row. 
+ */
+public class TileKey implements WritableComparable<TileKey> {
+
+    private static final String SEP = ",";
+
+    private short q;
+    
+    private short tile;
+
+    private int pixelIndex;
+
+    public TileKey() {
+        super();
+    }
+
+    public TileKey(short q, short tile, int pIndex) {
+        super();
+        this.q = q;
+        this.tile = tile;
+        this.pixelIndex = pIndex;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeShort(this.q);
+        out.writeShort(this.tile);
+        out.writeInt(this.pixelIndex);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        this.q = in.readShort();
+        this.tile = in.readShort();
+        this.pixelIndex = in.readInt();
+    }
+
+    @Override
+    public int hashCode() {
+        return (17 * 37 + this.q) * 37 + this.tile;
+    }
+
+    public short getQ() {
+        return q;
+    }
+
+    public void setQ(short q) {
+        this.q = q;
+    }
+
+    public short getTile() {
+        return tile;
+    }
+
+    public void setTile(short tile) {
+        this.tile = tile;
+    }
+
+    public int getPixelIndex() {
+        return this.pixelIndex;
+    }
+
+    public void setPixelIndex(int ind) {
+        this.pixelIndex = ind;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(this.q);
+        builder.append(SEP);
+        builder.append(this.tile);
+        builder.append(SEP);
+        builder.append(this.pixelIndex);
+        return builder.toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof TileKey) {
+            TileKey key = (TileKey) obj;
+            return this.q == key.q && this.tile == key.tile;
+        }
+        return false;
+    }
+
+    @Override
+    public int compareTo(TileKey that) {
+        int res = compareNaturalKey(that);
+        if (res == 0 && this.pixelIndex != that.pixelIndex) {
+            res = this.pixelIndex < that.pixelIndex ? -1 : 1;
+        }
+        return res;
+    }
+
+    public int compareNaturalKey(TileKey that) {
+        if (this.q != that.q) {
+            return this.q < that.q ? -1 : 1;
+        } else if (this.tile != that.tile) {
+            return this.tile < that.tile ? -1 : 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Compare the q and tile of two serialized keys, the two leading signed
+     * shorts written by {@link #write(DataOutput)}.
+     */
+    public static int compareTile(byte[] b1, int s1, byte[] b2, int s2) {
+        int res = QMapKey.compareQ(b1, s1, b2, s2);
+        if (res != 0) {
+            return res;
+        }
+        short t1 = (short) WritableComparator.readUnsignedShort(b1, s1 + 2);
+        short t2 = (short) WritableComparator.readUnsignedShort(b2, s2 + 2);
+        
+        return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+    }
+
+    /**
+     * @return Tiles in the upper triangle of a q-bin cut into the given 
+     *  number of segments.
+     */
+    public static int getTileCount(int segments) {
+        return segments * (segments + 1) / 2;
+    }
+
+    /**
+     * @return Number of tile (row, column), row <= column.
+     */
+    public static int getTile(int row, int column, int segments) {
+        return row * segments - row * (row - 1) / 2 + (column - row);
+    }
+
+    /**
+     * @return Segment of the rows of a tile.
+     */
+    public static int getTileRow(int tile, int segments) {
+        int row = 0;
+        while (tile >= segments - row) {
+            tile -= segments - row;
+            row++;
+        }
+        return row;
+    }
+
+    /**
+     * @return Segment of the columns of a tile.
+     */
+    public static int getTileColumn(int tile, int segments) {
+        int row = getTileRow(tile, segments);
+        return tile - getTile(row, row, segments) + row;
+    }
+
+    /**
+     * @return Frames in every segment but possibly the last one.
+     */
+    public static int getSegmentFrames(int frames, int segments) {
+        return (frames + segments - 1) / segments;
+    }
+}
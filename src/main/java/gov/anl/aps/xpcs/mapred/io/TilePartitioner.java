@@ -0,0 +1,103 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.mapred.io;
+
+import gov.anl.aps.xpcs.config.XPCSConfig;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Partitioner;
+
+/**
+ * Sends every tile of every q-bin to its own reducer, the tiles of the 
+ * first bin in the process list first.
+ */
+public class TilePartitioner<V> implements Partitioner<TileKey, V> {
+
+    /**
+     * Position of q in the process list, -1 for other bins.
+     */
+    private int[] bins = new int[0];
+    
+    private int tiles = 1;
+
+    @Override
+    public int getPartition(TileKey key, V value, int numPartitions) {
+        int q = key.getQ();
+        
+        int bin = (q >= 0 && q < bins.length) ? bins[q] : -1;
+        if (bin < 0) {
+            bin = q & Integer.MAX_VALUE;
+        }
+        
+        return (bin * tiles + key.getTile()) % numPartitions;
+    }
+
+    @Override
+    public void configure(JobConf conf) {
+        XPCSConfig config = new XPCSConfig(conf);
+        tiles = TileKey.getTileCount(config.getTwoTimeSegments());
+        
+        String[] names = config.getQMapBinsToProcess();
+        short[] qs = new short[names.length];
+        int maxQ = -1;
+        
+        for (int i = 0; i < names.length; i++) {
+            qs[i] = (short) Float.parseFloat(names[i]);
+            maxQ = Math.max(maxQ, qs[i]);
+        }
+        
+        bins = new int[maxQ + 1];
+        Arrays.fill(bins, -1);
+        
+        for (int i = 0; i < qs.length; i++) {
+            if (qs[i] >= 0) {
+                bins[qs[i]] = i;
+            }
+        }
+    }
+}
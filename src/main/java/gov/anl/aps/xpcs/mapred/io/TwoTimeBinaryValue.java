@@ -48,15 +48,21 @@ package gov.anl.aps.xpcs.mapred.io;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 
+import gov.anl.aps.xpcs.multitau.TwoTimeStore;
+
 import org.apache.hadoop.io.Writable;
 
 public class TwoTimeBinaryValue implements Writable {
 
     private double[] data = null;
 
+    /**
+     * Result written in place of data when set.
+     */
+    private TwoTimeStore store = null;
+
     public TwoTimeBinaryValue() {
         super();
     }
@@ -79,9 +85,13 @@ public class TwoTimeBinaryValue implements Writable {
 
     @Override
     public void write(DataOutput output) throws IOException {
-        DataOutputStream dos = (DataOutputStream)output;
+        if (store != null) {
+            store.write(output);
+            return;
+        }
+
         for (double d: data)
-            dos.writeDouble(d);
+            output.writeDouble(d);
 
         // output.write(data);
     }
@@ -89,7 +99,9 @@ public class TwoTimeBinaryValue implements Writable {
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        if (this.data != null) {
+        if (this.store != null) {
+            sb.append("Length = " + store.size());
+        } else if (this.data != null) {
             sb.append("Length = " + data.length);
         }
         return sb.toString();
@@ -101,5 +113,15 @@ public class TwoTimeBinaryValue implements Writable {
 
     public void setData(double[] data) {
         this.data = data;
+        this.store = null;
+    }
+
+    public TwoTimeStore getStore() {
+        return this.store;
+    }
+
+    public void setStore(TwoTimeStore store) {
+        this.store = store;
+        this.data = null;
     }
 }
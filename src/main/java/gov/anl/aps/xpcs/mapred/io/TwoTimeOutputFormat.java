@@ -75,9 +75,7 @@ public class TwoTimeOutputFormat<K, V> extends FileOutputFormat {
             boolean nullValue = value == null || value instanceof NullWritable;
             if (!nullValue) {
                 TwoTimeBinaryValue v = (TwoTimeBinaryValue) value;
-                double data[] = v.getData();
-                for (double d: data)
-                    out.writeDouble(d);
+                v.write(out);
                 
                 //out.write(v.getData());
             }
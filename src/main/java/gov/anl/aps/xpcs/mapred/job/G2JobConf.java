@@ -51,10 +51,13 @@ import java.net.URI;
 import java.net.URISyntaxException;
 
 import gov.anl.aps.xpcs.config.XPCSConfig;
+import gov.anl.aps.xpcs.mapred.G2AggregateReducer;
 import gov.anl.aps.xpcs.mapred.G2KineticsReducer;
+import gov.anl.aps.xpcs.mapred.G2LinearReducer;
 import gov.anl.aps.xpcs.mapred.G2Reducer;
 import gov.anl.aps.xpcs.mapred.IMM2TFileFormat;
 import gov.anl.aps.xpcs.mapred.IMMFileFormat;
+import gov.anl.aps.xpcs.mapred.PixelAggregateMapper;
 import gov.anl.aps.xpcs.mapred.TwoTimesReducer;
 import gov.anl.aps.xpcs.mapred.io.CompositeKeyComparator;
 import gov.anl.aps.xpcs.mapred.io.FrameValue;
@@ -62,8 +65,14 @@ import gov.anl.aps.xpcs.mapred.io.G2Key;
 import gov.anl.aps.xpcs.mapred.io.G2Value;
 import gov.anl.aps.xpcs.mapred.io.NaturalKeyGroupingComparator;
 import gov.anl.aps.xpcs.mapred.io.NaturalKeyPartitioner;
+import gov.anl.aps.xpcs.mapred.io.PartitionKey;
+import gov.anl.aps.xpcs.mapred.io.PartitionValue;
+import gov.anl.aps.xpcs.mapred.io.PixelFramesValue;
 import gov.anl.aps.xpcs.mapred.io.PixelKey;
 import gov.anl.aps.xpcs.mapred.io.PixelValue;
+import gov.anl.aps.xpcs.mapred.io.QMapRangePartitioner;
+import gov.anl.aps.xpcs.mapred.pixelfilter.FrameCoarsening;
+import gov.anl.aps.xpcs.util.QMaps;
 import gov.anl.aps.xpcs.mapred.io.QMapKey;
 import gov.anl.aps.xpcs.mapred.io.QMapValue;
 import gov.anl.aps.xpcs.mapred.io.TwoTimeValue;
@@ -127,6 +136,10 @@ public class G2JobConf extends JobConf {
         configureFrameSumCollector();
         configurePixelSumsCollector();
         
+        if (config.getIsFoldPartitions()) {
+            configurePartitionStatsCollector();
+        }
+        
         if (config.getIsFlatFieldEnabled()) {
         	setupFlatfieldSymLinks();
         }       
@@ -159,13 +172,61 @@ public class G2JobConf extends JobConf {
 		// Map Reduce functions
 		 setMapperClass(IdentityMapper.class);
 
-		if (this.config.getIsKinetics()) {
+		if (this.config.getIsAggregatePixels()) {
+			// One record per pixel and split instead of per pixel and frame.
+			setMapOutputValueClass(PixelFramesValue.class);
+			setMapperClass(PixelAggregateMapper.class);
+			setReducerClass(G2AggregateReducer.class);
+		} else if (this.config.getIsKinetics()) {
 			setReducerClass(G2KineticsReducer.class);
+		} else if (this.config.getIsLinearTau()) {
+			setReducerClass(G2LinearReducer.class);
 		} else {
 			setReducerClass(G2Reducer.class);
 		}
 
         // setReducerClass(IdentityReducer.class);
+
+		// Contiguous pixel ranges with the same number of valid pixels.
+		setPartitionerClass(QMapRangePartitioner.class);
+		setNumReduceTasks(getG2ReducerCount());
+	}
+
+	/**
+	 * Number of reducers for the G2 job. Unless configured, it is chosen so 
+	 *  the map output of every reducer fits in half of its heap, assuming 
+	 *  every valid pixel is set in every frame.
+	 */
+	protected int getG2ReducerCount() {
+		if (config.getG2Reducers() > 0) {
+			return config.getG2Reducers();
+		}
+
+		QMaps partitions = config.getMaps();
+		if (partitions == null) {
+			return getNumReduceTasks();
+		}
+
+		long validPixels = QMapRangePartitioner.countValidPixels(partitions);
+		long frames = FrameCoarsening.isMapSide(config) ? 
+				new FrameCoarsening(config).getFrameCount() : 
+				config.getFramecount();
+		if (config.getIsKinetics()) {
+			frames *= config.getLastSlice() - config.getFirstSlice() + 1;
+		}
+
+		// PixelKey + PixelValue and the record framing.
+		long bytes = frames * validPixels * 16;
+		long perReducer = (long) config.getReducerMemoryMB() * 1024 * 1024 / 2;
+
+		long reducers = (bytes + perReducer - 1) / perReducer;
+		reducers = Math.min(reducers, Math.min(validPixels, config.getMaxG2Reducers()));
+		reducers = Math.max(reducers, 1);
+
+		logger.info("G2 reducers " + reducers + " for " + validPixels + 
+				" valid pixels and " + frames + " frames");
+
+		return (int) reducers;
 	}
     
     protected void setupPartitionsSymLinks() throws IOException {
@@ -224,6 +285,12 @@ public class G2JobConf extends JobConf {
         MultipleOutputs.addNamedOutput(this, "pixels",
                 TextOutputFormat.class, PixelKey.class, PixelValue.class);
     }
+    
+    protected void configurePartitionStatsCollector() {
+        MultipleOutputs.addNamedOutput(this, "partitions",
+                SequenceFileOutputFormat.class, PartitionKey.class, 
+                PartitionValue.class);
+    }
 
     
 }
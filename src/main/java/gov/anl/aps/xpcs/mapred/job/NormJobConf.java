@@ -51,6 +51,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 
 import gov.anl.aps.xpcs.config.XPCSConfig;
+import gov.anl.aps.xpcs.mapred.PartitionCombiner;
 import gov.anl.aps.xpcs.mapred.PartitionMapper;
 import gov.anl.aps.xpcs.mapred.PartitionReducer;
 import gov.anl.aps.xpcs.mapred.io.NormResult;
@@ -134,6 +135,7 @@ public class NormJobConf extends JobConf {
         
         // Map Reduce functions
         setMapperClass(PartitionMapper.class);
+        setCombinerClass(PartitionCombiner.class);
         setReducerClass(PartitionReducer.class);
 
     }
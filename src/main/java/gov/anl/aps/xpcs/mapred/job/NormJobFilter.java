@@ -51,6 +51,7 @@ import org.apache.hadoop.fs.PathFilter;
 public class NormJobFilter implements PathFilter {
     public boolean accept(Path p) {
         return !p.getName().startsWith("pixels") && 
-               !p.getName().startsWith("frames");
+               !p.getName().startsWith("frames") &&
+               !p.getName().startsWith("partitions");
     }
 }
@@ -0,0 +1,104 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.mapred.job;
+
+import java.io.IOException;
+
+import gov.anl.aps.xpcs.config.XPCSConfig;
+import gov.anl.aps.xpcs.mapred.SeriesG2Mapper;
+import gov.anl.aps.xpcs.mapred.io.G2Key;
+import gov.anl.aps.xpcs.mapred.io.G2Value;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Map-only multi-tau job over the pixel-major store.
+ */
+public class SeriesG2JobConf extends G2JobConf {
+    
+    private static final Logger logger = LoggerFactory
+            .getLogger(SeriesG2JobConf.class.getName());
+
+    public SeriesG2JobConf(XPCSConfig config) throws IOException {
+        super(config, "(SeriesG2)-");
+    }
+
+    @Override
+    protected void setMapReduceParams() {
+        Path input = new Path(config.getSeriesStoreDir());
+        Path output = new Path(config.getOutputDir() + "/g2");
+
+        logger.info("Series store path " + input.getName());
+        logger.info("Output path " + output.getName());
+
+        FileInputFormat.setInputPaths(this, input);
+        // Skip the frame sums written next to the store blocks.
+        FileInputFormat.setInputPathFilter(this, NormJobFilter.class);
+        FileOutputFormat.setOutputPath(this, output);
+
+        setInputFormat(SequenceFileInputFormat.class);
+        setOutputFormat(SequenceFileOutputFormat.class);
+
+        setOutputKeyClass(G2Key.class);
+        setOutputValueClass(G2Value.class);
+
+        setMapOutputKeyClass(G2Key.class);
+        setMapOutputValueClass(G2Value.class);
+
+        // The store keeps every frame, striding/summing is done when the 
+        // series are analyzed.
+        setBoolean("xpcs.pixel.filter.mapside", false);
+
+        setMapperClass(SeriesG2Mapper.class);
+        setNumReduceTasks(0);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.mapred.job;
+
+import java.io.IOException;
+
+import gov.anl.aps.xpcs.config.XPCSConfig;
+import gov.anl.aps.xpcs.mapred.SeriesTwoTimesMapper;
+import gov.anl.aps.xpcs.mapred.io.QMapKey;
+import gov.anl.aps.xpcs.mapred.io.TwoTimeBinaryValue;
+import gov.anl.aps.xpcs.mapred.io.TwoTimeOutputFormat;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.lib.NLineInputFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Map-only two-time job over the pixel-major store. Every map task 
+ * computes the two-time matrix of a single q-bin.
+ */
+public class SeriesTwoTimesJobConf extends TwoTimesJobConf {
+    
+    private static final Logger logger = LoggerFactory
+            .getLogger(SeriesTwoTimesJobConf.class.getName());
+
+    public SeriesTwoTimesJobConf(XPCSConfig config) throws IOException {
+        super(config, "(SeriesTwoTime)-");
+        
+        writeBinsFile();
+    }
+
+    @Override
+    protected void setMapReduceParams() {
+        checkPixelFilters();
+
+        Path input = new Path(getBinsFile());
+        Path output = new Path(config.getOutputDir() + "/g2");
+
+        logger.info("Series store path " + config.getSeriesStoreDir());
+        logger.info("Output path " + output.getName());
+
+        FileInputFormat.setInputPaths(this, input);
+        FileOutputFormat.setOutputPath(this, output);
+
+        // One q-bin per map task.
+        setInputFormat(NLineInputFormat.class);
+        setInt("mapred.line.input.format.linespermap", 1);
+        setOutputFormat(TwoTimeOutputFormat.class);
+
+        setOutputKeyClass(QMapKey.class);
+        setOutputValueClass(TwoTimeBinaryValue.class);
+
+        setMapOutputKeyClass(QMapKey.class);
+        setMapOutputValueClass(TwoTimeBinaryValue.class);
+
+        setMapperClass(SeriesTwoTimesMapper.class);
+        setNumReduceTasks(0);
+
+        this.setInt("dfs.replication", 1);
+    }
+
+    private String getBinsFile() {
+        return config.getOutputDir() + "/qbins";
+    }
+
+    private void writeBinsFile() throws IOException {
+        String bins[] = this.config.getQMapBinsToProcess();
+        if (bins == null || bins.length == 0) {
+            throw new IOException("No q-bins to process for the two-time job");
+        }
+
+        Path path = new Path(getBinsFile());
+        FileSystem fs = path.getFileSystem(this);
+        FSDataOutputStream out = fs.create(path, true);
+        try {
+            for (String bin : bins) {
+                out.writeBytes(bin.trim() + "\n");
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
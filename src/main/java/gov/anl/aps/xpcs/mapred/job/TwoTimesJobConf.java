@@ -55,6 +55,10 @@ import gov.anl.aps.xpcs.mapred.G2KineticsReducer;
 import gov.anl.aps.xpcs.mapred.G2Reducer;
 import gov.anl.aps.xpcs.mapred.IMM2TFileFormat;
 import gov.anl.aps.xpcs.mapred.IMMFileFormat;
+import gov.anl.aps.xpcs.mapred.QMapAggregateMapper;
+import gov.anl.aps.xpcs.mapred.TwoTimeTileMapper;
+import gov.anl.aps.xpcs.mapred.TwoTimeTileReducer;
+import gov.anl.aps.xpcs.mapred.TwoTimesAggregateReducer;
 import gov.anl.aps.xpcs.mapred.TwoTimesReducer;
 import gov.anl.aps.xpcs.mapred.io.CompositeKeyComparator;
 import gov.anl.aps.xpcs.mapred.io.FrameValue;
@@ -62,10 +66,15 @@ import gov.anl.aps.xpcs.mapred.io.G2Key;
 import gov.anl.aps.xpcs.mapred.io.G2Value;
 import gov.anl.aps.xpcs.mapred.io.NaturalKeyGroupingComparator;
 import gov.anl.aps.xpcs.mapred.io.NaturalKeyPartitioner;
+import gov.anl.aps.xpcs.mapred.io.PixelFramesValue;
 import gov.anl.aps.xpcs.mapred.io.PixelKey;
 import gov.anl.aps.xpcs.mapred.io.PixelValue;
 import gov.anl.aps.xpcs.mapred.io.QMapKey;
 import gov.anl.aps.xpcs.mapred.io.QMapValue;
+import gov.anl.aps.xpcs.mapred.io.TileGroupingComparator;
+import gov.anl.aps.xpcs.mapred.io.TileKey;
+import gov.anl.aps.xpcs.mapred.io.TileKeyComparator;
+import gov.anl.aps.xpcs.mapred.io.TilePartitioner;
 import gov.anl.aps.xpcs.mapred.io.TwoTimeBinaryValue;
 import gov.anl.aps.xpcs.mapred.io.TwoTimeOutputFormat;
 
@@ -106,6 +115,8 @@ public class TwoTimesJobConf extends G2JobConf {
     }    
 
 	protected void setMapReduceParams() {
+		checkPixelFilters();
+
 		// Input format
 		Path input = new Path(config.getInputFilePath());
 		Path output = new Path(config.getOutputDir() + "/g2");
@@ -136,6 +147,13 @@ public class TwoTimesJobConf extends G2JobConf {
 		// Map Reduce functions
 		setMapperClass(IdentityMapper.class);
 		setReducerClass(TwoTimesReducer.class);
+
+		if (this.config.getIsAggregatePixels()) {
+			// One record per pixel and split instead of per pixel and frame.
+			setMapOutputValueClass(PixelFramesValue.class);
+			setMapperClass(QMapAggregateMapper.class);
+			setReducerClass(TwoTimesAggregateReducer.class);
+		}
          // setReducerClass(IdentityReducer.class);
 
          // Set number of reducers to match number of bins
@@ -143,10 +161,56 @@ public class TwoTimesJobConf extends G2JobConf {
         if (bins != null && bins.length > 0)
             setNumReduceTasks(bins.length);
 
+		if (this.config.getTwoTimeSegments() > 1) {
+			setTileParams();
+		}
+
         this.setInt("dfs.replication", 1);
 
 	}
 
+	/**
+	 * The two-time results and their HDF5 datasets are sized from the raw 
+	 *  frame count, so frames can not be strided or summed.
+	 */
+	protected void checkPixelFilters() {
+		if (this.config.getPixelFilterStride() > 1 || 
+				this.config.getPixelFilterSum() > 1) {
+			throw new RuntimeException(
+				"Two-time does not support pixel filters");
+		}
+	}
+
+	/**
+	 * Split the two-time matrix of every q-bin into tiles of frame segments,
+	 *  one reducer per tile. 
+	 */
+	private void setTileParams() {
+		if (this.config.getTwoTimeBand() > 0) {
+			throw new RuntimeException(
+				"Two-time tiles do not support the band mode");
+		}
+
+		int segments = this.config.getTwoTimeSegments();
+		logger.info("Two-time tiles of " + TileKey.getSegmentFrames(
+				this.config.getFramecount(), segments) + " frames");
+
+		setPartitionerClass(TilePartitioner.class); 
+		setOutputKeyComparatorClass(TileKeyComparator.class);
+		setOutputValueGroupingComparator(TileGroupingComparator.class);
+
+		setOutputKeyClass(TileKey.class);
+		setMapOutputKeyClass(TileKey.class);
+		setMapOutputValueClass(QMapValue.class);
+
+		setMapperClass(TwoTimeTileMapper.class);
+		setReducerClass(TwoTimeTileReducer.class);
+
+		String bins[] = this.config.getQMapBinsToProcess();
+		int binCount = bins != null && bins.length > 0 ? bins.length : 1;
+		setNumReduceTasks(binCount * TileKey.getTileCount(segments));
+	}
+
     protected void setupSGSymLinks() throws IOException {
     	try {
     		DistributedCache.addCacheFile(new URI(
@@ -0,0 +1,312 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.multitau;
+
+import java.util.Arrays;
+
+/**
+ * Multi-tau correlation of a block of pixels at a time. 
+ * 
+ * Series are stored frame-major, one row of the block per frame, so the 
+ * smoothing and every lag loop run over the pixels of a row with unit 
+ * stride. Per pixel, the pairs, their order of summation and the 
+ * smoothing are those of {@link G2#smooth(double[], int, int)} and 
+ * {@link G2#computeG2(double[], double[], int, int, int)}, so results are 
+ * identical to correlating one pixel at a time.
+ */
+public class BlockCorrelator {
+
+    private final int dpl;
+    
+    private final int levels;
+    
+    private final int width;
+    
+    private final int frames;
+    
+    private final int capacity;
+    
+    private static final int STAGE = 8;
+    
+    private int count = 0;
+    
+    /**
+     * Pixels already moved from staged into data.
+     */
+    private int transposed = 0;
+    
+    /**
+     * Series added since the last transpose, pixel-major.
+     */
+    private final double[] staged;
+    
+    /**
+     * frames rows of capacity pixels.
+     */
+    private final double[] data;
+    
+    private final double[] numerator;
+    
+    private final double[] sumPast;
+    
+    private final double[] sumFuture;
+    
+    private final double[] running;
+    
+    /**
+     * Pairs per (level, lag), the same for every pixel.
+     */
+    private final int[] pairs;
+    
+    /**
+     * @param dpl Delays per level.
+     * @param maxLevel Highest level, as returned by 
+     *          {@link G2#calculateLevelMax(int, int)} for frames.
+     * @param frames Length of every series.
+     * @param capacity Pixels per block.
+     */
+    public BlockCorrelator(int dpl, int maxLevel, int frames, int capacity) {
+        this.dpl = dpl;
+        this.levels = maxLevel + 1;
+        this.width = Math.max(2, 2 * dpl);
+        this.frames = frames;
+        this.capacity = capacity;
+        
+        data = new double[frames * capacity];
+        staged = new double[frames * Math.min(STAGE, capacity)];
+        numerator = new double[levels * width * capacity];
+        sumPast = new double[levels * width * capacity];
+        sumFuture = new double[levels * width * capacity];
+        running = new double[capacity];
+        pairs = new int[levels * width];
+    }
+    
+    /**
+     * Largest block of series of the given length that fits in maxBytes, 
+     * at least one pixel and at most maxPixels.
+     */
+    public static int getCapacity(int frames, int maxPixels, long maxBytes) {
+        long perPixel = 8L * Math.max(1, frames);
+        return (int) Math.max(1, Math.min(maxPixels, maxBytes / perPixel));
+    }
+    
+    public int getCount() {
+        return count;
+    }
+    
+    public boolean isFull() {
+        return count == capacity;
+    }
+    
+    public void clear() {
+        count = 0;
+        transposed = 0;
+    }
+    
+    /**
+     * Add the first frames values of a series as the next pixel of the 
+     * block.
+     * 
+     * @return The pixel index within the block.
+     */
+    public int add(double[] series) {
+        int p = count++;
+        System.arraycopy(series, 0, staged, (p - transposed) * frames, frames);
+        if (count - transposed == STAGE) {
+            transposeStaged();
+        }
+        return p;
+    }
+    
+    /**
+     * Move the staged series into their block columns, a few pixels per 
+     * row at a time so that each row is written once per cache line.
+     */
+    private void transposeStaged() {
+        int n = count - transposed;
+        for (int t = 0; t < frames; t++) {
+            int row = t * capacity + transposed;
+            for (int k = 0; k < n; k++) {
+                data[row + k] = staged[k * frames + t];
+            }
+        }
+        transposed = count;
+    }
+    
+    /**
+     * Smooth and correlate all pixels of the block, level by level.
+     * 
+     * Each level is one pass over the rows. A row is correlated with the 
+     * rows at all lags while they are cache resident, and the past sums of 
+     * all lags share one running row sum, taken when a lag runs out of 
+     * pairs. Every sum still adds its terms in frame order.
+     */
+    public void correlate() {
+        transposeStaged();
+        Arrays.fill(numerator, 0.0d);
+        Arrays.fill(sumFuture, 0.0d);
+        Arrays.fill(pairs, 0);
+        
+        for (int level = 0; level < levels; level++) {
+            int tauIncrement = 1 << level;
+            int minLag = level == 0 ? 1 : dpl;
+            smooth(tauIncrement);
+            
+            Arrays.fill(running, 0, count, 0.0d);
+            int active = width - 1;
+            
+            // Rows t and t + tauIncrement go through the lags together, 
+            //  halving the passes over the sums.
+            for (int t = 0; ; t += 2 * tauIncrement) {
+                active = snapshotPast(level, minLag, active, 
+                        lastLag(t, tauIncrement));
+                if (active < minLag) break;
+                
+                int next = lastLag(t + tauIncrement, tauIncrement);
+                int pairedLags = Math.min(active, next);
+                int row0 = t * capacity;
+                int row1 = row0 + tauIncrement * capacity;
+                
+                for (int m = minLag; m <= active; m++) {
+                    int sums = (level * width + m) * capacity;
+                    int future0 = row0 + m * tauIncrement * capacity;
+                    if (m <= pairedLags) {
+                        int future1 = future0 + tauIncrement * capacity;
+                        for (int p = 0; p < count; p++) {
+                            double b0 = data[future0 + p];
+                            double b1 = data[future1 + p];
+                            double num = numerator[sums + p];
+                            num += data[row0 + p] * b0;
+                            num += data[row1 + p] * b1;
+                            numerator[sums + p] = num;
+                            double future = sumFuture[sums + p];
+                            future += b0;
+                            future += b1;
+                            sumFuture[sums + p] = future;
+                        }
+                        pairs[level * width + m] += 2;
+                    } else {
+                        for (int p = 0; p < count; p++) {
+                            double b0 = data[future0 + p];
+                            numerator[sums + p] += data[row0 + p] * b0;
+                            sumFuture[sums + p] += b0;
+                        }
+                        pairs[level * width + m]++;
+                    }
+                }
+                
+                for (int p = 0; p < count; p++) {
+                    running[p] += data[row0 + p];
+                }
+                active = snapshotPast(level, minLag, active, next);
+                if (active < minLag) break;
+                for (int p = 0; p < count; p++) {
+                    running[p] += data[row1 + p];
+                }
+            }
+        }
+    }
+    
+    /**
+     * Largest lag, in units of tauIncrement, that still has a pair starting
+     * at frame t. As in computeG2, the later block must be whole.
+     */
+    private int lastLag(int t, int tauIncrement) {
+        int room = frames - tauIncrement - t;
+        if (room < 0) return -1;
+        return Math.min(room / tauIncrement, width - 1);
+    }
+    
+    /**
+     * Lags above lastLag have all their pairs, their past sum is the 
+     * running row sum so far.
+     * 
+     * @return The largest lag still collecting pairs.
+     */
+    private int snapshotPast(int level, int minLag, int active, int lastLag) {
+        for (; active > lastLag && active >= minLag; active--) {
+            System.arraycopy(running, 0, sumPast, 
+                    (level * width + active) * capacity, count);
+        }
+        return active;
+    }
+    
+    /**
+     * Fill result for one pixel of the block like 
+     * {@link G2#computeG2(double[], double[], int, int, int)}.
+     * 
+     * @return result
+     */
+    public double[] getG2(double[] result, int pixel, int tau, int level) {
+        int m = tau >> level;
+        if (level >= levels || m < (level == 0 ? 1 : dpl) || m >= width || 
+                (m << level) != tau) {
+            throw new IllegalArgumentException("No correlation for tau " + 
+                    tau + " at level " + level);
+        }
+        
+        int i = (level * width + m) * capacity + pixel;
+        double n = pairs[level * width + m];
+        result[0] = numerator[i] / n;
+        result[1] = sumFuture[i] / n;
+        result[2] = sumPast[i] / n;
+        
+        return result;
+    }
+    
+    private void smooth(int deltaT) {
+        if (deltaT <= 1) return;
+        
+        int half = deltaT / 2;
+        for (int t = 0; t < frames - half; t += deltaT) {
+            int row = t * capacity;
+            int next = (t + half) * capacity;
+            for (int p = 0; p < count; p++) {
+                data[row + p] = (data[row + p] + data[next + p]) / 2;
+            }
+        }
+    }
+}
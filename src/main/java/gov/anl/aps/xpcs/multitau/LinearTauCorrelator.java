@@ -0,0 +1,133 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.multitau;
+
+/**
+ * Correlation of a pixel series at every integer tau, from the power 
+ * spectrum of the zero padded series. 
+ * 
+ * For tau = 1 to maxTau, the numerator, past and future sums are the same
+ * as {@link G2#computeG2(double[], double[], int, int, int)} at level 0, 
+ * computed in O(N log N) instead of O(N * maxTau). The FFT plan and the 
+ * buffers are kept between series and only grow.
+ */
+public class LinearTauCorrelator {
+
+    private RealFFT fft = null;
+    
+    private double[] specRe = new double[0];
+    
+    private double[] specIm = new double[0];
+    
+    private double[] lagged = new double[0];
+    
+    private double[] prefix = new double[1];
+    
+    private int frameCount = 0;
+    
+    private int maxTau = 0;
+    
+    /**
+     * Largest tau for a series of n frames, maxTau <= 0 for n / 2.
+     */
+    public static int getMaxTau(int n, int maxTau) {
+        int limit = maxTau > 0 ? maxTau : n / 2;
+        return Math.max(0, Math.min(limit, n - 1));
+    }
+    
+    /**
+     * Correlate the first frameCount values of a series for tau up to 
+     * maxTau.
+     */
+    public void correlate(double[] intensities, int frameCount, int maxTau) {
+        this.frameCount = frameCount;
+        this.maxTau = maxTau;
+        
+        // Padding to n + maxTau keeps the circular products of the largest
+        //  tau from wrapping around.
+        int size = RealFFT.sizeFor(frameCount + maxTau);
+        if (fft == null || fft.getSize() != size) {
+            fft = new RealFFT(size);
+            specRe = new double[size / 2 + 1];
+            specIm = new double[size / 2 + 1];
+            lagged = new double[size];
+        }
+        if (prefix.length < frameCount + 1) {
+            prefix = new double[frameCount + 1];
+        }
+        
+        for (int i = 0; i < frameCount; i++) {
+            prefix[i + 1] = prefix[i] + intensities[i];
+        }
+        
+        fft.forward(intensities, frameCount, specRe, specIm);
+        for (int k = 0; k < specRe.length; k++) {
+            specRe[k] = specRe[k] * specRe[k] + specIm[k] * specIm[k];
+            specIm[k] = 0.0d;
+        }
+        fft.inverse(specRe, specIm, lagged);
+    }
+    
+    /**
+     * Fill result with the normalized numerator, future and past sums of 
+     * the last series at tau.
+     * 
+     * @return result
+     */
+    public double[] getG2(double[] result, int tau) {
+        if (tau < 1 || tau > maxTau) {
+            throw new IllegalArgumentException("No correlation for tau " + 
+                    tau + ", max tau is " + maxTau);
+        }
+        
+        double count = frameCount - tau;
+        result[0] = lagged[tau] / count;
+        result[1] = (prefix[frameCount] - prefix[tau]) / count;
+        result[2] = prefix[frameCount - tau] / count;
+        
+        return result;
+    }
+}
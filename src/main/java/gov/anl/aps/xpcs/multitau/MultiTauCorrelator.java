@@ -0,0 +1,252 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.multitau;
+
+import java.util.Arrays;
+
+/**
+ * Register cascade multi-tau correlator. 
+ * 
+ * Each level keeps the last 2 * dpl - 1 block averages of the series. New 
+ * values of a level are correlated against the kept values at the lags of 
+ * that level, and each completed pair of values pushes its average into the
+ * next level. A series is consumed once, and the numerator, past and 
+ * future sums of every (level, tau) pair are ready at the end.
+ * 
+ * Values move through the levels in chunks, so that the lag loops run over
+ * a cache resident buffer and keep their sums in registers. 
+ * 
+ * The pairs, their order of summation and the pairwise averaging are the 
+ * same as with {@link G2#smooth(double[], int, int)} followed by 
+ * {@link G2#computeG2(double[], double[], int, int, int)}, so results are 
+ * identical to the rescanning version.
+ */
+public class MultiTauCorrelator {
+
+    private static final int CHUNK = 1024;
+
+    private final int dpl;
+    
+    private final int levels;
+    
+    /**
+     * Stride of the per level sums, lags run from 1 to width - 1.
+     */
+    private final int width;
+    
+    /**
+     * Per level, the last width - 1 values followed by the current chunk.
+     */
+    private final double[][] line;
+    
+    /**
+     * Per level, the pair averages of the current chunk for the next level.
+     */
+    private final double[][] averages;
+    
+    private final double[] single = new double[1];
+    
+    private final int[] pushed;
+    
+    private final double[] numerator;
+    
+    private final double[] sumPast;
+    
+    private final double[] sumFuture;
+    
+    /**
+     * @param dpl Delays per level.
+     * @param maxLevel Highest level to correlate, as returned by 
+     *          {@link G2#calculateLevelMax(int, int)} for the longest series.
+     */
+    public MultiTauCorrelator(int dpl, int maxLevel) {
+        this.dpl = dpl;
+        this.levels = maxLevel + 1;
+        this.width = Math.max(2, 2 * dpl);
+        
+        line = new double[levels][width - 1 + CHUNK];
+        averages = new double[levels][CHUNK / 2 + 1];
+        pushed = new int[levels];
+        numerator = new double[levels * width];
+        sumPast = new double[levels * width];
+        sumFuture = new double[levels * width];
+    }
+    
+    public void reset() {
+        Arrays.fill(pushed, 0);
+        Arrays.fill(numerator, 0.0d);
+        Arrays.fill(sumPast, 0.0d);
+        Arrays.fill(sumFuture, 0.0d);
+    }
+    
+    /**
+     * Correlate the first frameCount values of a series from scratch.
+     */
+    public void correlate(double[] intensities, int frameCount) {
+        reset();
+        for (int off = 0; off < frameCount; off += CHUNK) {
+            push(0, intensities, off, Math.min(CHUNK, frameCount - off));
+        }
+    }
+    
+    /**
+     * Push the next frame of the series.
+     */
+    public void add(double value) {
+        single[0] = value;
+        push(0, single, 0, 1);
+    }
+    
+    private void push(int level, double[] values, int offset, int length) {
+        double[] buf = line[level];
+        int kept = width - 1;
+        int n = pushed[level];
+        int base = level * width;
+        
+        System.arraycopy(values, offset, buf, kept, length);
+        
+        // Two lags per sweep, each sum still adds its terms in frame order.
+        int m = minLag(level);
+        for (; m + 1 < width; m += 2) {
+            int j = Math.max(0, m - n);
+            if (j >= length) break;
+            
+            double num = numerator[base + m];
+            double past = sumPast[base + m];
+            double future = sumFuture[base + m];
+            double num1 = numerator[base + m + 1];
+            double past1 = sumPast[base + m + 1];
+            double future1 = sumFuture[base + m + 1];
+            
+            // Values with a partner at lag m but not yet at lag m + 1.
+            if (j < m + 1 - n && j < length) {
+                double p = buf[kept + j - m];
+                double f = buf[kept + j];
+                num += p * f;
+                past += p;
+                future += f;
+                j++;
+            }
+            for (; j < length; j++) {
+                double f = buf[kept + j];
+                double p = buf[kept + j - m];
+                double p1 = buf[kept + j - m - 1];
+                num += p * f;
+                past += p;
+                future += f;
+                num1 += p1 * f;
+                past1 += p1;
+                future1 += f;
+            }
+            numerator[base + m] = num;
+            sumPast[base + m] = past;
+            sumFuture[base + m] = future;
+            numerator[base + m + 1] = num1;
+            sumPast[base + m + 1] = past1;
+            sumFuture[base + m + 1] = future1;
+        }
+        if (m + 1 == width) {
+            int j = Math.max(0, m - n);
+            
+            double num = numerator[base + m];
+            double past = sumPast[base + m];
+            double future = sumFuture[base + m];
+            for (; j < length; j++) {
+                double p = buf[kept + j - m];
+                double f = buf[kept + j];
+                num += p * f;
+                past += p;
+                future += f;
+            }
+            numerator[base + m] = num;
+            sumPast[base + m] = past;
+            sumFuture[base + m] = future;
+        }
+        
+        if (level + 1 < levels) {
+            // Pairs start at even frames, the first one may straddle chunks.
+            double[] out = averages[level];
+            int k = 0;
+            for (int j = (n & 1) != 0 ? -1 : 0; j + 1 < length; j += 2) {
+                out[k++] = (buf[kept + j] + buf[kept + j + 1]) / 2;
+            }
+            if (k > 0) {
+                push(level + 1, out, 0, k);
+            }
+        }
+        
+        System.arraycopy(buf, length, buf, 0, kept);
+        pushed[level] = n + length;
+    }
+    
+    /**
+     * Fill result like {@link G2#computeG2(double[], double[], int, int, int)}
+     * for the same tau and level.
+     * 
+     * @return result
+     */
+    public double[] getG2(double[] result, int tau, int level) {
+        int m = tau >> level;
+        if (level >= levels || m < minLag(level) || m >= width || 
+                (m << level) != tau) {
+            throw new IllegalArgumentException("No correlation for tau " + 
+                    tau + " at level " + level);
+        }
+        
+        // Every value pushed after the first m has one pair at lag m.
+        int i = level * width + m;
+        double count = Math.max(0, pushed[level] - m);
+        result[0] = numerator[i] / count;
+        result[1] = sumFuture[i] / count;
+        result[2] = sumPast[i] / count;
+        
+        return result;
+    }
+    
+    private int minLag(int level) {
+        return level == 0 ? 1 : dpl;
+    }
+}
@@ -0,0 +1,216 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.multitau;
+
+/**
+ * Radix-2 FFT plan for real sequences of a fixed power of two length. 
+ * 
+ * A real sequence of length n is packed into a complex sequence of length
+ * n / 2 (even samples real, odd samples imaginary), transformed, and 
+ * split back into the spectrum of the real sequence. Twiddle factors, the
+ * bit reversal table and the work buffers are allocated once per plan.
+ */
+public class RealFFT {
+
+    private final int size;
+    
+    private final int half;
+    
+    private final double[] cos;
+    
+    private final double[] sin;
+    
+    private final int[] reverse;
+    
+    private final double[] re;
+    
+    private final double[] im;
+    
+    /**
+     * @param size Length of the real sequence, a power of two of at least 2.
+     */
+    public RealFFT(int size) {
+        if (size < 2 || (size & (size - 1)) != 0) {
+            throw new IllegalArgumentException("FFT size " + size + 
+                    " is not a power of two");
+        }
+        
+        this.size = size;
+        this.half = size / 2;
+        
+        // e^(-2 pi i k / size) for k < size / 2. The half length transform
+        //  uses every second entry.
+        cos = new double[half];
+        sin = new double[half];
+        for (int k = 0; k < half; k++) {
+            double a = 2 * Math.PI * k / size;
+            cos[k] = Math.cos(a);
+            sin[k] = -Math.sin(a);
+        }
+        
+        int bits = Integer.numberOfTrailingZeros(half);
+        reverse = new int[half];
+        for (int i = 0; i < half; i++) {
+            reverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+        
+        re = new double[half];
+        im = new double[half];
+    }
+    
+    public int getSize() {
+        return size;
+    }
+    
+    /**
+     * Smallest plan size that holds at least n values.
+     */
+    public static int sizeFor(int n) {
+        return Math.max(2, Integer.highestOneBit(Math.max(1, n - 1)) << 1);
+    }
+    
+    /**
+     * Spectrum of the first n values of x, zero padded to the plan size.
+     * 
+     * @param specRe Real part of bins 0 to size / 2, length size / 2 + 1.
+     * @param specIm Imaginary part of bins 0 to size / 2.
+     */
+    public void forward(double[] x, int n, double[] specRe, double[] specIm) {
+        int m = Math.min(n, size);
+        for (int j = 0; j < half; j++) {
+            int i = 2 * j;
+            re[j] = i < m ? x[i] : 0.0d;
+            im[j] = i + 1 < m ? x[i + 1] : 0.0d;
+        }
+        
+        transform(re, im, false);
+        
+        for (int k = 0; k <= half; k++) {
+            int a = k % half;
+            int b = (half - k) % half;
+            
+            // Even and odd sample spectra from the packed transform.
+            double eRe = (re[a] + re[b]) / 2;
+            double eIm = (im[a] - im[b]) / 2;
+            double oRe = (im[a] + im[b]) / 2;
+            double oIm = (re[b] - re[a]) / 2;
+            
+            double wRe = k < half ? cos[k] : -1.0d;
+            double wIm = k < half ? sin[k] : 0.0d;
+            
+            specRe[k] = eRe + wRe * oRe - wIm * oIm;
+            specIm[k] = eIm + wRe * oIm + wIm * oRe;
+        }
+    }
+    
+    /**
+     * Real sequence of the given spectrum, scaled by 1 / size.
+     * 
+     * @param specRe Real part of bins 0 to size / 2.
+     * @param specIm Imaginary part of bins 0 to size / 2.
+     * @param x Receives the size values of the sequence.
+     */
+    public void inverse(double[] specRe, double[] specIm, double[] x) {
+        for (int k = 0; k < half; k++) {
+            int b = half - k;
+            
+            // X[k + size / 2] is the conjugate of X[size / 2 - k].
+            double eRe = (specRe[k] + specRe[b]) / 2;
+            double eIm = (specIm[k] - specIm[b]) / 2;
+            double dRe = (specRe[k] - specRe[b]) / 2;
+            double dIm = (specIm[k] + specIm[b]) / 2;
+            
+            // Odd spectrum is the difference times e^(2 pi i k / size).
+            double oRe = dRe * cos[k] + dIm * sin[k];
+            double oIm = dIm * cos[k] - dRe * sin[k];
+            
+            re[k] = eRe - oIm;
+            im[k] = eIm + oRe;
+        }
+        
+        transform(re, im, true);
+        
+        double scale = 1.0d / half;
+        for (int j = 0; j < half; j++) {
+            x[2 * j] = re[j] * scale;
+            x[2 * j + 1] = im[j] * scale;
+        }
+    }
+    
+    /**
+     * In place iterative complex FFT of length size / 2, unscaled.
+     */
+    private void transform(double[] re, double[] im, boolean inverse) {
+        for (int i = 0; i < half; i++) {
+            int j = reverse[i];
+            if (j > i) {
+                double t = re[i]; re[i] = re[j]; re[j] = t;
+                t = im[i]; im[i] = im[j]; im[j] = t;
+            }
+        }
+        
+        double sign = inverse ? -1.0d : 1.0d;
+        for (int len = 2; len <= half; len <<= 1) {
+            int step = size / len;
+            int span = len / 2;
+            for (int start = 0; start < half; start += len) {
+                for (int k = 0; k < span; k++) {
+                    double wRe = cos[k * step];
+                    double wIm = sign * sin[k * step];
+                    
+                    int p = start + k;
+                    int q = p + span;
+                    double tRe = re[q] * wRe - im[q] * wIm;
+                    double tIm = re[q] * wIm + im[q] * wRe;
+                    re[q] = re[p] - tRe;
+                    im[q] = im[p] - tIm;
+                    re[p] += tRe;
+                    im[p] += tIm;
+                }
+            }
+        }
+    }
+}
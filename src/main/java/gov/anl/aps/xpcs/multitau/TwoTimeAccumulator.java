@@ -0,0 +1,552 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.multitau;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Two-time accumulation for a block of pixels at a time. 
+ * 
+ * The series of up to blockPixels pixels are staged frame-major, so the
+ * intensities of all pixels in one frame are contiguous. The upper triangle
+ * of the two-time matrix then gets a rank-k update, tile by tile, where each
+ * element adds the products of its two frames over the pixels of the block. 
+ * Rows of tiles are independent and are spread over a fork/join pool.
+ * 
+ * The result uses the layout of the two-time reducer, the strict upper 
+ * triangle packed row by row from index 1, with rows of frames - 1 - i 
+ * elements. For a tile off the diagonal, the series holds the frames of 
+ * the tile rows followed by those of the tile columns, and the result is
+ * the rows x columns rectangle of their products, row-major. In a band of
+ * half-width W, row i holds the products of frame i with frames i + 1 to 
+ * i + W, W elements per row. Products are
+ * added pixel by pixel in the order the pixels were added, so the sums are
+ * identical to updating one pixel at a time.
+ * 
+ * Pixels with few non zero frames can skip the block. Their products are
+ * added directly from the list of their non zero frames, after flushing 
+ * the pixels staged before them to keep the order.
+ */
+public class TwoTimeAccumulator {
+
+    /**
+     * Bytes of staged intensities a tile row should take, to stay in cache
+     * while the tiles to its right stream past.
+     */
+    private static final int TILE_BYTES = 64 * 1024;
+
+    private final int frames;
+    
+    /**
+     * Series frames whose products with later frames are accumulated.
+     */
+    private final int rows;
+    
+    /**
+     * First column frame of a rectangle, -1 for the upper triangle.
+     */
+    private final int split;
+    
+    /**
+     * Half-width of a band, 0 for no band.
+     */
+    private final int band;
+    
+    private final int blockPixels;
+    
+    private final int tile;
+    
+    /**
+     * Index of row i in the result, minus the first column frame, so 
+     * element (i, j) is at rowStart[i] + j.
+     */
+    private final long[] rowStart;
+    
+    /**
+     * Staged intensities, block[i * blockPixels + p] for frame i of pixel p.
+     */
+    private double[] block = null;
+    
+    /**
+     * Frames that have a non zero intensity in the block.
+     */
+    private boolean[] nonZero = null;
+    
+    /**
+     * Length of the added series, can be less than frames when the series 
+     * are filtered.
+     */
+    private int length = -1;
+    
+    private int count = 0;
+    
+    private ForkJoinPool pool = null;
+    
+    /**
+     * Fraction of non zero frames under which a pixel is added from its 
+     * non zero frames, 0 to stage every pixel.
+     */
+    private double sparseOccupancy = 0;
+    
+    private int[] sparseFrames = null;
+    
+    private double[] sparseValues = null;
+
+    /**
+     * @param frames Frames of the two-time layout.
+     * @param blockPixels Pixels staged before updating the result.
+     * @param threads Threads updating tile rows, 0 for all processors.
+     */
+    public TwoTimeAccumulator(int frames, int blockPixels, int threads) {
+        this(frames, 1, blockPixels, threads);
+    }
+    
+    /**
+     * Upper triangle of frames x frames, packed from offset.
+     */
+    public TwoTimeAccumulator(int frames, int offset, int blockPixels, 
+            int threads) {
+        this(frames, -1, offset, blockPixels, threads);
+    }
+    
+    /**
+     * Products of the first rows series frames with the next columns 
+     * frames, row-major from offset.
+     */
+    public TwoTimeAccumulator(int rows, int columns, int offset, 
+            int blockPixels, int threads) {
+        this(rows, columns, 0, offset, blockPixels, threads);
+    }
+    
+    /**
+     * Band of half-width band around the diagonal of frames x frames, 
+     * band elements per row from offset.
+     */
+    public static TwoTimeAccumulator forBand(int frames, int band, int offset, 
+            int blockPixels, int threads) {
+        return new TwoTimeAccumulator(frames, -1, band, offset, blockPixels, 
+                threads);
+    }
+    
+    private TwoTimeAccumulator(int rows, int columns, int band, int offset, 
+            int blockPixels, int threads) {
+        this.split = columns < 0 ? -1 : rows;
+        this.band = band;
+        this.frames = columns < 0 ? rows : rows + columns;
+        this.rows = rows;
+        this.blockPixels = Math.max(1, blockPixels);
+        this.tile = Math.max(16, TILE_BYTES / 8 / this.blockPixels);
+        
+        rowStart = new long[rows];
+        long index = offset;
+        for (int i = 0; i < rows; i++) {
+            if (band > 0) {
+                rowStart[i] = index - (i + 1);
+                index += band;
+            } else if (split < 0) {
+                rowStart[i] = index - (i + 1);
+                index += (frames - 1) - i;
+            } else {
+                rowStart[i] = index - split;
+                index += columns;
+            }
+        }
+        
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        if (threads > 1) {
+            pool = new ForkJoinPool(threads);
+        }
+    }
+    
+    /**
+     * @return Elements of the packed upper triangle of frames x frames, 
+     *  after the leading q value.
+     */
+    public static long getTriangleSize(int frames) {
+        return (long) frames * (frames - 1) / 2;
+    }
+    
+    public void setSparseOccupancy(double occupancy) {
+        this.sparseOccupancy = occupancy;
+    }
+    
+    /**
+     * Add the series of one pixel, staged or from its non zero frames 
+     * depending on their number, flushing the block when full.
+     */
+    public void add(double[] intensities, TwoTimeStore result) {
+        if (sparseOccupancy > 0) {
+            int n = Math.min(intensities.length, frames);
+            if (sparseFrames == null || sparseFrames.length < n) {
+                sparseFrames = new int[n];
+                sparseValues = new double[n];
+            }
+            
+            int nonZeros = 0;
+            for (int i = 0; i < n; i++) {
+                if (intensities[i] != 0) {
+                    sparseFrames[nonZeros] = i;
+                    sparseValues[nonZeros] = intensities[i];
+                    nonZeros++;
+                }
+            }
+            
+            // An empty pixel adds nothing, so the staged pixels don't have 
+            //  to be flushed to keep the order.
+            if (nonZeros == 0) return;
+            
+            if (nonZeros < sparseOccupancy * n) {
+                flush(result);
+                addSparse(result, nonZeros, n);
+                return;
+            }
+        }
+        
+        if (add(intensities)) {
+            flush(result);
+        }
+    }
+    
+    /**
+     * Add the products of the listed non zero frames of a series of the 
+     * given length.
+     */
+    private void addSparse(TwoTimeStore result, int nonZeros, int n) {
+        for (int a = 0; a < nonZeros; a++) {
+            int i = sparseFrames[a];
+            if (i >= rows) break;
+            
+            double v = sparseValues[a];
+            int first = firstColumn(i);
+            int last = band > 0 ? Math.min(n, i + 1 + band) : n;
+            long base = rowStart[i];
+            
+            int b = a + 1;
+            while (b < nonZeros && sparseFrames[b] < first) b++;
+            
+            for (; b < nonZeros; b++) {
+                int j = sparseFrames[b];
+                if (j >= last) break;
+                long k = base + j;
+                result.set(k, result.get(k) + v * sparseValues[b]);
+            }
+        }
+    }
+    
+    /**
+     * Stage the series of one pixel.
+     * 
+     * @return true if the block is full and has to be flushed.
+     */
+    public boolean add(double[] intensities) {
+        if (length != intensities.length) {
+            if (count > 0) {
+                throw new IllegalStateException(
+                        "Series length changed within a block");
+            }
+            length = Math.min(intensities.length, frames);
+            block = new double[length * blockPixels];
+            nonZero = new boolean[length];
+        }
+        
+        for (int i = 0, b = count; i < length; i++, b += blockPixels) {
+            double v = intensities[i];
+            block[b] = v;
+            if (v != 0) nonZero[i] = true;
+        }
+        count++;
+        
+        return count == blockPixels;
+    }
+    
+    public boolean isFull() {
+        return count == blockPixels;
+    }
+    
+    public int getCount() {
+        return count;
+    }
+    
+    /**
+     * Add the products of the staged pixels to the result and empty the 
+     * block.
+     */
+    public void flush(double[] result) {
+        flush(TwoTimeStore.wrap(result));
+    }
+    
+    /**
+     * Add the products of the staged pixels to the result and empty the 
+     * block.
+     */
+    public void flush(TwoTimeStore result) {
+        if (count == 0) return;
+        
+        int tiles = (Math.min(rows, length) + tile - 1) / tile;
+        if (pool == null || tiles == 1) {
+            for (int t = 0; t < tiles; t++) {
+                updateTileRow(result, t);
+            }
+        } else {
+            pool.invoke(new TileRows(result, 0, tiles));
+        }
+        
+        // Unused pixel slots of a partial block must read as zero next time.
+        Arrays.fill(block, 0.0d);
+        Arrays.fill(nonZero, false);
+        count = 0;
+    }
+    
+    /**
+     * Stop the worker threads.
+     */
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+    
+    /**
+     * First column frame of row i.
+     */
+    private int firstColumn(int i) {
+        return split < 0 ? i + 1 : split;
+    }
+    
+    /**
+     * End of the column frames of row i.
+     */
+    private int lastColumn(int i) {
+        return band > 0 ? Math.min(length, i + 1 + band) : length;
+    }
+    
+    /**
+     * Update every tile right of and on the diagonal in a row of tiles.
+     */
+    private void updateTileRow(TwoTimeStore result, int t) {
+        int i0 = t * tile;
+        int i1 = Math.min(i0 + tile, Math.min(rows, length));
+        int end = lastColumn(i1 - 1);
+        
+        for (int j0 = split < 0 ? i0 : split; j0 < end; j0 += tile) {
+            int j1 = Math.min(j0 + tile, end);
+            int i = i0;
+            // Two rows at a time share the loads of their common columns.
+            for (; i + 1 < i1; i += 2) {
+                int from0 = Math.max(j0, firstColumn(i));
+                int to0 = Math.min(j1, lastColumn(i));
+                int from1 = Math.max(j0, firstColumn(i + 1));
+                int to1 = Math.min(j1, lastColumn(i + 1));
+                
+                if (nonZero[i] && nonZero[i + 1]) {
+                    int from = Math.max(from0, from1);
+                    int to = Math.max(from, Math.min(to0, to1));
+                    updateRow(result, i, from0, Math.min(from, to0));
+                    updateRows(result, i, from, to);
+                    updateRow(result, i, Math.max(to, from0), to0);
+                    updateRow(result, i + 1, from1, Math.min(from, to1));
+                    updateRow(result, i + 1, Math.max(to, from1), to1);
+                } else if (nonZero[i]) {
+                    updateRow(result, i, from0, to0);
+                } else if (nonZero[i + 1]) {
+                    updateRow(result, i + 1, from1, to1);
+                }
+            }
+            if (i < i1 && nonZero[i]) {
+                updateRow(result, i, Math.max(j0, firstColumn(i)), 
+                        Math.min(j1, lastColumn(i)));
+            }
+        }
+    }
+    
+    /**
+     * result(i, j) and result(i + 1, j) for j in [from, to), four columns 
+     * at a time. The columns have to be in both rows.
+     */
+    private void updateRows(TwoTimeStore result, int i, int from, int to) {
+        final int n = count;
+        final int stride = blockPixels;
+        final double[] b = block;
+        final int a0 = i * stride;
+        final int a1 = a0 + stride;
+        long k0 = rowStart[i] + from;
+        long k1 = rowStart[i + 1] + from;
+        int j = from;
+        
+        for (; j + 3 < to; j += 4, k0 += 4, k1 += 4) {
+            int b0 = j * stride;
+            int b1 = b0 + stride;
+            int b2 = b1 + stride;
+            int b3 = b2 + stride;
+            double acc00 = result.get(k0);
+            double acc01 = result.get(k0 + 1);
+            double acc02 = result.get(k0 + 2);
+            double acc03 = result.get(k0 + 3);
+            double acc10 = result.get(k1);
+            double acc11 = result.get(k1 + 1);
+            double acc12 = result.get(k1 + 2);
+            double acc13 = result.get(k1 + 3);
+            for (int p = 0; p < n; p++) {
+                double v0 = b[a0 + p];
+                double v1 = b[a1 + p];
+                double w0 = b[b0 + p];
+                double w1 = b[b1 + p];
+                double w2 = b[b2 + p];
+                double w3 = b[b3 + p];
+                acc00 += v0 * w0;
+                acc01 += v0 * w1;
+                acc02 += v0 * w2;
+                acc03 += v0 * w3;
+                acc10 += v1 * w0;
+                acc11 += v1 * w1;
+                acc12 += v1 * w2;
+                acc13 += v1 * w3;
+            }
+            result.set(k0, acc00);
+            result.set(k0 + 1, acc01);
+            result.set(k0 + 2, acc02);
+            result.set(k0 + 3, acc03);
+            result.set(k1, acc10);
+            result.set(k1 + 1, acc11);
+            result.set(k1 + 2, acc12);
+            result.set(k1 + 3, acc13);
+        }
+        
+        for (; j < to; j++, k0++, k1++) {
+            int b0 = j * stride;
+            double acc0 = result.get(k0);
+            double acc1 = result.get(k1);
+            for (int p = 0; p < n; p++) {
+                double w = b[b0 + p];
+                acc0 += b[a0 + p] * w;
+                acc1 += b[a1 + p] * w;
+            }
+            result.set(k0, acc0);
+            result.set(k1, acc1);
+        }
+    }
+    
+    /**
+     * result(i, j) += sum over pixels of I(p, i) * I(p, j) for j in 
+     * [from, to), four columns at a time.
+     */
+    private void updateRow(TwoTimeStore result, int i, int from, int to) {
+        final int n = count;
+        final int stride = blockPixels;
+        final double[] b = block;
+        final int a = i * stride;
+        long k = rowStart[i] + from;
+        int j = from;
+        
+        for (; j + 3 < to; j += 4, k += 4) {
+            int b0 = j * stride;
+            int b1 = b0 + stride;
+            int b2 = b1 + stride;
+            int b3 = b2 + stride;
+            double acc0 = result.get(k);
+            double acc1 = result.get(k + 1);
+            double acc2 = result.get(k + 2);
+            double acc3 = result.get(k + 3);
+            for (int p = 0; p < n; p++) {
+                double v = b[a + p];
+                acc0 += v * b[b0 + p];
+                acc1 += v * b[b1 + p];
+                acc2 += v * b[b2 + p];
+                acc3 += v * b[b3 + p];
+            }
+            result.set(k, acc0);
+            result.set(k + 1, acc1);
+            result.set(k + 2, acc2);
+            result.set(k + 3, acc3);
+        }
+        
+        for (; j < to; j++, k++) {
+            int b0 = j * stride;
+            double acc = result.get(k);
+            for (int p = 0; p < n; p++) {
+                acc += b[a + p] * b[b0 + p];
+            }
+            result.set(k, acc);
+        }
+    }
+    
+    /**
+     * Rows of tiles [from, to), split until each task has one row. Rows 
+     * near the top have more tiles, idle workers steal what is left.
+     */
+    private class TileRows extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+
+        private final TwoTimeStore result;
+        
+        private final int from;
+        
+        private final int to;
+        
+        TileRows(TwoTimeStore result, int from, int to) {
+            this.result = result;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                updateTileRow(result, from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new TileRows(result, from, middle), 
+                    new TileRows(result, middle, to));
+        }
+    }
+}
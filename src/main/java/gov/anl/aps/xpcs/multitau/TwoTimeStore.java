@@ -0,0 +1,418 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.multitau;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Elements of a two-time result, indexed by long so a packed triangle can
+ * have more than 2^31 elements when kept off the heap.
+ * 
+ * Elements are kept as doubles, as floats, or as compensated floats, a 
+ * float sum with a float holding its rounding error, which together carry
+ * about 48 bits. Float and compensated elements are written as floats, all
+ * others as doubles. Off-heap stores use direct buffers, outside of the 
+ * reducer heap, in segments of 2^27 elements.
+ */
+public abstract class TwoTimeStore {
+
+    public static final String DOUBLE = "double";
+    
+    public static final String FLOAT = "float";
+    
+    public static final String COMPENSATED = "compensated";
+
+    private static final int SEGMENT_BITS = 27;
+    
+    private static final int SEGMENT = 1 << SEGMENT_BITS;
+    
+    private static final int SEGMENT_MASK = SEGMENT - 1;
+
+    /**
+     * Bytes staged before writing to the output.
+     */
+    private static final int WRITE_BUFFER = 64 * 1024;
+
+    protected final long size;
+    
+    protected TwoTimeStore(long size) {
+        this.size = size;
+    }
+
+    /**
+     * @param precision One of DOUBLE, FLOAT or COMPENSATED.
+     */
+    public static TwoTimeStore create(long size, String precision, 
+            boolean offHeap) {
+        boolean floats = FLOAT.equals(precision);
+        boolean compensated = COMPENSATED.equals(precision);
+        if (!floats && !compensated && !DOUBLE.equals(precision)) {
+            throw new IllegalArgumentException("Unknown two-time precision " + 
+                    precision);
+        }
+        
+        if (offHeap) {
+            if (floats) return new DirectFloatStore(size, false);
+            if (compensated) return new DirectFloatStore(size, true);
+            return new DirectDoubleStore(size);
+        }
+        
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Two-time of " + size + 
+                    " elements does not fit an array, use an off-heap store");
+        }
+        if (floats) return new FloatStore((int) size, false);
+        if (compensated) return new FloatStore((int) size, true);
+        return new DoubleStore(new double[(int) size]);
+    }
+    
+    /**
+     * A store over an existing array.
+     */
+    public static TwoTimeStore wrap(double[] data) {
+        return new DoubleStore(data);
+    }
+    
+    /**
+     * @return Bytes of one written element, 8 or 4.
+     */
+    public static int getElementBytes(String precision) {
+        return DOUBLE.equals(precision) ? 8 : 4;
+    }
+    
+    /**
+     * Read one element written by a store of the given precision.
+     */
+    public static double read(DataInput in, String precision) 
+            throws IOException {
+        return DOUBLE.equals(precision) ? in.readDouble() : in.readFloat();
+    }
+
+    public long size() {
+        return size;
+    }
+    
+    public abstract double get(long index);
+    
+    public abstract void set(long index, double value);
+    
+    public abstract void clear();
+    
+    /**
+     * Write every element, 8 or 4 bytes each.
+     */
+    public abstract void write(DataOutput out) throws IOException;
+    
+    /**
+     * Drop the buffers of an off-heap store, so the collector can release 
+     * them before the store itself goes. The store can not be used 
+     * afterwards.
+     */
+    public void free() {
+    }
+    
+    private static class DoubleStore extends TwoTimeStore {
+        
+        private final double[] data;
+        
+        DoubleStore(double[] data) {
+            super(data.length);
+            this.data = data;
+        }
+
+        @Override
+        public double get(long index) {
+            return data[(int) index];
+        }
+
+        @Override
+        public void set(long index, double value) {
+            data[(int) index] = value;
+        }
+
+        @Override
+        public void clear() {
+            Arrays.fill(data, 0.0d);
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER);
+            DoubleBuffer view = buffer.asDoubleBuffer();
+            for (int from = 0; from < data.length; ) {
+                int n = Math.min(view.capacity(), data.length - from);
+                view.clear();
+                view.put(data, from, n);
+                out.write(buffer.array(), 0, 8 * n);
+                from += n;
+            }
+        }
+    }
+    
+    /**
+     * Floats, with a float of the rounding error of each when compensated.
+     */
+    private static class FloatStore extends TwoTimeStore {
+        
+        private final float[] sum;
+        
+        private final float[] error;
+        
+        FloatStore(int size, boolean compensated) {
+            super(size);
+            sum = new float[size];
+            error = compensated ? new float[size] : null;
+        }
+
+        @Override
+        public double get(long index) {
+            int i = (int) index;
+            return error == null ? sum[i] : (double) sum[i] + error[i];
+        }
+
+        @Override
+        public void set(long index, double value) {
+            int i = (int) index;
+            float hi = (float) value;
+            sum[i] = hi;
+            if (error != null) {
+                error[i] = (float) (value - hi);
+            }
+        }
+
+        @Override
+        public void clear() {
+            Arrays.fill(sum, 0.0f);
+            if (error != null) {
+                Arrays.fill(error, 0.0f);
+            }
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER);
+            FloatBuffer view = buffer.asFloatBuffer();
+            for (int from = 0; from < sum.length; ) {
+                int n = Math.min(view.capacity(), sum.length - from);
+                view.clear();
+                if (error == null) {
+                    view.put(sum, from, n);
+                } else {
+                    for (int i = from; i < from + n; i++) {
+                        view.put((float) ((double) sum[i] + error[i]));
+                    }
+                }
+                out.write(buffer.array(), 0, 4 * n);
+                from += n;
+            }
+        }
+    }
+    
+    private static ByteBuffer[] allocate(long size, int bytes) {
+        int segments = (int) ((size + SEGMENT - 1) >>> SEGMENT_BITS);
+        ByteBuffer[] buffers = new ByteBuffer[segments];
+        for (int s = 0; s < segments; s++) {
+            long n = Math.min(SEGMENT, size - ((long) s << SEGMENT_BITS));
+            buffers[s] = ByteBuffer.allocateDirect((int) n * bytes)
+                    .order(ByteOrder.nativeOrder());
+        }
+        return buffers;
+    }
+    
+    private static void fillZero(ByteBuffer[] buffers) {
+        byte[] zeros = new byte[WRITE_BUFFER];
+        for (ByteBuffer buffer : buffers) {
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                buffer.put(zeros, 0, Math.min(zeros.length, buffer.remaining()));
+            }
+            buffer.clear();
+        }
+    }
+    
+    private static class DirectDoubleStore extends TwoTimeStore {
+        
+        private DoubleBuffer[] segments;
+        
+        private ByteBuffer[] buffers;
+        
+        DirectDoubleStore(long size) {
+            super(size);
+            buffers = allocate(size, 8);
+            segments = new DoubleBuffer[buffers.length];
+            for (int s = 0; s < buffers.length; s++) {
+                segments[s] = buffers[s].asDoubleBuffer();
+            }
+        }
+
+        @Override
+        public double get(long index) {
+            return segments[(int) (index >>> SEGMENT_BITS)]
+                    .get((int) index & SEGMENT_MASK);
+        }
+
+        @Override
+        public void set(long index, double value) {
+            segments[(int) (index >>> SEGMENT_BITS)]
+                    .put((int) index & SEGMENT_MASK, value);
+        }
+
+        @Override
+        public void clear() {
+            fillZero(buffers);
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER);
+            DoubleBuffer view = buffer.asDoubleBuffer();
+            for (DoubleBuffer segment : segments) {
+                segment.clear();
+                while (segment.hasRemaining()) {
+                    int n = Math.min(view.capacity(), segment.remaining());
+                    view.clear();
+                    for (int i = 0; i < n; i++) {
+                        view.put(segment.get());
+                    }
+                    out.write(buffer.array(), 0, 8 * n);
+                }
+            }
+        }
+
+        @Override
+        public void free() {
+            segments = null;
+            buffers = null;
+        }
+    }
+    
+    private static class DirectFloatStore extends TwoTimeStore {
+        
+        private FloatBuffer[] sum;
+        
+        private FloatBuffer[] error;
+        
+        private ByteBuffer[] buffers;
+        
+        private ByteBuffer[] errorBuffers;
+        
+        DirectFloatStore(long size, boolean compensated) {
+            super(size);
+            buffers = allocate(size, 4);
+            sum = new FloatBuffer[buffers.length];
+            for (int s = 0; s < buffers.length; s++) {
+                sum[s] = buffers[s].asFloatBuffer();
+            }
+            
+            if (compensated) {
+                errorBuffers = allocate(size, 4);
+                error = new FloatBuffer[errorBuffers.length];
+                for (int s = 0; s < errorBuffers.length; s++) {
+                    error[s] = errorBuffers[s].asFloatBuffer();
+                }
+            }
+        }
+
+        @Override
+        public double get(long index) {
+            int s = (int) (index >>> SEGMENT_BITS);
+            int i = (int) index & SEGMENT_MASK;
+            if (error == null) {
+                return sum[s].get(i);
+            }
+            return (double) sum[s].get(i) + error[s].get(i);
+        }
+
+        @Override
+        public void set(long index, double value) {
+            int s = (int) (index >>> SEGMENT_BITS);
+            int i = (int) index & SEGMENT_MASK;
+            float hi = (float) value;
+            sum[s].put(i, hi);
+            if (error != null) {
+                error[s].put(i, (float) (value - hi));
+            }
+        }
+
+        @Override
+        public void clear() {
+            fillZero(buffers);
+            if (errorBuffers != null) {
+                fillZero(errorBuffers);
+            }
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER);
+            FloatBuffer view = buffer.asFloatBuffer();
+            long index = 0;
+            while (index < size) {
+                int n = (int) Math.min(view.capacity(), size - index);
+                view.clear();
+                for (int i = 0; i < n; i++, index++) {
+                    view.put((float) get(index));
+                }
+                out.write(buffer.array(), 0, 4 * n);
+            }
+        }
+
+        @Override
+        public void free() {
+            sum = null;
+            error = null;
+            buffers = null;
+            errorBuffers = null;
+        }
+    }
+}
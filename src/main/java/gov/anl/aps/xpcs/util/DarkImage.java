@@ -161,6 +161,23 @@ public class DarkImage {
         this.flatfield = this.config.getFlatField();
     }
     
+    private DarkImage(double[] darkAvg, double[] darkStd, float threshold, 
+            float sigma) {
+        this.darkAvgImage = darkAvg;
+        this.darkStdImage = darkStd;
+        this.imageSize = darkAvg.length;
+        this.constantThreshold = threshold;
+        this.constantStdDev = sigma;
+    }
+    
+    /**
+     * Dark image from already computed average and standard deviation images.
+     */
+    public static DarkImage initFromImages(double[] darkAvg, double[] darkStd,
+            float threshold, float sigma) {
+        return new DarkImage(darkAvg, darkStd, threshold, sigma);
+    }
+    
     public static DarkImage initFromIMMFile(XPCSConfig config)
             throws IOException {
         DarkImage darkImage = new DarkImage(config);
@@ -340,6 +357,12 @@ public class DarkImage {
         long syncMarker = computeSyncMarker();
         buffer = new byte[bytesInFrame];
 
+        // Frame sizes are not assumed to be fixed when the index is present.
+        IMMIndex immIndex = IMMIndex.getOrBuild(this.config, inputPath);
+        if (immIndex != null && darkStart >= 0 && darkStart < immIndex.size()) {
+            syncMarker = immIndex.getOffset(darkStart);
+        }
+
         // Sync to first dark frame in the file.
         if (syncMarker > 0) fileIn.seek(syncMarker);
         
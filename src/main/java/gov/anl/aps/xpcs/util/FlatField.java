@@ -205,4 +205,13 @@ public class FlatField {
             image[i] *= flatfield[i];
         }
     }
+
+    /**
+     * Apply flat field to a sparse image, index[i] is the pixel index of image[i].
+     */
+    public static void applyFlatField(float[] image, int[] index, int pixels, double[] flatfield) {
+        for (int i = 0 ; i < pixels ; i++) {
+            image[i] *= flatfield[index[i]];
+        }
+    }
 }
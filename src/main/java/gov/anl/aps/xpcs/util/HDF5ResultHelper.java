@@ -46,19 +46,24 @@
 package gov.anl.aps.xpcs.util;
 
 import gov.anl.aps.xpcs.config.XPCSConfig;
+import gov.anl.aps.xpcs.multitau.TwoTimeStore;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.BufferedInputStream;
-import java.nio.ByteBuffer;
-import java.nio.DoubleBuffer;
+import java.io.DataInputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.swing.tree.DefaultMutableTreeNode;
 
@@ -451,27 +456,12 @@ public class HDF5ResultHelper {
 	private static void writeNormTwoTime(XPCSConfig configuration, 
                                     H5File hFile, 
                                     Group hadoopGroup) throws Exception {
-		
-        int frameCount = configuration.getFramecount();
 
         Group twoTimeGroup = (Group) hFile.get(hadoopGroup.getFullName() + "/TwoTime");
 
         if(twoTimeGroup == null)
          twoTimeGroup = hFile.createGroup(hadoopGroup.getFullName() + "/TwoTime", hadoopGroup);
 
-		long[] dims3D = {frameCount, frameCount, 1};
-		long[] chunks = {frameCount, frameCount, 1};
-		Datatype dtype = hFile.createDatatype(
-		        Datatype.CLASS_FLOAT, 8, Datatype.NATIVE, Datatype.NATIVE);
-
-	  	Dataset dataset1 = null;
-
-	  	// Number of bytes would be at-least half of total expected data i.e sizeOfDouble * frameCount * frameCount
-		byte[] buffer1 = new byte[(4 * frameCount * frameCount)];
-		byte[] buffer2 = new byte[8];
-
-		long bytesRead = 0;
-
 		Path inputPath = new Path(configuration.getOutputDir() + "/g2");
 		FileSystem hdfs = FileSystem.get(configuration);
 		FileStatus[] fls = hdfs.listStatus(inputPath);
@@ -479,59 +469,139 @@ public class HDF5ResultHelper {
 		QMaps partitions = configuration.getMaps();
         int pixelsPerBin[] = partitions.getDynamicCounts();
 
-		for (FileStatus fl : fls) {
-			if (fl.getPath().getName().contains("part-"))
-			{
-				BufferedInputStream buffin = new BufferedInputStream(hdfs.open(fl.getPath()));
-				bytesRead = buffin.read(buffer2, 0, buffer2.length);
+		if (configuration.getTwoTimeBand() > 0) {
+			writeBandTwoTime(configuration, hFile, twoTimeGroup, 
+					hdfs, fls, pixelsPerBin);
+			return;
+		}
 
-				ByteBuffer q = ByteBuffer.wrap(buffer2, 0, (int)bytesRead);
-				int qvalue = (int) q.getDouble();
-				bytesRead = buffin.read(buffer1, 0, buffer1.length);
+		TwoTimeStripReader reader = new TwoTimeStripReader(
+				configuration, hdfs, fls, pixelsPerBin);
+		int frameCount = reader.getFrameCount();
+		int chunk = Math.max(1, Math.min(frameCount, configuration.getTwoTimeChunk()));
 
-				DoubleBuffer data = ByteBuffer.wrap(buffer1, 0, (int)bytesRead).asDoubleBuffer();
+		// Strips held at once, read ahead or being written, whatever the 
+		//  number of threads.
+		long stripBytes = 8L * chunk * frameCount;
+		long budget = (long) configuration.getTwoTimeWriteMemoryMB() << 20;
+		int maxStrips = (int) Math.max(1, Math.min(Integer.MAX_VALUE, 
+				budget / stripBytes));
 
-				double out[][] = new double[frameCount][frameCount];
+		int threads = configuration.getTwoTimeWriteThreads();
+		if (threads <= 0)
+			threads = Runtime.getRuntime().availableProcessors();
+		threads = Math.min(threads, maxStrips);
+		maxStrips = Math.min(maxStrips, 2 * threads);
 
-				int index = 1, prevI = 0,  i = 0, j = 0, els = 0;
+		logger.info("Writing two-time strips of " + chunk + " rows, " + 
+				maxStrips + " at a time on " + threads + " threads");
 
-				int totalEls = (int) (Math.pow(frameCount-1, 2) + (frameCount - 1)) / 2;
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			for (int qvalue : reader.getBins()) {
+				writeTwoTimeStrips(hFile, twoTimeGroup, reader, qvalue, 
+						pool, chunk, maxStrips);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
 
-				while (els <  totalEls)
-				{	
+	/**
+	 * Write the two-time matrix of a q-bin one strip of chunk rows at a 
+	 *  time, so every chunk is complete when it is written and compressed. 
+	 *  The strips are read by the pool, with at most maxStrips of them 
+	 *  read ahead or being written.
+	 */
+	private static void writeTwoTimeStrips(H5File hFile, 
+									Group twoTimeGroup, 
+									final TwoTimeStripReader reader, 
+									final int qvalue, 
+									ExecutorService pool, 
+									int chunk, 
+									int maxStrips) throws Exception {
+
+		final int frameCount = reader.getFrameCount();
 
-					i = index / frameCount;
-					j = index % frameCount;
+		long[] dims3D = {frameCount, frameCount, 1};
+		long[] chunks = {chunk, chunk, 1};
+		Datatype dtype = hFile.createDatatype(
+		        Datatype.CLASS_FLOAT, 8, Datatype.NATIVE, Datatype.NATIVE);
 
-					if (prevI != i)
-					{
-						j += (i + 1);
-						index += (i + 1);
+		String name = twoTimeGroup.getFullName() + "/" + getFormattedQName(qvalue, 4);
+		Dataset dataset = (Dataset) hFile.get(name);
+		if (dataset == null) {
+		    dataset = hFile.createScalarDS(name, twoTimeGroup, dtype, dims3D, null, chunks, 6, null);
+		}
+
+		ArrayDeque<Future<double[]>> strips = new ArrayDeque<Future<double[]>>();
+		int next = 0;
+		for (int row = 0; row < frameCount; row += chunk) {
+			while (next < frameCount && strips.size() < maxStrips) {
+				final int from = next;
+				final int to = Math.min(frameCount, next + chunk);
+				strips.add(pool.submit(new Callable<double[]>() {
+					public double[] call() throws Exception {
+						double[] strip = new double[(to - from) * frameCount];
+						reader.read(qvalue, from, to, strip);
+						return strip;
 					}
-					
-					out[i][j] = data.get() / pixelsPerBin[qvalue];
+				}));
+				next = to;
+			}
 
-					index++;
-					els++;
-					prevI = i;
-				}
+			double[] strip = strips.poll().get();
+			write3DDataset(dataset, row, 0, 0, strip.length / frameCount, frameCount, 1, strip);
+		}
+	}
+
+	/**
+	 * Write the band of every q-bin as C_xxxx_band, a frames x W dataset 
+	 *  where element (t, d - 1) is the correlation of frame t with frame 
+	 *  t + d. Elements past the last frame are zero.
+	 */
+	private static void writeBandTwoTime(XPCSConfig configuration, 
+									H5File hFile, 
+									Group twoTimeGroup, 
+									FileSystem hdfs, 
+									FileStatus[] fls, 
+									int[] pixelsPerBin) throws Exception {
+
+		int frameCount = configuration.getFramecount();
+		int band = configuration.getTwoTimeBand();
 
+		long[] dims2D = {frameCount, band};
+		long[] chunks = {Math.max(1, Math.min(frameCount, (1 << 20) / band)), band};
+		Datatype dtype = hFile.createDatatype(
+		        Datatype.CLASS_FLOAT, 8, Datatype.NATIVE, Datatype.NATIVE);
+
+		double[] data = new double[frameCount * band];
+		String precision = configuration.getTwoTimePrecision();
+
+		for (FileStatus fl : fls) {
+			if (!fl.getPath().getName().contains("part-") || fl.getLen() == 0)
+				continue;
+
+			DataInputStream in = new DataInputStream(
+					new BufferedInputStream(hdfs.open(fl.getPath())));
+			int qvalue = 0;
+			try {
+				qvalue = (int) TwoTimeStore.read(in, precision);
+				for (int k = 0; k < data.length; k++) {
+					data[k] = TwoTimeStore.read(in, precision) / pixelsPerBin[qvalue];
+				}
+			} finally {
+				in.close();
+			}
 
-				String name = twoTimeGroup.getFullName() + "/" + getFormattedQName(qvalue, 4);
-		    	dataset1 = (Dataset) hFile.get(name);
-		    	if(dataset1 == null) {
-			        dataset1 = hFile.createScalarDS(name, twoTimeGroup, dtype, dims3D, null, chunks, 6, null);
-		    	}        
-
-				write3DDataset(dataset1,
-					           0,
-					           0,
-					           0,
-					           (int) dims3D[0],
-					           (int) dims3D[1], 
-					           (int) dims3D[2], 
-					           out);
+			String name = twoTimeGroup.getFullName() + "/" + 
+					getFormattedQName(qvalue, 4) + "_band";
+			Dataset dataset = (Dataset) hFile.get(name);
+			if (dataset == null) {
+				dataset = hFile.createScalarDS(name, twoTimeGroup, dtype, dims2D, null, chunks, 6, null);
 			}
+
+			write2DDataset(dataset, 0, 0, frameCount, band, data);
 		}
 	}
 
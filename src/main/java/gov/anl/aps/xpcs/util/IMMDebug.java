@@ -79,46 +79,26 @@ public class IMMDebug {
    private static Header header = new Header();
    private static boolean compression = false;
 
+   private static boolean buildIndex = false;
+
    private static void debug() throws IOException {
       Path inputPath = new Path(inputFile);
       FileSystem hdfs = inputPath.getFileSystem(new Configuration());
-      FSDataInputStream fin = hdfs.open(inputPath);
-      
-      long pos = 0;
-      int frames = 0;
-      int framelen = 0;
-      
-      while (fin.available() > 0) {
-         try {
-            int read = fin.read(pos, buffer, 0, Header.HEADER_SIZE_IN_BYTES);
-            if (read < 0) break;
-            assert read == Header.HEADER_SIZE_IN_BYTES;
-            header.update(buffer);
-
-            //TODO Format the output.
-            System.out.print("Pos " + pos);
-            System.out.print("\t Frame# " + header.getFrameIndex());
-            System.out.println("\t Pixels# " + header.getPixelCount());
-
-            // Compute frame length based on the compression. 
-            if (compression) {
-               framelen = header.getPixelCount() * XPCSConfig.BYTES_PER_PIXEL;
-            } else {
-               framelen = header.getPixelCount()
-                    * XPCSConfig.BYTES_PER_PIXEL_VALUE;
-            }
-            
-            // Next header. 
-            pos += Header.HEADER_SIZE_IN_BYTES + framelen;
-            fin.seek(pos);
-            frames++;
-         } catch (IOException io) {
-            io.printStackTrace();
-            break;
-         }
+
+      // Walk the header chain once, the same walk produces the frame index.
+      IMMIndex index = IMMIndex.build(hdfs, inputPath, compression);
+
+      for (int i = 0; i < index.size(); i++) {
+         //TODO Format the output.
+         System.out.print("Pos " + index.getOffset(i));
+         System.out.print("\t Frame# " + index.getFrameIndex(i));
+         System.out.println("\t Pixels# " + index.getPixelCount(i));
+      }
+
+      if (buildIndex) {
+         index.write(hdfs, inputPath);
+         System.out.println("Wrote index " + IMMIndex.getIndexPath(inputPath));
       }
-      
-      fin.close();
     }
    
     /**
@@ -141,6 +121,7 @@ public class IMMDebug {
         Options options = new Options();
         options.addOption("i", "path", true, "Path to IMM file (Required)");
         options.addOption("s", "sparse", false, "IMM file is sparse (default:no, Optional)");
+        options.addOption("b", "index", false, "Store frame index next to IMM file (default:no, Optional)");
 
         // Parse command line options
         try {
@@ -162,6 +143,11 @@ public class IMMDebug {
                 compression = true;
                 
             } 
+
+            // Check for index generation
+            if (line.hasOption("b")) {
+                buildIndex = true;
+            }
         }
 
         // Catch exceptions for bad command line arguments, and
@@ -0,0 +1,358 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.util;
+
+import gov.anl.aps.xpcs.config.XPCSConfig;
+import gov.anl.aps.xpcs.mapred.Header;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Frame-offset index of an IMM file. For every frame in the file the index 
+ * keeps the frame number, the byte offset of its header, the pixel count, 
+ * the clock and the coreco tick. The index is stored in a sidecar file 
+ * next to the IMM file and is rebuilt when the IMM file changes.
+ */
+public class IMMIndex {
+
+    /**
+     * Default logger
+     */
+    private static final Logger logger = LoggerFactory
+            .getLogger(IMMIndex.class.getName());
+
+    /**
+     * Suffix of the index file, appended to the IMM file name.
+     */
+    public static final String INDEX_SUFFIX = ".idx";
+
+    private static final int MAGIC = 0x494D4D58; // "IMMX"
+
+    private static final int VERSION = 1;
+
+    private int size = 0;
+
+    private int[] frameIndex;
+
+    private long[] offset;
+
+    private int[] pixelCount;
+
+    private double[] clock;
+
+    private int[] tick;
+
+    /**
+     * Length and modification time of the IMM file this index describes.
+     */
+    private long fileLength = 0;
+
+    private long fileModified = 0;
+
+    private boolean sparse = false;
+
+    private IMMIndex(int capacity) {
+        capacity = Math.max(capacity, 16);
+        frameIndex = new int[capacity];
+        offset = new long[capacity];
+        pixelCount = new int[capacity];
+        clock = new double[capacity];
+        tick = new int[capacity];
+    }
+
+    /**
+     * @return path of the index file that belongs to the given IMM file.
+     */
+    public static Path getIndexPath(Path immFile) {
+        return new Path(immFile.getParent(), immFile.getName() + INDEX_SUFFIX);
+    }
+
+    /**
+     * Walk the header chain of the IMM file and build the index. 
+     */
+    public static IMMIndex build(FileSystem fs, Path immFile, boolean sparse) 
+            throws IOException {
+        FileStatus status = fs.getFileStatus(immFile);
+        long length = status.getLen();
+        int bytesPerPixel = sparse ? XPCSConfig.BYTES_PER_PIXEL 
+                                   : XPCSConfig.BYTES_PER_PIXEL_VALUE;
+
+        IMMIndex index = new IMMIndex(1024);
+        index.fileLength = length;
+        index.fileModified = status.getModificationTime();
+        index.sparse = sparse;
+
+        byte[] buffer = new byte[Header.HEADER_SIZE_IN_BYTES];
+        Header header = new Header();
+        FSDataInputStream fin = fs.open(immFile);
+        long pos = 0;
+
+        try {
+            while (pos + Header.HEADER_SIZE_IN_BYTES <= length) {
+                try {
+                    fin.readFully(pos, buffer, 0, Header.HEADER_SIZE_IN_BYTES);
+                } catch (EOFException eof) {
+                    break;
+                }
+                header.update(buffer);
+                index.add(header.getFrameIndex(), pos, header.getPixelCount(),
+                        header.getClock(), header.getCorecoTick());
+
+                pos += Header.HEADER_SIZE_IN_BYTES 
+                        + (long) header.getPixelCount() * bytesPerPixel;
+            }
+        } finally {
+            fin.close();
+        }
+
+        logger.info("Indexed " + index.size + " frames in " + immFile);
+        return index;
+    }
+
+    /**
+     * Read the index of the IMM file, return null if there is no index or 
+     *  if the index is out of date. 
+     */
+    public static IMMIndex read(FileSystem fs, Path immFile, boolean sparse)
+            throws IOException {
+        Path indexPath = getIndexPath(immFile);
+        if (!fs.exists(indexPath)) return null;
+
+        FileStatus status = fs.getFileStatus(immFile);
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(fs.open(indexPath), 1024 * 1024));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.warn("Ignoring invalid index file " + indexPath);
+                return null;
+            }
+
+            long length = in.readLong();
+            long modified = in.readLong();
+            boolean isSparse = in.readBoolean();
+            int count = in.readInt();
+
+            if (length != status.getLen() || modified != status.getModificationTime()
+                    || isSparse != sparse) {
+                logger.info("Index file " + indexPath + " is out of date");
+                return null;
+            }
+
+            IMMIndex index = new IMMIndex(count);
+            index.fileLength = length;
+            index.fileModified = modified;
+            index.sparse = isSparse;
+            for (int i = 0; i < count; i++) {
+                index.add(in.readInt(), in.readLong(), in.readInt(), 
+                        in.readDouble(), in.readInt());
+            }
+            return index;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Store the index next to the IMM file. 
+     */
+    public void write(FileSystem fs, Path immFile) throws IOException {
+        Path indexPath = getIndexPath(immFile);
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(fs.create(indexPath, true), 1024 * 1024));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fileLength);
+            out.writeLong(fileModified);
+            out.writeBoolean(sparse);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeInt(frameIndex[i]);
+                out.writeLong(offset[i]);
+                out.writeInt(pixelCount[i]);
+                out.writeDouble(clock[i]);
+                out.writeInt(tick[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Load the index of the input file when available, otherwise build it 
+     *  and try to store it for the next analysis. Returns null if the index
+     *  is disabled in the configuration.
+     */
+    public static IMMIndex getOrBuild(XPCSConfig config, Path immFile) 
+            throws IOException {
+        if (!config.getUseFrameIndex()) return null;
+
+        FileSystem fs = immFile.getFileSystem(config);
+        boolean sparse = config.getIsSparse();
+
+        IMMIndex index = read(fs, immFile, sparse);
+        if (index != null) return index;
+
+        index = build(fs, immFile, sparse);
+        try {
+            index.write(fs, immFile);
+        } catch (IOException e) {
+            // The input directory may be read-only, the index is still 
+            //  useful for this run. 
+            logger.warn("Failed to store index for " + immFile + ": " + e.getMessage());
+        }
+        return index;
+    }
+
+    /**
+     * Read the index if present, never builds it. Used by the map tasks. 
+     */
+    public static IMMIndex load(XPCSConfig config, Path immFile) {
+        if (!config.getUseFrameIndex()) return null;
+
+        try {
+            return read(immFile.getFileSystem(config), immFile, config.getIsSparse());
+        } catch (IOException e) {
+            logger.warn("Failed to read index for " + immFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void add(int frame, long pos, int pixels, double frameClock, int frameTick) {
+        if (size == offset.length) {
+            int capacity = size * 2;
+            frameIndex = Arrays.copyOf(frameIndex, capacity);
+            offset = Arrays.copyOf(offset, capacity);
+            pixelCount = Arrays.copyOf(pixelCount, capacity);
+            clock = Arrays.copyOf(clock, capacity);
+            tick = Arrays.copyOf(tick, capacity);
+        }
+        frameIndex[size] = frame;
+        offset[size] = pos;
+        pixelCount[size] = pixels;
+        clock[size] = frameClock;
+        tick[size] = frameTick;
+        size++;
+    }
+
+    /**
+     * @return position (within the index) of the first frame whose frame 
+     *  number is >= frame and whose header starts at or after fromByte. 
+     *  Returns size() if there is no such frame. 
+     */
+    public int find(int frame, long fromByte) {
+        int lo = 0;
+        int hi = size;
+        // Frames are stored in increasing order of both number and offset.
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (frameIndex[mid] < frame || offset[mid] < fromByte) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return byte offset of the header of the first frame >= frame that 
+     *  starts in [fromByte, lastByte), or -1 if there is none.
+     */
+    public long seekOffset(int frame, long fromByte, long lastByte) {
+        int i = find(frame, fromByte);
+        if (i >= size || offset[i] >= lastByte) return -1;
+        return offset[i];
+    }
+
+    /**
+     * @return byte offset just past the end of the frame at position i.
+     */
+    public long getEndOffset(int i) {
+        int bytesPerPixel = sparse ? XPCSConfig.BYTES_PER_PIXEL 
+                                   : XPCSConfig.BYTES_PER_PIXEL_VALUE;
+        return offset[i] + Header.HEADER_SIZE_IN_BYTES 
+                + (long) pixelCount[i] * bytesPerPixel;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getFrameIndex(int i) {
+        return frameIndex[i];
+    }
+
+    public long getOffset(int i) {
+        return offset[i];
+    }
+
+    public int getPixelCount(int i) {
+        return pixelCount[i];
+    }
+
+    public double getClock(int i) {
+        return clock[i];
+    }
+
+    public int getCorecoTick(int i) {
+        return tick[i];
+    }
+}
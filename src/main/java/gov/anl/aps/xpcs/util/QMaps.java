@@ -58,6 +58,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.BitSet;
 import java.util.HashSet;
 
 import org.apache.hadoop.conf.Configuration;
@@ -249,6 +250,37 @@ public class QMaps {
         
         return mask;
     }
+
+    /**
+     * Same as getPixelMask, as a bit set indexed by the pixel index.
+     * 
+     * @return Bit set of the pixels that are not part of any partition
+     */
+    public BitSet getPixelMaskBits() {
+        if (this.dynamicMap == null || this.staticMap == null) return null;
+        
+        BitSet mask = new BitSet((int) this.totalPixels);
+        
+        this.dynamicMap.rewind();
+        this.staticMap.rewind();
+        
+        int index = 0;
+        
+        while (this.dynamicMap.hasRemaining() && 
+                this.staticMap.hasRemaining()) {
+            
+            int qvalue = this.dynamicMap.getInt();
+            int svalue = this.staticMap.getInt();
+            
+            if (qvalue < 1 || svalue < 1) {
+                mask.set(index);
+            }
+            
+            index++;
+        }
+        
+        return mask;
+    }
     /**
      * Return (or build if necessary) pixel mappings between individual
      * pixel and static partitions. 
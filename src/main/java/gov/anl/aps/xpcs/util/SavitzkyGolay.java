@@ -0,0 +1,197 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.util;
+
+/**
+ * Savitzky-Golay smoothing: every value is replaced by the value at its 
+ * position of the least squares polynomial fitted to the window around it.
+ * The first and last half windows are evaluated on the polynomial of the 
+ * first and last full window.
+ */
+public class SavitzkyGolay {
+
+    private final int window;
+
+    private final int order;
+
+    /**
+     * coefficients[t][i] weighs sample i of a window for the value at 
+     * position t of the window.
+     */
+    private final double[][] coefficients;
+
+    /**
+     * @param window Odd number of samples of the window.
+     * @param order Order of the fitted polynomial, less than window.
+     */
+    public SavitzkyGolay(int window, int order) {
+        if (window < 1 || window % 2 == 0) {
+            throw new IllegalArgumentException(
+                    "Savitzky-Golay window has to be odd: " + window);
+        }
+        if (order < 0 || order >= window) {
+            throw new IllegalArgumentException(
+                    "Savitzky-Golay order has to be less than the window: " + 
+                    order);
+        }
+        this.window = window;
+        this.order = order;
+        this.coefficients = computeCoefficients(window, order);
+    }
+
+    /**
+     * Smooth the first count values of data. Fewer values than the window 
+     * are smoothed with the largest window that fits.
+     */
+    public double[] smooth(double[] data, int count) {
+        if (count < window) {
+            int w = count % 2 == 0 ? count - 1 : count;
+            if (w < 1) {
+                return new double[count];
+            }
+            return new SavitzkyGolay(w, Math.min(order, w - 1)).smooth(data, count);
+        }
+
+        double[] result = new double[count];
+        int half = window / 2;
+
+        for (int n = 0; n < count; n++) {
+            int start;
+            double[] c;
+            if (n < half) {
+                start = 0;
+                c = coefficients[n];
+            } else if (n >= count - half) {
+                start = count - window;
+                c = coefficients[n - start];
+            } else {
+                start = n - half;
+                c = coefficients[half];
+            }
+
+            double value = 0;
+            for (int i = 0; i < window; i++) {
+                value += c[i] * data[start + i];
+            }
+            result[n] = value;
+        }
+
+        return result;
+    }
+
+    /**
+     * Rows of the projection J (J'J)^-1 J', where J[i][p] is the p-th 
+     * power of the position of sample i relative to the window center.
+     */
+    private static double[][] computeCoefficients(int window, int order) {
+        int terms = order + 1;
+        int half = window / 2;
+
+        double[][] j = new double[window][terms];
+        for (int i = 0; i < window; i++) {
+            double power = 1;
+            for (int p = 0; p < terms; p++) {
+                j[i][p] = power;
+                power *= i - half;
+            }
+        }
+
+        // Solve (J'J) X = J' by Gaussian elimination with partial pivoting.
+        double[][] a = new double[terms][terms];
+        double[][] x = new double[terms][window];
+        for (int p = 0; p < terms; p++) {
+            for (int q = 0; q < terms; q++) {
+                for (int i = 0; i < window; i++) {
+                    a[p][q] += j[i][p] * j[i][q];
+                }
+            }
+            for (int i = 0; i < window; i++) {
+                x[p][i] = j[i][p];
+            }
+        }
+
+        for (int p = 0; p < terms; p++) {
+            int pivot = p;
+            for (int r = p + 1; r < terms; r++) {
+                if (Math.abs(a[r][p]) > Math.abs(a[pivot][p])) pivot = r;
+            }
+            double[] swap = a[p];
+            a[p] = a[pivot];
+            a[pivot] = swap;
+            swap = x[p];
+            x[p] = x[pivot];
+            x[pivot] = swap;
+
+            for (int r = 0; r < terms; r++) {
+                if (r == p) continue;
+                double f = a[r][p] / a[p][p];
+                for (int q = p; q < terms; q++) {
+                    a[r][q] -= f * a[p][q];
+                }
+                for (int i = 0; i < window; i++) {
+                    x[r][i] -= f * x[p][i];
+                }
+            }
+        }
+        for (int p = 0; p < terms; p++) {
+            for (int i = 0; i < window; i++) {
+                x[p][i] /= a[p][p];
+            }
+        }
+
+        double[][] c = new double[window][window];
+        for (int t = 0; t < window; t++) {
+            for (int i = 0; i < window; i++) {
+                double value = 0;
+                for (int p = 0; p < terms; p++) {
+                    value += j[t][p] * x[p][i];
+                }
+                c[t][i] = value;
+            }
+        }
+        return c;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.util;
+
+import gov.anl.aps.xpcs.config.XPCSConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * What a pixel series store was built from: the input file, the frame 
+ * range, the dark, flatfield and binning settings and checksums of the 
+ * maps and images the transpose job applied. A store is only reused if it 
+ * was completed and its manifest matches the current configuration.
+ */
+public class SeriesStoreManifest {
+
+    public static final String NAME = "_MANIFEST";
+
+    /**
+     * Written by the output committer when the job succeeded.
+     */
+    public static final String SUCCESS = "_SUCCESS";
+
+    /**
+     * @return true if the store in dir is complete and was built from the 
+     *  current configuration.
+     */
+    public static boolean matches(XPCSConfig config, Path dir) 
+            throws IOException {
+        FileSystem fs = dir.getFileSystem(config);
+        Path manifest = new Path(dir, NAME);
+        if (!fs.exists(new Path(dir, SUCCESS)) || !fs.exists(manifest)) {
+            return false;
+        }
+
+        Properties stored = new Properties();
+        InputStream in = fs.open(manifest);
+        try {
+            stored.load(in);
+        } finally {
+            in.close();
+        }
+
+        return stored.equals(describe(config));
+    }
+
+    /**
+     * Record the current configuration with a completed store.
+     */
+    public static void write(XPCSConfig config, Path dir) throws IOException {
+        FileSystem fs = dir.getFileSystem(config);
+        OutputStream out = fs.create(new Path(dir, NAME), true);
+        try {
+            describe(config).store(out, "Pixel series store");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static Properties describe(XPCSConfig config) throws IOException {
+        Properties p = new Properties();
+
+        Path input = new Path(config.getInputFilePath());
+        FileStatus status = input.getFileSystem(config).getFileStatus(input);
+        p.setProperty("input.path", status.getPath().toString());
+        p.setProperty("input.length", Long.toString(status.getLen()));
+        p.setProperty("input.mtime", 
+                Long.toString(status.getModificationTime()));
+
+        p.setProperty("frame.first", Integer.toString(config.getFirstFrame()));
+        p.setProperty("frame.last", Integer.toString(config.getLastFrame()));
+        p.setProperty("frame.width", Integer.toString(config.getFrameWidth()));
+        p.setProperty("frame.height", 
+                Integer.toString(config.getFrameHeight()));
+        p.setProperty("frame.binX", Float.toString(config.getBinX()));
+        p.setProperty("frame.binY", Float.toString(config.getBinY()));
+        p.setProperty("frame.sparse", Boolean.toString(config.getIsSparse()));
+        p.setProperty("frame.flatfield", 
+                Boolean.toString(config.getIsFlatFieldEnabled()));
+
+        p.setProperty("dark.first", 
+                Integer.toString(config.getFirstDarkFrame()));
+        p.setProperty("dark.last", Integer.toString(config.getLastDarkFrame()));
+        p.setProperty("dark.threshold", 
+                Float.toString(config.getDarkThreshold()));
+        p.setProperty("dark.sigma", Float.toString(config.getDarkSigma()));
+
+        p.setProperty("kinetics", Boolean.toString(config.getIsKinetics()));
+        if (config.getIsKinetics()) {
+            p.setProperty("kinetics.firstslice", 
+                    Integer.toString(config.getFirstSlice()));
+            p.setProperty("kinetics.lastslice", 
+                    Integer.toString(config.getLastSlice()));
+            p.setProperty("kinetics.slicetop", 
+                    Integer.toString(config.getSliceTop()));
+            p.setProperty("kinetics.sliceheight", 
+                    Integer.toString(config.getSliceHeight()));
+        }
+
+        // The maps and images the transpose job reads from the output 
+        //  directory.
+        addChecksum(p, config, "dqmap");
+        addChecksum(p, config, "sqmap");
+        if (!config.getIsSparse()) {
+            addChecksum(p, config, "darkAverages");
+            addChecksum(p, config, "darkStds");
+        }
+        if (config.getIsFlatFieldEnabled()) {
+            addChecksum(p, config, "flatfield");
+        }
+
+        return p;
+    }
+
+    private static void addChecksum(Properties p, XPCSConfig config, 
+            String name) throws IOException {
+        Path file = new Path(config.getOutputDir() + "/" + name);
+        FileSystem fs = file.getFileSystem(config);
+
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        InputStream in = fs.open(file);
+        try {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        p.setProperty("crc." + name, Long.toString(crc.getValue()));
+    }
+}
@@ -0,0 +1,236 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+
+import gov.anl.aps.xpcs.config.XPCSConfig;
+import gov.anl.aps.xpcs.mapred.TwoTimeTileReducer;
+import gov.anl.aps.xpcs.mapred.io.TileKey;
+import gov.anl.aps.xpcs.multitau.TwoTimeAccumulator;
+import gov.anl.aps.xpcs.multitau.TwoTimeStore;
+
+/**
+ * Read strips of rows of the normalized two-time matrices from the part 
+ * files of the two-time job, so a matrix never has to be held whole.
+ * 
+ * The part files are indexed once: every record, either the packed upper 
+ * triangle of a q-bin or one of its tiles, is located by its header. A 
+ * strip then seeks straight to its rows in every record that covers them.
+ * Strips can be read by several threads at once.
+ */
+public class TwoTimeStripReader {
+
+	/**
+	 * A record of a part file, rows x columns frames at (i0, j0) of the 
+	 * matrix of its q-bin.
+	 */
+	private static class Record {
+
+		Path path;
+
+		/**
+		 * Byte offset of the first element after the header.
+		 */
+		long offset;
+
+		int i0;
+
+		int j0;
+
+		int rows;
+
+		int columns;
+
+		/**
+		 * Packed strict upper triangle of rows x rows instead of a 
+		 * rectangle.
+		 */
+		boolean triangle;
+	}
+
+	private FileSystem hdfs = null;
+
+	private int frameCount = 0;
+
+	private String precision = null;
+
+	private int bytes = 0;
+
+	private int[] pixelsPerBin = null;
+
+	private HashMap<Integer, ArrayList<Record>> records = 
+			new HashMap<Integer, ArrayList<Record>>();
+
+	public TwoTimeStripReader(XPCSConfig configuration, FileSystem hdfs, 
+			FileStatus[] fls, int[] pixelsPerBin) throws IOException {
+
+		this.hdfs = hdfs;
+		this.frameCount = configuration.getFramecount();
+		this.precision = configuration.getTwoTimePrecision();
+		this.bytes = TwoTimeStore.getElementBytes(precision);
+		this.pixelsPerBin = pixelsPerBin;
+
+		int segments = configuration.getTwoTimeSegments();
+		int segmentFrames = TileKey.getSegmentFrames(frameCount, segments);
+		int header = segments > 1 ? TwoTimeTileReducer.HEADER : 1;
+
+		for (FileStatus fl : fls) {
+			if (!fl.getPath().getName().contains("part-") || fl.getLen() == 0)
+				continue;
+
+			FSDataInputStream in = hdfs.open(fl.getPath());
+			try {
+				long position = 0;
+				while (position + (long) bytes * header <= fl.getLen()) {
+					in.seek(position);
+					Record record = new Record();
+					record.path = fl.getPath();
+					record.offset = position + (long) bytes * header;
+
+					int q = (int) TwoTimeStore.read(in, precision);
+					long size;
+					if (segments > 1) {
+						int row = (int) TwoTimeStore.read(in, precision);
+						int column = (int) TwoTimeStore.read(in, precision);
+						record.i0 = row * segmentFrames;
+						record.j0 = column * segmentFrames;
+						record.rows = TwoTimeTileReducer.getSegmentLength(
+								row, frameCount, segments);
+						record.columns = TwoTimeTileReducer.getSegmentLength(
+								column, frameCount, segments);
+						record.triangle = row == column;
+						size = TwoTimeTileReducer.getTileSize(
+								row, column, frameCount, segments);
+					} else {
+						record.rows = frameCount;
+						record.columns = frameCount;
+						record.triangle = true;
+						size = TwoTimeAccumulator.getTriangleSize(frameCount);
+					}
+					position = record.offset + (long) bytes * size;
+
+					ArrayList<Record> bin = records.get(q);
+					if (bin == null) {
+						bin = new ArrayList<Record>();
+						records.put(q, bin);
+					}
+					bin.add(record);
+				}
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * @return The q-bins found in the part files, in order.
+	 */
+	public Set<Integer> getBins() {
+		return new TreeSet<Integer>(records.keySet());
+	}
+
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Read rows [from, to) of the two-time matrix of q-bin q, divided by 
+	 * its pixel count, into strip row by row. Elements on and below the 
+	 * diagonal are zero.
+	 */
+	public void read(int q, int from, int to, double[] strip) 
+			throws IOException {
+
+		Arrays.fill(strip, 0, (to - from) * frameCount, 0.0d);
+
+		ArrayList<Record> bin = records.get(q);
+		if (bin == null)
+			return;
+
+		for (Record record : bin) {
+			int first = Math.max(from, record.i0);
+			int last = Math.min(to, record.i0 + record.rows);
+			if (first >= last)
+				continue;
+
+			FSDataInputStream file = hdfs.open(record.path);
+			try {
+				int row = first - record.i0;
+				long index = record.triangle ? 
+						(long) row * (record.rows - 1) - (long) row * (row - 1) / 2 : 
+						(long) row * record.columns;
+				file.seek(record.offset + index * bytes);
+				DataInputStream in = new DataInputStream(
+						new BufferedInputStream(file));
+
+				for (int i = first; i < last; i++, row++) {
+					int column = record.triangle ? row + 1 : 0;
+					int columns = record.triangle ? record.rows : record.columns;
+					int k = (i - from) * frameCount + record.j0 + column;
+					for (; column < columns; column++, k++) {
+						strip[k] = TwoTimeStore.read(in, precision) / pixelsPerBin[q];
+					}
+				}
+			} finally {
+				IOUtils.closeStream(file);
+			}
+		}
+	}
+}
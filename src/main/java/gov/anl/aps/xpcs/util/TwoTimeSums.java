@@ -0,0 +1,163 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.util;
+
+import gov.anl.aps.xpcs.config.XPCSConfig;
+import gov.anl.aps.xpcs.mapred.job.FrameSumFileFilter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Build the FrameSum and SmoothedSG of a two-time analysis from the output
+ * of the two-time sums job, in the layout they have in the HDF5 file.
+ */
+public class TwoTimeSums {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(TwoTimeSums.class.getName());
+
+    /**
+     * Read the job output in dir and set the frame sums, normalized to a 
+     * mean of 1, and the smoothed time averaged pixel intensities on the 
+     * configuration.
+     */
+    public static void collect(XPCSConfig configuration, Path dir) 
+            throws Exception {
+        FileSystem fs = dir.getFileSystem(configuration);
+
+        int frameCount = configuration.getFramecount();
+        int totalFrames = configuration.getTotalFrames();
+        if (totalFrames < frameCount) {
+            totalFrames = frameCount;
+            configuration.setTotalFrames(totalFrames);
+        }
+
+        double[] sums = new double[totalFrames];
+        boolean[] present = new boolean[totalFrames];
+        for (FileStatus f : fs.listStatus(dir, new FrameSumFileFilter())) {
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(fs.open(f.getPath())));
+            try {
+                String line = null;
+                while ((line = in.readLine()) != null) {
+                    // frame, sum, clock and tick
+                    String[] split = line.split("[\t,]");
+                    if (split.length != 4)
+                        continue;
+
+                    int frame = Integer.parseInt(split[0].trim());
+                    if (frame < 0 || frame >= totalFrames)
+                        continue;
+                    sums[frame] = Double.parseDouble(split[1].trim());
+                    present[frame] = true;
+                }
+            } finally {
+                in.close();
+            }
+        }
+
+        int frames = 0;
+        double mean = 0;
+        for (int i = 0; i < totalFrames; i++) {
+            if (present[i]) {
+                mean += sums[i];
+                frames++;
+            }
+        }
+        if (frames == 0 || mean == 0) {
+            throw new IOException("No frame sums in " + dir);
+        }
+        mean /= frames;
+        logger.info("Frame sums of " + frames + " frames, mean " + mean);
+
+        // First row frame indices, second row the normalized sums.
+        ByteBuffer frameSum = ByteBuffer.allocate(2 * totalFrames * 8)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < totalFrames; i++) {
+            frameSum.putDouble(i);
+        }
+        for (int i = 0; i < totalFrames; i++) {
+            frameSum.putDouble(sums[i] / mean);
+        }
+        configuration.setFrameSum(new FrameSum(frameSum.array(), totalFrames));
+
+        int width = configuration.getFrameWidth() / (int) configuration.getBinX();
+        int height = configuration.getFrameHeight() / (int) configuration.getBinY();
+        ByteBuffer smoothed = ByteBuffer.allocate(width * height * 8)
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        IntWritable pixel = new IntWritable();
+        DoubleWritable value = new DoubleWritable();
+        for (FileStatus f : fs.listStatus(dir)) {
+            if (!f.getPath().getName().startsWith("part-"))
+                continue;
+
+            SequenceFile.Reader reader = 
+                    new SequenceFile.Reader(fs, f.getPath(), configuration);
+            try {
+                while (reader.next(pixel, value)) {
+                    smoothed.putDouble(pixel.get() * 8, value.get() / frames);
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        configuration.setSmoothedSG(new SmoothedSG(smoothed.array(), width, height));
+    }
+}
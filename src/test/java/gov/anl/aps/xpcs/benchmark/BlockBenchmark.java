@@ -0,0 +1,135 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.benchmark;
+
+import gov.anl.aps.xpcs.multitau.BlockCorrelator;
+import gov.anl.aps.xpcs.multitau.G2;
+
+import java.util.Random;
+
+/**
+ * Time per pixel multi-tau with {@link G2#computeG2} against 
+ * {@link BlockCorrelator} on the same pixels. BlockCorrelatorTest checks 
+ * that every tau of every pixel is identical.
+ * 
+ * Usage: BlockBenchmark [frames pixels blockPixels dpl rounds]
+ */
+public class BlockBenchmark {
+
+    public static void main(String args[]) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int pixels = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        int blockPixels = args.length > 2 ? Integer.parseInt(args[2]) : 128;
+        int dpl = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        int rounds = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+
+        Random generator = new Random(1);
+        double series[][] = new double[pixels][frames];
+        for (int p = 0; p < pixels; p++) {
+            for (int i = 0; i < frames; i++) {
+                series[p][i] = generator.nextInt(4) * (0.5 + generator.nextDouble());
+            }
+        }
+
+        int maxLevel = G2.calculateLevelMax(frames, dpl);
+        BlockCorrelator block = new BlockCorrelator(dpl, maxLevel, frames, 
+                blockPixels);
+        double work[] = new double[frames];
+        double expected[] = new double[3];
+        double actual[] = new double[3];
+
+        // Best of several rounds, the first ones warm up the JIT.
+        double sink = 0;
+        long pixelBest = Long.MAX_VALUE;
+        long blockBest = Long.MAX_VALUE;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            for (int p = 0; p < pixels; p++) {
+                System.arraycopy(series[p], 0, work, 0, frames);
+                int tau = 1;
+                for (int level = 0; level <= maxLevel; level++) {
+                    int tauIncrement = 1 << level;
+                    G2.smooth(work, frames, tauIncrement);
+                    int dplCount = G2.calculateDelayCount(dpl, level);
+                    for (int d = 0; d < dplCount; d++) {
+                        if (isOddFrame(tau + tauIncrement, level, frames)) {
+                            break;
+                        }
+                        sink += G2.computeG2(work, expected, frames, tau, level)[0];
+                        tau += tauIncrement;
+                    }
+                }
+            }
+            pixelBest = Math.min(pixelBest, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int p = 0; p < pixels; p++) {
+                block.add(series[p]);
+                if (block.isFull() || p == pixels - 1) {
+                    block.correlate();
+                    for (int q = 0; q < block.getCount(); q++) {
+                        sink += block.getG2(actual, q, 1, 0)[0];
+                    }
+                    block.clear();
+                }
+            }
+            blockBest = Math.min(blockBest, System.nanoTime() - start);
+        }
+
+        System.out.println(pixels + " pixels, " + frames + " frames, blocks of " +
+                blockPixels + ", dpl " + dpl + " (" + sink + ")");
+        System.out.println("Per pixel G2 : " + (pixelBest / pixels / 1000) + 
+                " us/pixel");
+        System.out.println("Pixel blocks : " + (blockBest / pixels / 1000) + 
+                " us/pixel");
+    }
+
+    private static boolean isOddFrame(int lastframe, int level, int frameCount) {
+        int fc = frameCount % 2 == 0 || level == 0 ? frameCount : 
+                                                     frameCount - 1;
+        return (lastframe > fc);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.benchmark;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Random;
+
+import gov.anl.aps.xpcs.mapred.filter.BinningFilter;
+import gov.anl.aps.xpcs.mapred.filter.DarkImageFilter;
+import gov.anl.aps.xpcs.mapred.filter.Filter;
+import gov.anl.aps.xpcs.mapred.filter.FlatFieldFilter;
+import gov.anl.aps.xpcs.mapred.filter.FusedFilter;
+import gov.anl.aps.xpcs.mapred.filter.QMapFilter;
+import gov.anl.aps.xpcs.mapred.io.Frame;
+import gov.anl.aps.xpcs.util.DarkImage;
+
+/**
+ * Compare the per-frame cost of the chained filters with the fused filter 
+ * on a synthetic frame. FusedFilterTest checks that both produce the same 
+ * result.
+ * 
+ * Usage: FilterBenchmark [width height xbin ybin frames sparse]
+ */
+public class FilterBenchmark {
+
+    public static void main(String args[]) {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        int xbin = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        int ybin = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        int frames = args.length > 4 ? Integer.parseInt(args[4]) : 200;
+        boolean sparse = args.length > 5 && Boolean.parseBoolean(args[5]);
+
+        int pixels = width * height;
+        int binnedPixels = (width / xbin) * (height / ybin);
+        Random generator = new Random(1);
+
+        double flat[] = new double[pixels];
+        double darkAvg[] = new double[pixels];
+        double darkStd[] = new double[pixels];
+        for (int i = 0; i < pixels; i++) {
+            flat[i] = 0.5 + generator.nextDouble();
+            darkAvg[i] = generator.nextDouble() * 2;
+            darkStd[i] = generator.nextDouble();
+        }
+
+        // Roughly 10% of the pixels are outside of any partition.
+        HashSet<Integer> maskSet = new HashSet<Integer>();
+        BitSet maskBits = new BitSet(binnedPixels);
+        for (int i = 0; i < binnedPixels; i++) {
+            if (generator.nextInt(10) == 0) {
+                maskSet.add(i);
+                maskBits.set(i);
+            }
+        }
+
+        DarkImage dark = DarkImage.initFromImages(darkAvg, darkStd, 1.0f, 1.0f);
+
+        ArrayList<Filter> chain = new ArrayList<Filter>();
+        chain.add(new FlatFieldFilter(flat));
+        if (!sparse) {
+            chain.add(new DarkImageFilter(dark));
+        }
+        if (xbin > 1 || ybin > 1) {
+            chain.add(new BinningFilter(xbin, ybin));
+        }
+        chain.add(new QMapFilter(maskSet));
+
+        FusedFilter fused = new FusedFilter(flat, sparse ? null : dark, 
+                xbin, ybin, maskBits);
+
+        // Raw frame data, every 8th pixel is hit in sparse mode.
+        int rawIndex[] = new int[pixels];
+        float rawValues[] = new float[pixels];
+        int rawCount = 0;
+        for (int i = 0; i < pixels; i++) {
+            if (sparse && generator.nextInt(8) != 0) continue;
+            rawIndex[rawCount] = i;
+            rawValues[rawCount] = generator.nextInt(10);
+            rawCount++;
+        }
+
+        Frame chained = new Frame(width, height, 0);
+        Frame single = new Frame(width, height, 0);
+        int index1[] = new int[pixels];
+        float values1[] = new float[pixels];
+        int index2[] = new int[pixels];
+        float values2[] = new float[pixels];
+
+        long chainedTime = 0;
+        long fusedTime = 0;
+
+        for (int frame = 0; frame < frames; frame++) {
+            load(chained, rawIndex, rawValues, rawCount, index1, values1, sparse, frame);
+            long start = System.nanoTime();
+            for (Filter filter : chain) {
+                filter.apply(chained);
+            }
+            chainedTime += System.nanoTime() - start;
+
+            load(single, rawIndex, rawValues, rawCount, index2, values2, sparse, frame);
+            start = System.nanoTime();
+            fused.apply(single);
+            fusedTime += System.nanoTime() - start;
+        }
+
+        System.out.println("Frame " + width + "x" + height + " bin " + xbin + 
+                "x" + ybin + (sparse ? " sparse" : " dense") + ", " + frames + 
+                " frames");
+        System.out.println("Chained filters : " + (chainedTime / frames) + " ns/frame");
+        System.out.println("Fused filter    : " + (fusedTime / frames) + " ns/frame");
+    }
+
+    private static void load(Frame f, int rawIndex[], float rawValues[], 
+            int rawCount, int index[], float values[], boolean sparse, 
+            int frame) {
+        if (sparse) {
+            System.arraycopy(rawIndex, 0, index, 0, rawCount);
+            System.arraycopy(rawValues, 0, values, 0, rawCount);
+            f.setSparseImage(index, values, rawCount, frame, 0, 0);
+        } else {
+            System.arraycopy(rawValues, 0, values, 0, rawCount);
+            f.setImage(index, values, rawCount, frame, 0, 0);
+        }
+    }
+}
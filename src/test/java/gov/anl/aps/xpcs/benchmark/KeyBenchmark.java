@@ -0,0 +1,203 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.benchmark;
+
+import gov.anl.aps.xpcs.mapred.io.CompositeKeyComparator;
+import gov.anl.aps.xpcs.mapred.io.NaturalKeyGroupingComparator;
+import gov.anl.aps.xpcs.mapred.io.NaturalKeyPartitioner;
+import gov.anl.aps.xpcs.mapred.io.QMapKey;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapred.JobConf;
+
+/**
+ * Time the shuffle key paths against the deserializing comparators,
+ * HashCodeBuilder hashes and boxed partition lookup they replaced. 
+ * ShuffleKeyTest checks that both give the same answers.
+ * 
+ * Usage: KeyBenchmark [keys qbins rounds]
+ */
+public class KeyBenchmark {
+
+    public static void main(String args[]) throws IOException {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int qbins = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        Random generator = new Random(1);
+        QMapKey[] qkeys = new QMapKey[keys];
+        int offsets[] = new int[keys + 1];
+        DataOutputBuffer buffer = new DataOutputBuffer();
+
+        for (int i = 0; i < keys; i++) {
+            qkeys[i] = new QMapKey((short) generator.nextInt(qbins), 
+                    generator.nextInt(1 << 20));
+            offsets[i] = buffer.getLength();
+            qkeys[i].write(buffer);
+        }
+        offsets[keys] = buffer.getLength();
+        byte[] bytes = buffer.getData();
+
+        JobConf conf = new JobConf();
+        conf.setOutputKeyComparatorClass(CompositeKeyComparator.class);
+        conf.setOutputValueGroupingComparator(NaturalKeyGroupingComparator.class);
+
+        WritableComparator oldSort = new DeserializingComparator(false);
+        WritableComparator oldGroup = new DeserializingComparator(true);
+        WritableComparator newSort = (WritableComparator) conf.getOutputKeyComparator();
+        WritableComparator newGroup = (WritableComparator) conf.getOutputValueGroupingComparator();
+
+        String[] bins = new String[qbins];
+        HashMap<Short, Integer> oldPartitions = new HashMap<Short, Integer>();
+        for (int q = 0; q < qbins; q++) {
+            bins[q] = q + ".0";
+            oldPartitions.put((short) q, q);
+        }
+        conf.setStrings("xpcs.qmap.binsToProcess", bins);
+        NaturalKeyPartitioner partitioner = new NaturalKeyPartitioner();
+        partitioner.configure(conf);
+        int numPartitions = Math.max(1, qbins / 3);
+
+        long oldSortTime = 0, newSortTime = 0;
+        long oldGroupTime = 0, newGroupTime = 0;
+        long oldHashTime = 0, newHashTime = 0;
+        long oldPartTime = 0, newPartTime = 0;
+        long sink = 0;
+
+        for (int r = 0; r < rounds; r++) {
+            long start = System.nanoTime();
+            sink += compareAll(oldSort, bytes, offsets, keys);
+            oldSortTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sink += compareAll(newSort, bytes, offsets, keys);
+            newSortTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sink += compareAll(oldGroup, bytes, offsets, keys);
+            oldGroupTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sink += compareAll(newGroup, bytes, offsets, keys);
+            newGroupTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < keys; i++) {
+                sink += new HashCodeBuilder().append(qkeys[i].getQ()).toHashCode();
+            }
+            oldHashTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < keys; i++) {
+                sink += qkeys[i].hashCode();
+            }
+            newHashTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < keys; i++) {
+                sink += oldPartitions.get(qkeys[i].getQ()) % numPartitions;
+            }
+            oldPartTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < keys; i++) {
+                sink += partitioner.getPartition(qkeys[i], null, numPartitions);
+            }
+            newPartTime += System.nanoTime() - start;
+        }
+
+        long ops = (long) keys * rounds;
+        System.out.println(keys + " keys, " + qbins + " q bins, " + rounds + 
+                " rounds (" + sink + ")");
+        print("Sort comparator  ", oldSortTime, newSortTime, ops);
+        print("Group comparator ", oldGroupTime, newGroupTime, ops);
+        print("QMapKey hashCode ", oldHashTime, newHashTime, ops);
+        print("Partition lookup ", oldPartTime, newPartTime, ops);
+    }
+
+    private static long compareAll(WritableComparator cmp, byte[] bytes, 
+            int offsets[], int keys) {
+        long sum = 0;
+        for (int i = 0; i + 1 < keys; i++) {
+            int s1 = offsets[i];
+            int s2 = offsets[i + 1];
+            sum += cmp.compare(bytes, s1, s2 - s1, bytes, s2, offsets[i + 2] - s2);
+        }
+        return sum;
+    }
+
+    private static void print(String what, long oldTime, long newTime, long ops) {
+        System.out.println(what + ": " + (oldTime / ops) + "." + 
+                ((oldTime * 10 / ops) % 10) + " -> " + (newTime / ops) + "." + 
+                ((newTime * 10 / ops) % 10) + " ns/op");
+    }
+
+    /**
+     * The comparators as they were: deserialize both keys for every call.
+     */
+    private static class DeserializingComparator extends WritableComparator {
+        private final boolean natural;
+
+        DeserializingComparator(boolean natural) {
+            super(QMapKey.class, true);
+            this.natural = natural;
+        }
+
+        @Override
+        public int compare(WritableComparable w1, WritableComparable w2) {
+            QMapKey k1 = (QMapKey) w1;
+            QMapKey k2 = (QMapKey) w2;
+            return natural ? k1.compareNaturalKey(k2) : k1.compareTo(k2);
+        }
+    }
+}
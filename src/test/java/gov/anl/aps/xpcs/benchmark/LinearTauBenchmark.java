@@ -0,0 +1,104 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.benchmark;
+
+import gov.anl.aps.xpcs.multitau.G2;
+import gov.anl.aps.xpcs.multitau.LinearTauCorrelator;
+
+import java.util.Random;
+
+/**
+ * Compare the per pixel cost of {@link LinearTauCorrelator} with the direct 
+ * sums of {@link G2#computeG2(double[], double[], int, int, int)} at level 0 
+ * for every tau. LinearTauCorrelatorTest checks that both agree.
+ * 
+ * Usage: LinearTauBenchmark [frames pixels]
+ */
+public class LinearTauBenchmark {
+
+    public static void main(String args[]) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int pixels = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        Random generator = new Random(1);
+        LinearTauCorrelator linear = new LinearTauCorrelator();
+        double expected[] = new double[3];
+        double actual[] = new double[3];
+
+        double series[][] = new double[pixels][frames];
+        for (int p = 0; p < pixels; p++) {
+            for (int i = 0; i < frames; i++) {
+                series[p][i] = generator.nextInt(3);
+            }
+        }
+        int maxTau = LinearTauCorrelator.getMaxTau(frames, 0);
+        double sink = 0;
+
+        long start = System.nanoTime();
+        for (int p = 0; p < pixels; p++) {
+            for (int tau = 1; tau <= maxTau; tau++) {
+                sink += G2.computeG2(series[p], expected, frames, tau, 0)[0];
+            }
+        }
+        long directTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int p = 0; p < pixels; p++) {
+            linear.correlate(series[p], frames, maxTau);
+            for (int tau = 1; tau <= maxTau; tau++) {
+                sink += linear.getG2(actual, tau)[0];
+            }
+        }
+        long fftTime = System.nanoTime() - start;
+
+        System.out.println(pixels + " pixels, " + frames + " frames, " + 
+                maxTau + " taus (" + sink + ")");
+        System.out.println("Direct sums : " + (directTime / pixels / 1000) + 
+                " us/pixel");
+        System.out.println("FFT         : " + (fftTime / pixels / 1000) + 
+                " us/pixel");
+    }
+}
@@ -0,0 +1,138 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.benchmark;
+
+import gov.anl.aps.xpcs.multitau.G2;
+import gov.anl.aps.xpcs.multitau.MultiTauCorrelator;
+
+import java.util.Random;
+
+/**
+ * Compare the per pixel cost of {@link MultiTauCorrelator} with the 
+ * smoothing and rescanning of {@link G2}. MultiTauCorrelatorTest checks 
+ * that both give the same G2.
+ * 
+ * Usage: MultiTauBenchmark [frames dpl pixels]
+ */
+public class MultiTauBenchmark {
+
+    public static void main(String args[]) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int dpl = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int pixels = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        Random generator = new Random(1);
+
+        double series[][] = new double[pixels][frames];
+        for (int p = 0; p < pixels; p++) {
+            for (int i = 0; i < frames; i++) {
+                series[p][i] = generator.nextInt(3);
+            }
+        }
+
+        MultiTauCorrelator correlator = new MultiTauCorrelator(dpl, 
+                G2.calculateLevelMax(frames, dpl));
+        double work[] = new double[frames];
+        double result[] = new double[3];
+        double sink = 0;
+
+        long start = System.nanoTime();
+        for (int p = 0; p < pixels; p++) {
+            System.arraycopy(series[p], 0, work, 0, frames);
+            sink += run(work, frames, dpl, null, result);
+        }
+        long rescanTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int p = 0; p < pixels; p++) {
+            sink += run(series[p], frames, dpl, correlator, result);
+        }
+        long streamTime = System.nanoTime() - start;
+
+        System.out.println(pixels + " pixels, " + frames + " frames, dpl " + 
+                dpl + " (" + sink + ")");
+        System.out.println("Smooth and rescan : " + (rescanTime / pixels / 1000) + 
+                " us/pixel");
+        System.out.println("Register cascade  : " + (streamTime / pixels / 1000) + 
+                " us/pixel");
+    }
+
+    private static double run(double intensities[], int n, int dpl, 
+            MultiTauCorrelator correlator, double result[]) {
+        double sum = 0;
+        if (correlator != null) {
+            correlator.correlate(intensities, n);
+        }
+        int maxLevel = G2.calculateLevelMax(n, dpl);
+        int tau = 1;
+        for (int level = 0; level <= maxLevel; level++) {
+            int tauIncrement = (int) Math.pow(2, level);
+            if (correlator == null) {
+                G2.smooth(intensities, n, tauIncrement);
+            }
+            int dplCount = G2.calculateDelayCount(dpl, level);
+            for (int delayIndex = 0; delayIndex < dplCount; delayIndex++) {
+                if (isOddFrame(tau + tauIncrement, level, n)) {
+                    break;
+                }
+                if (correlator != null) {
+                    correlator.getG2(result, tau, level);
+                } else {
+                    G2.computeG2(intensities, result, n, tau, level);
+                }
+                sum += result[0];
+                tau += tauIncrement;
+            }
+        }
+        return sum;
+    }
+
+    private static boolean isOddFrame(int lastframe, int level, int frameCount) {
+        int fc = frameCount % 2 == 0 || level == 0 ? frameCount : 
+                                                     frameCount - 1;
+        return (lastframe > fc);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.benchmark;
+
+import gov.anl.aps.xpcs.multitau.TwoTimeAccumulator;
+import gov.anl.aps.xpcs.multitau.TwoTimeStore;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Time the pixel by pixel two-time update of the two-time reducer against 
+ * {@link TwoTimeAccumulator}, single and multi threaded and adding sparse 
+ * pixels from their non zero frames. TwoTimeAccumulatorTest checks that 
+ * every element of the result is identical.
+ * 
+ * Usage: TwoTimeBenchmark [frames pixels blockPixels threads rounds 
+ *  occupancy sparseOccupancy]
+ * 
+ * occupancy is the fraction of non zero frames of the generated series, 
+ * sparseOccupancy the threshold of the sparse update.
+ */
+public class TwoTimeBenchmark {
+
+    public static void main(String args[]) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int pixels = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        int blockPixels = args.length > 2 ? Integer.parseInt(args[2]) : 128;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+        int rounds = args.length > 4 ? Integer.parseInt(args[4]) : 3;
+        double occupancy = args.length > 5 ? 
+                Double.parseDouble(args[5]) : 0.75;
+        double sparseOccupancy = args.length > 6 ? 
+                Double.parseDouble(args[6]) : 0.25;
+
+        Random generator = new Random(1);
+        double series[][] = new double[pixels][frames];
+        for (int p = 0; p < pixels; p++) {
+            for (int i = 0; i < frames; i++) {
+                if (generator.nextDouble() < occupancy) {
+                    series[p][i] = 1 + generator.nextInt(3) * 
+                            (0.5 + generator.nextDouble());
+                }
+            }
+        }
+
+        double expected[] = new double[frames * frames];
+        double single[] = new double[frames * frames];
+        double parallel[] = new double[frames * frames];
+        double sparse[] = new double[frames * frames];
+        TwoTimeStore sparseStore = TwoTimeStore.wrap(sparse);
+        TwoTimeAccumulator singleBlock = new TwoTimeAccumulator(frames, 
+                blockPixels, 1);
+        TwoTimeAccumulator parallelBlock = new TwoTimeAccumulator(frames, 
+                blockPixels, threads);
+        TwoTimeAccumulator sparseBlock = new TwoTimeAccumulator(frames, 
+                blockPixels, 1);
+        sparseBlock.setSparseOccupancy(sparseOccupancy);
+
+        // Best of several rounds, the first ones warm up the JIT.
+        long pixelBest = Long.MAX_VALUE;
+        long singleBest = Long.MAX_VALUE;
+        long parallelBest = Long.MAX_VALUE;
+        long sparseBest = Long.MAX_VALUE;
+        for (int round = 0; round < rounds; round++) {
+            Arrays.fill(expected, 0.0d);
+            Arrays.fill(single, 0.0d);
+            Arrays.fill(parallel, 0.0d);
+            Arrays.fill(sparse, 0.0d);
+            
+            long start = System.nanoTime();
+            for (int p = 0; p < pixels; p++) {
+                update(series[p], expected, frames);
+            }
+            pixelBest = Math.min(pixelBest, System.nanoTime() - start);
+            
+            singleBest = Math.min(singleBest, 
+                    accumulate(singleBlock, series, single));
+            parallelBest = Math.min(parallelBest, 
+                    accumulate(parallelBlock, series, parallel));
+            
+            start = System.nanoTime();
+            for (int p = 0; p < pixels; p++) {
+                sparseBlock.add(series[p], sparseStore);
+            }
+            sparseBlock.flush(sparseStore);
+            sparseBest = Math.min(sparseBest, System.nanoTime() - start);
+        }
+        singleBlock.close();
+        parallelBlock.close();
+        sparseBlock.close();
+
+        System.out.println("frames " + frames + ", pixels " + pixels + 
+                ", block " + blockPixels + ", occupancy " + occupancy);
+        System.out.printf("per pixel       %8.1f ms%n", pixelBest / 1e6);
+        System.out.printf("block, 1 thread %8.1f ms (%.2fx)%n", 
+                singleBest / 1e6, (double) pixelBest / singleBest);
+        System.out.printf("block, parallel %8.1f ms (%.2fx)%n", 
+                parallelBest / 1e6, (double) pixelBest / parallelBest);
+        System.out.printf("sparse < %.2f   %8.1f ms (%.2fx)%n", 
+                sparseOccupancy, sparseBest / 1e6, 
+                (double) pixelBest / sparseBest);
+    }
+
+    private static long accumulate(TwoTimeAccumulator block, 
+            double[][] series, double[] result) {
+        long start = System.nanoTime();
+        for (int p = 0; p < series.length; p++) {
+            if (block.add(series[p])) {
+                block.flush(result);
+            }
+        }
+        block.flush(result);
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * The pixel by pixel update of the two-time reducer.
+     */
+    private static void update(double[] intensities, double[] result, 
+            int frameCount) {
+        int index = 1;
+        for (int i = 0; i < intensities.length; i++) {
+            if (intensities[i] == 0) {
+                index += ((frameCount - 1) - i);
+                continue;
+            }
+            for (int j = i + 1; j < intensities.length; j++) {
+                result[index] += intensities[i] * intensities[j];
+                index++;
+            }
+        }
+    }
+}
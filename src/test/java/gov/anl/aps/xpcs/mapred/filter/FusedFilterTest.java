@@ -0,0 +1,198 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.mapred.filter;
+
+import static org.junit.Assert.assertEquals;
+
+import gov.anl.aps.xpcs.mapred.io.Frame;
+import gov.anl.aps.xpcs.util.DarkImage;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * {@link FusedFilter} replaces the chained FlatFieldFilter, DarkImageFilter,
+ * BinningFilter and QMapFilter, and must leave every frame exactly as the 
+ * chain does.
+ */
+public class FusedFilterTest {
+
+    @Test
+    public void testDense() {
+        verify(64, 64, 1, 1, false);
+    }
+
+    @Test
+    public void testSparse() {
+        verify(64, 64, 1, 1, true);
+    }
+
+    /**
+     * Bins that tile the frame, and bins that leave a remainder of rows and 
+     *  columns, binned in a single pass.
+     */
+    @Test
+    public void testRegularBins() {
+        verify(64, 64, 2, 2, false);
+        verify(64, 64, 2, 2, true);
+        verify(100, 67, 3, 5, false);
+        verify(100, 67, 3, 5, true);
+        verify(50, 40, 4, 1, false);
+    }
+
+    /**
+     * Widths that are not a multiple of the bin width. Except for the first,
+     *  Binning.bin wraps bins across rows in these layouts and overwrites 
+     *  pixels it still has to read, so the fused filter bins in place.
+     */
+    @Test
+    public void testIrregularBins() {
+        verify(23, 9, 5, 3, false);
+        verify(8, 6, 3, 2, false);
+        verify(8, 6, 3, 2, true);
+        verify(24, 12, 5, 3, false);
+        verify(24, 12, 5, 3, true);
+    }
+
+    private static void verify(int width, int height, int xbin, int ybin, 
+            boolean sparse) {
+        int pixels = width * height;
+        int binnedPixels = (width / xbin) * (height / ybin);
+        Random generator = new Random(pixels * 31 + xbin * 7 + ybin);
+
+        // Fractional flat field values exercise the int sums of binning.
+        double flat[] = new double[pixels];
+        double darkAvg[] = new double[pixels];
+        double darkStd[] = new double[pixels];
+        for (int i = 0; i < pixels; i++) {
+            flat[i] = 0.5 + generator.nextDouble();
+            darkAvg[i] = generator.nextDouble() * 2;
+            darkStd[i] = generator.nextDouble();
+        }
+
+        // Roughly 10% of the pixels are outside of any partition.
+        HashSet<Integer> maskSet = new HashSet<Integer>();
+        BitSet maskBits = new BitSet(binnedPixels);
+        for (int i = 0; i < binnedPixels; i++) {
+            if (generator.nextInt(10) == 0) {
+                maskSet.add(i);
+                maskBits.set(i);
+            }
+        }
+
+        DarkImage dark = DarkImage.initFromImages(darkAvg, darkStd, 1.0f, 1.0f);
+
+        // The chain FilterMain builds when the fused filter is disabled.
+        ArrayList<Filter> chain = new ArrayList<Filter>();
+        chain.add(new FlatFieldFilter(flat));
+        if (!sparse) {
+            chain.add(new DarkImageFilter(dark));
+        }
+        if (xbin > 1 || ybin > 1) {
+            chain.add(new BinningFilter(xbin, ybin));
+        }
+        chain.add(new QMapFilter(maskSet));
+
+        FusedFilter fused = new FusedFilter(flat, sparse ? null : dark, 
+                xbin, ybin, maskBits);
+
+        Frame chained = new Frame(width, height, 0);
+        Frame single = new Frame(width, height, 0);
+        int rawIndex[] = new int[pixels];
+        float rawValues[] = new float[pixels];
+
+        for (int frame = 0; frame < 4; frame++) {
+            // Every 8th pixel is hit in sparse mode.
+            int rawCount = 0;
+            for (int i = 0; i < pixels; i++) {
+                if (sparse && generator.nextInt(8) != 0) continue;
+                rawIndex[rawCount] = i;
+                rawValues[rawCount] = generator.nextInt(10);
+                rawCount++;
+            }
+
+            load(chained, rawIndex, rawValues, rawCount, sparse, frame);
+            for (Filter filter : chain) {
+                filter.apply(chained);
+            }
+
+            load(single, rawIndex, rawValues, rawCount, sparse, frame);
+            fused.apply(single);
+
+            String what = width + "x" + height + " bin " + xbin + "x" + 
+                    ybin + (sparse ? " sparse" : " dense") + ", frame " + 
+                    frame;
+            assertEquals(what, chained.isSparse(), single.isSparse());
+            assertEquals(what, chained.getPixelCounts(), single.getPixelCounts());
+            assertEquals(what, Double.doubleToLongBits(chained.getFrameSum()), 
+                    Double.doubleToLongBits(single.getFrameSum()));
+            for (int i = 0; i < chained.getPixelCounts(); i++) {
+                assertEquals(what + ", pixel " + i, 
+                        chained.getIndices()[i], single.getIndices()[i]);
+                assertEquals(what + ", pixel " + i, 
+                        Float.floatToIntBits(chained.getPixels()[i]), 
+                        Float.floatToIntBits(single.getPixels()[i]));
+            }
+        }
+    }
+
+    private static void load(Frame f, int rawIndex[], float rawValues[], 
+            int rawCount, boolean sparse, int frame) {
+        int index[] = new int[rawIndex.length];
+        float values[] = new float[rawValues.length];
+        System.arraycopy(rawValues, 0, values, 0, rawCount);
+        if (sparse) {
+            System.arraycopy(rawIndex, 0, index, 0, rawCount);
+            f.setSparseImage(index, values, rawCount, frame, 0, 0);
+        } else {
+            f.setImage(index, values, rawCount, frame, 0, 0);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.mapred.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapred.JobConf;
+import org.junit.Test;
+
+/**
+ * The shuffle keys compare serialized bytes and hash without allocating. 
+ * Check them against compareTo, compareNaturalKey and HashCodeBuilder.
+ */
+public class ShuffleKeyTest {
+
+    private static final int KEYS = 20000;
+
+    /**
+     * Serialized keys with negative q values, repeated q values with 
+     *  different pixels, and identical neighbours.
+     */
+    private QMapKey[] keys = new QMapKey[KEYS];
+
+    private int offsets[] = new int[KEYS + 1];
+
+    private byte[] bytes = null;
+
+    public ShuffleKeyTest() throws IOException {
+        Random generator = new Random(1);
+        DataOutputBuffer buffer = new DataOutputBuffer();
+
+        for (int i = 0; i < KEYS; i++) {
+            short q = (short) (generator.nextInt(64) - 8);
+            int pixel = generator.nextInt(1 << 20) - (1 << 10);
+
+            if (i % 7 == 0) {
+                q = Short.MIN_VALUE;
+            } else if (i % 5 == 0) {
+                q = Short.MAX_VALUE;
+            } else if (i > 0 && i % 3 == 0) {
+                q = keys[i - 1].getQ();
+                if (i % 2 == 0) {
+                    pixel = keys[i - 1].getPixelIndex();
+                }
+            }
+
+            keys[i] = new QMapKey(q, pixel);
+            offsets[i] = buffer.getLength();
+            keys[i].write(buffer);
+        }
+        offsets[KEYS] = buffer.getLength();
+        bytes = buffer.getData();
+    }
+
+    @Test
+    public void testSortComparator() {
+        CompositeKeyComparator comparator = new CompositeKeyComparator();
+
+        for (int i = 0; i < KEYS; i++) {
+            int j = (i * 31 + 1) % KEYS;
+            assertEquals("keys " + keys[i] + " and " + keys[j],
+                    Integer.signum(keys[i].compareTo(keys[j])),
+                    Integer.signum(compare(comparator, i, j)));
+            assertEquals(0, compare(comparator, i, i));
+        }
+    }
+
+    @Test
+    public void testGroupingComparator() {
+        NaturalKeyGroupingComparator comparator = new NaturalKeyGroupingComparator();
+
+        for (int i = 0; i < KEYS; i++) {
+            int j = (i * 31 + 1) % KEYS;
+            assertEquals("keys " + keys[i] + " and " + keys[j],
+                    Integer.signum(keys[i].compareNaturalKey(keys[j])),
+                    Integer.signum(compare(comparator, i, j)));
+        }
+    }
+
+    @Test
+    public void testHashCodes() {
+        for (int i = 0; i < KEYS; i++) {
+            QMapKey k = keys[i];
+            assertEquals(new HashCodeBuilder().append(k.getQ()).toHashCode(), 
+                    k.hashCode());
+
+            PixelKey p = new PixelKey(k.getQ(), (short) k.getPixelIndex());
+            assertEquals(new HashCodeBuilder().append(p.getX())
+                    .append(p.getY()).toHashCode(), p.hashCode());
+
+            G2Key g = new G2Key(k.getQ(), (short) k.getPixelIndex(), 
+                    k.getPixelIndex());
+            assertEquals(new HashCodeBuilder().append(g.getX())
+                    .append(g.getY()).append(g.getTau()).toHashCode(), 
+                    g.hashCode());
+
+            PartitionKey pk = new PartitionKey(k.getQ(), k.getPixelIndex());
+            assertEquals(new HashCodeBuilder().append(pk.getTau())
+                    .append(pk.getDynamicPartition()).toHashCode(), 
+                    pk.hashCode());
+        }
+    }
+
+    @Test
+    public void testPartitioner() {
+        String[] bins = {"12.0", "3.0", "40.0", "7.0", "0.0"};
+        JobConf conf = new JobConf();
+        conf.setStrings("xpcs.qmap.binsToProcess", bins);
+
+        NaturalKeyPartitioner partitioner = new NaturalKeyPartitioner();
+        partitioner.configure(conf);
+
+        for (int partitions = 1; partitions <= bins.length + 1; partitions++) {
+            for (int i = 0; i < bins.length; i++) {
+                short q = Short.parseShort(bins[i].split("\\.")[0]);
+                assertEquals(i % partitions, partitioner.getPartition(
+                        new QMapKey(q, i), null, partitions));
+            }
+
+            // Bins outside the process list still land on a valid partition.
+            assertEquals(41 % partitions, partitioner.getPartition(
+                    new QMapKey((short) 41, 0), null, partitions));
+            int part = partitioner.getPartition(
+                    new QMapKey((short) -5, 0), null, partitions);
+            assertTrue(part >= 0 && part < partitions);
+        }
+    }
+
+    private int compare(WritableComparator comparator, int i, int j) {
+        return comparator.compare(bytes, offsets[i], offsets[i + 1] - offsets[i],
+                bytes, offsets[j], offsets[j + 1] - offsets[j]);
+    }
+}
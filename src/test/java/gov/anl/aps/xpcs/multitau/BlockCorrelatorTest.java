@@ -0,0 +1,166 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.multitau;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * {@link BlockCorrelator} must give every pixel of a block the same G2, bit 
+ * for bit, as the per pixel smoothing and {@link G2#computeG2}.
+ */
+public class BlockCorrelatorTest {
+
+    @Test
+    public void testFullBlocks() {
+        for (int dpl : new int[] {1, 4, 8}) {
+            for (int frames : new int[] {2, 9, 100, 1001}) {
+                verify(frames, dpl, 16, 32);
+            }
+        }
+    }
+
+    /**
+     * The last block of a q-bin is flushed before it is full, and its 
+     *  staged pixels are not a multiple of the staging width.
+     */
+    @Test
+    public void testPartialBlocks() {
+        for (int pixels : new int[] {1, 5, 13, 37}) {
+            verify(257, 4, 16, pixels);
+            verify(256, 2, 3, pixels);
+        }
+    }
+
+    @Test
+    public void testCapacity() {
+        // Bounded by the pixel limit.
+        assertEquals(128, BlockCorrelator.getCapacity(1000, 128, 64L << 20));
+        // Bounded by the memory limit, 8 bytes per frame and pixel.
+        assertEquals(100, BlockCorrelator.getCapacity(1000, 128, 800000L));
+        assertEquals(99, BlockCorrelator.getCapacity(1000, 128, 799999L));
+        // Never less than one pixel.
+        assertEquals(1, BlockCorrelator.getCapacity(1000, 128, 10L));
+        assertEquals(1, BlockCorrelator.getCapacity(1000, 0, 64L << 20));
+        assertEquals(128, BlockCorrelator.getCapacity(0, 128, 64L << 20));
+
+        // A block sized by the memory limit still matches per pixel G2.
+        int frames = 500;
+        int capacity = BlockCorrelator.getCapacity(frames, 128, 7L * 8 * frames);
+        assertEquals(7, capacity);
+        verify(frames, 4, capacity, 20);
+    }
+
+    /**
+     * Correlate random pixels in blocks of capacity, the way G2Reducer does, 
+     *  and compare every tau of every pixel with the per pixel results.
+     */
+    private static void verify(int frames, int dpl, int capacity, int pixels) {
+        Random generator = new Random(frames * 31 + pixels);
+        double series[][] = new double[pixels][frames];
+        for (int p = 0; p < pixels; p++) {
+            for (int i = 0; i < frames; i++) {
+                series[p][i] = generator.nextInt(4) * 
+                        (0.5 + generator.nextDouble());
+            }
+        }
+
+        int maxLevel = G2.calculateLevelMax(frames, dpl);
+        BlockCorrelator block = new BlockCorrelator(dpl, maxLevel, frames, 
+                capacity);
+
+        int first = 0;
+        for (int p = 0; p < pixels; p++) {
+            assertEquals(p - first, block.add(series[p]));
+            if (block.isFull() || p == pixels - 1) {
+                block.correlate();
+                assertEquals(p - first + 1, block.getCount());
+                for (int q = 0; q < block.getCount(); q++) {
+                    compare(block, q, series[first + q], frames, dpl, maxLevel);
+                }
+                block.clear();
+                first = p + 1;
+            }
+        }
+    }
+
+    private static void compare(BlockCorrelator block, int pixel, 
+            double series[], int frames, int dpl, int maxLevel) {
+        double work[] = series.clone();
+        double expected[] = new double[3];
+        double actual[] = new double[3];
+
+        int tau = 1;
+        for (int level = 0; level <= maxLevel; level++) {
+            int tauIncrement = 1 << level;
+            G2.smooth(work, frames, tauIncrement);
+            int dplCount = G2.calculateDelayCount(dpl, level);
+            for (int d = 0; d < dplCount; d++) {
+                if (isOddFrame(tau + tauIncrement, level, frames)) {
+                    break;
+                }
+                G2.computeG2(work, expected, frames, tau, level);
+                block.getG2(actual, pixel, tau, level);
+                for (int i = 0; i < 3; i++) {
+                    assertEquals(frames + " frames, dpl " + dpl + ", pixel " + 
+                            pixel + ", tau " + tau + ", term " + i, 
+                            Double.doubleToLongBits(expected[i]), 
+                            Double.doubleToLongBits(actual[i]));
+                }
+                tau += tauIncrement;
+            }
+        }
+    }
+
+    private static boolean isOddFrame(int lastframe, int level, int frameCount) {
+        int fc = frameCount % 2 == 0 || level == 0 ? frameCount : 
+                                                     frameCount - 1;
+        return (lastframe > fc);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.multitau;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * {@link LinearTauCorrelator} computes the level 0 sums of 
+ * {@link G2#computeG2(double[], double[], int, int, int)} through an FFT.
+ * Check it against the direct sums for every tau.
+ */
+public class LinearTauCorrelatorTest {
+
+    private static final double TOLERANCE = 1e-9;
+
+    private static final int LENGTHS[] = 
+        {1, 2, 3, 5, 16, 17, 100, 1000, 1023, 1024, 4099};
+
+    @Test
+    public void testDirectSums() {
+        Random generator = new Random(1);
+        LinearTauCorrelator linear = new LinearTauCorrelator();
+
+        for (int n : LENGTHS) {
+            double series[] = randomSeries(generator, n);
+            int maxTau = LinearTauCorrelator.getMaxTau(n, 0);
+            linear.correlate(series, n, maxTau);
+            verify(linear, series, n, maxTau);
+        }
+    }
+
+    /**
+     * Explicit tau limits change the padding, and one correlator is reused 
+     *  for series of different lengths.
+     */
+    @Test
+    public void testMaxTau() {
+        Random generator = new Random(2);
+        LinearTauCorrelator linear = new LinearTauCorrelator();
+
+        for (int n : LENGTHS) {
+            double series[] = randomSeries(generator, n + 7);
+            for (int limit : new int[] {1, 10, n - 1, n + 5}) {
+                int maxTau = LinearTauCorrelator.getMaxTau(n, limit);
+                linear.correlate(series, n, maxTau);
+                verify(linear, series, n, maxTau);
+            }
+        }
+    }
+
+    @Test
+    public void testGetMaxTau() {
+        assertEquals(0, LinearTauCorrelator.getMaxTau(1, 0));
+        assertEquals(1, LinearTauCorrelator.getMaxTau(3, 0));
+        assertEquals(500, LinearTauCorrelator.getMaxTau(1000, 0));
+        assertEquals(10, LinearTauCorrelator.getMaxTau(1000, 10));
+        assertEquals(999, LinearTauCorrelator.getMaxTau(1000, 5000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTauOutOfRange() {
+        LinearTauCorrelator linear = new LinearTauCorrelator();
+        double series[] = randomSeries(new Random(3), 100);
+        linear.correlate(series, 100, 50);
+        linear.getG2(new double[3], 51);
+    }
+
+    private static double[] randomSeries(Random generator, int n) {
+        double series[] = new double[n];
+        for (int i = 0; i < n; i++) {
+            series[i] = generator.nextInt(5) * (0.5 + generator.nextDouble());
+        }
+        return series;
+    }
+
+    private static void verify(LinearTauCorrelator linear, double series[], 
+            int n, int maxTau) {
+        double expected[] = new double[3];
+        double actual[] = new double[3];
+
+        for (int tau = 1; tau <= maxTau; tau++) {
+            G2.computeG2(series, expected, n, tau, 0);
+            linear.getG2(actual, tau);
+            for (int i = 0; i < 3; i++) {
+                assertEquals(n + " frames, tau " + tau + ", term " + i, 
+                        expected[i], actual[i], 
+                        TOLERANCE * Math.max(1.0d, Math.abs(expected[i])));
+            }
+        }
+    }
+}
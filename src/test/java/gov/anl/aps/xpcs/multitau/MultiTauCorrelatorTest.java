@@ -0,0 +1,172 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.multitau;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * {@link MultiTauCorrelator} must reproduce the smoothing and rescanning of 
+ * {@link G2} bit for bit, tau by tau, whether a series is correlated at once 
+ * or streamed frame by frame.
+ */
+public class MultiTauCorrelatorTest {
+
+    /**
+     * Odd, even and short series, across chunk boundaries.
+     */
+    private static final int LENGTHS[] = 
+        {1, 2, 7, 8, 9, 33, 100, 1023, 1024, 1025, 4097};
+
+    @Test
+    public void testCorrelate() {
+        Random generator = new Random(1);
+
+        for (int dpl = 1; dpl <= 8; dpl++) {
+            for (int n : LENGTHS) {
+                double series[] = randomSeries(generator, n);
+                MultiTauCorrelator correlator = new MultiTauCorrelator(dpl, 
+                        G2.calculateLevelMax(n, dpl));
+                correlator.correlate(series, n);
+
+                verify(series, dpl, correlator);
+            }
+        }
+    }
+
+    @Test
+    public void testStreaming() {
+        Random generator = new Random(2);
+
+        for (int dpl = 1; dpl <= 8; dpl++) {
+            for (int n : LENGTHS) {
+                double series[] = randomSeries(generator, n);
+                MultiTauCorrelator correlator = new MultiTauCorrelator(dpl, 
+                        G2.calculateLevelMax(n, dpl));
+                for (int i = 0; i < n; i++) {
+                    correlator.add(series[i]);
+                }
+
+                verify(series, dpl, correlator);
+            }
+        }
+    }
+
+    /**
+     * The reducers size one correlator for the longest series and reuse it 
+     *  for every pixel.
+     */
+    @Test
+    public void testReuse() {
+        Random generator = new Random(3);
+        int dpl = 4;
+        MultiTauCorrelator correlator = new MultiTauCorrelator(dpl, 
+                G2.calculateLevelMax(LENGTHS[LENGTHS.length - 1], dpl));
+
+        for (int n : LENGTHS) {
+            double series[] = randomSeries(generator, n);
+            correlator.correlate(series, n);
+            verify(series, dpl, correlator);
+
+            correlator.reset();
+            for (int i = 0; i < n; i++) {
+                correlator.add(series[i]);
+            }
+            verify(series, dpl, correlator);
+        }
+    }
+
+    private static double[] randomSeries(Random generator, int n) {
+        double series[] = new double[n];
+        for (int i = 0; i < n; i++) {
+            series[i] = generator.nextInt(5);
+        }
+        return series;
+    }
+
+    /**
+     * Walk the (level, tau) pairs like the G2 reducers do, and compare the 
+     *  correlator with G2.computeG2 over the smoothed series.
+     */
+    private static void verify(double series[], int dpl, 
+            MultiTauCorrelator correlator) {
+        int n = series.length;
+        double expected[] = new double[3];
+        double actual[] = new double[3];
+        double smoothed[] = series.clone();
+
+        int maxLevel = G2.calculateLevelMax(n, dpl);
+        int tau = 1;
+        for (int level = 0; level <= maxLevel; level++) {
+            int tauIncrement = (int) Math.pow(2, level);
+            G2.smooth(smoothed, n, tauIncrement);
+            int dplCount = G2.calculateDelayCount(dpl, level);
+            for (int delayIndex = 0; delayIndex < dplCount; delayIndex++) {
+                if (isOddFrame(tau + tauIncrement, level, n)) {
+                    break;
+                }
+                G2.computeG2(smoothed, expected, n, tau, level);
+                correlator.getG2(actual, tau, level);
+                for (int i = 0; i < 3; i++) {
+                    assertEquals(n + " frames, dpl " + dpl + ", tau " + tau + 
+                            ", level " + level + ", term " + i, 
+                            Double.doubleToLongBits(expected[i]), 
+                            Double.doubleToLongBits(actual[i]));
+                }
+                tau += tauIncrement;
+            }
+        }
+    }
+
+    private static boolean isOddFrame(int lastframe, int level, int frameCount) {
+        int fc = frameCount % 2 == 0 || level == 0 ? frameCount : 
+                                                     frameCount - 1;
+        return (lastframe > fc);
+    }
+}
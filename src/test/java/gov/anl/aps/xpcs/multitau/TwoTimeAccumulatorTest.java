@@ -0,0 +1,316 @@
+/*
+* Copyright (c) 2016, UChicago Argonne, LLC. All rights reserved.
+*
+* Copyright 2016. UChicago Argonne, LLC. This software was produced 
+* under U.S. Government contract DE-AC02-06CH11357 for Argonne National 
+* Laboratory (ANL), which is operated by UChicago Argonne, LLC for the 
+* U.S. Department of Energy. The U.S. Government has rights to use, 
+* reproduce, and distribute this software.  NEITHER THE GOVERNMENT NOR 
+* UChicago Argonne, LLC MAKES ANY WARRANTY, EXPRESS OR IMPLIED, OR 
+* ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If software is 
+* modified to produce derivative works, such modified software should 
+* be clearly marked, so as not to confuse it with the version available 
+* from ANL.
+
+* Additionally, redistribution and use in source and binary forms, with 
+* or without modification, are permitted provided that the following 
+* conditions are met:
+*
+*   * Redistributions of source code must retain the above copyright 
+*     notice, this list of conditions and the following disclaimer. 
+*
+*   * Redistributions in binary form must reproduce the above copyright 
+*     notice, this list of conditions and the following disclaimer in 
+*     the documentation and/or other materials provided with the 
+*     distribution. 
+*
+*   * Neither the name of UChicago Argonne, LLC, Argonne National 
+*      Laboratory, ANL, the U.S. Government, nor the names of its 
+*      contributors may be used to endorse or promote products derived 
+*      from this software without specific prior written permission. 
+
+* THIS SOFTWARE IS PROVIDED BY UChicago Argonne, LLC AND CONTRIBUTORS 
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL UChicago 
+* Argonne, LLC OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+* CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+* ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+* POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package gov.anl.aps.xpcs.multitau;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * {@link TwoTimeAccumulator} must give every element of the triangle, 
+ * rectangle tile and band layouts the same sum, bit for bit, as adding the 
+ * products of one pixel at a time.
+ */
+public class TwoTimeAccumulatorTest {
+
+    /**
+     * Element index of a frame pair in a layout, -1 when not stored.
+     */
+    private interface Layout {
+        long index(int i, int j);
+    }
+
+    private static final int OFFSET = 1;
+
+    @Test
+    public void testTriangle() {
+        final int frames = 700;
+        double series[][] = randomSeries(frames, 37, 1.0, 1);
+        Layout triangle = triangle(frames);
+        double expected[] = reference(series, triangle, triangleSize(frames));
+
+        // The pixel by pixel update of the two-time reducer.
+        double legacy[] = new double[expected.length];
+        for (double[] s : series) {
+            update(s, legacy, frames);
+        }
+        assertIdentical(expected, legacy);
+
+        // Blocks of 16 leave a partial block of 5 pixels.
+        TwoTimeAccumulator accumulator = new TwoTimeAccumulator(frames, 
+                OFFSET, 16, 1);
+        assertIdentical(expected, accumulate(accumulator, series, 
+                expected.length));
+    }
+
+    @Test
+    public void testTriangleThreads() {
+        final int frames = 1500;
+        double series[][] = randomSeries(frames, 21, 1.0, 2);
+        double expected[] = reference(series, triangle(frames), 
+                triangleSize(frames));
+
+        for (int threads : new int[] {2, 3, 0}) {
+            TwoTimeAccumulator accumulator = new TwoTimeAccumulator(frames, 
+                    OFFSET, 8, threads);
+            assertIdentical(expected, accumulate(accumulator, series, 
+                    expected.length));
+        }
+    }
+
+    @Test
+    public void testRectangle() {
+        final int rows = 300;
+        final int columns = 170;
+        double series[][] = randomSeries(rows + columns, 45, 1.0, 3);
+        Layout rectangle = new Layout() {
+            public long index(int i, int j) {
+                if (i >= rows || j < rows) return -1;
+                return OFFSET + (long) i * columns + (j - rows);
+            }
+        };
+        double expected[] = reference(series, rectangle, 
+                OFFSET + rows * columns);
+
+        for (int threads : new int[] {1, 3}) {
+            TwoTimeAccumulator accumulator = new TwoTimeAccumulator(rows, 
+                    columns, OFFSET, 16, threads);
+            assertIdentical(expected, accumulate(accumulator, series, 
+                    expected.length));
+        }
+    }
+
+    @Test
+    public void testBand() {
+        final int frames = 600;
+        final int band = 70;
+        double series[][] = randomSeries(frames, 40, 1.0, 4);
+        Layout layout = new Layout() {
+            public long index(int i, int j) {
+                if (j <= i || j > i + band) return -1;
+                return OFFSET + (long) i * band + (j - i - 1);
+            }
+        };
+        double expected[] = reference(series, layout, 
+                OFFSET + frames * band);
+
+        for (int threads : new int[] {1, 3}) {
+            TwoTimeAccumulator accumulator = TwoTimeAccumulator.forBand(
+                    frames, band, OFFSET, 16, threads);
+            assertIdentical(expected, accumulate(accumulator, series, 
+                    expected.length));
+        }
+    }
+
+    /**
+     * Pixels under the occupancy threshold are added from their non zero 
+     *  frames, in between staged pixels. Empty pixels are skipped.
+     */
+    @Test
+    public void testSparse() {
+        final int frames = 500;
+        double series[][] = randomSeries(frames, 60, 0.05, 5);
+        for (int p = 0; p < series.length; p += 7) {
+            Arrays.fill(series[p], 0.0d);
+        }
+
+        double expected[] = reference(series, triangle(frames), 
+                triangleSize(frames));
+        TwoTimeAccumulator accumulator = new TwoTimeAccumulator(frames, 
+                OFFSET, 16, 1);
+        accumulator.setSparseOccupancy(0.25);
+        assertIdentical(expected, accumulateSparse(accumulator, series, 
+                expected.length));
+
+        accumulator = new TwoTimeAccumulator(frames, OFFSET, 16, 3);
+        accumulator.setSparseOccupancy(0.25);
+        assertIdentical(expected, accumulateSparse(accumulator, series, 
+                expected.length));
+
+        final int rows = 200;
+        final int columns = frames - rows;
+        Layout rectangle = new Layout() {
+            public long index(int i, int j) {
+                if (i >= rows || j < rows) return -1;
+                return OFFSET + (long) i * columns + (j - rows);
+            }
+        };
+        expected = reference(series, rectangle, OFFSET + rows * columns);
+        accumulator = new TwoTimeAccumulator(rows, columns, OFFSET, 16, 1);
+        accumulator.setSparseOccupancy(0.25);
+        assertIdentical(expected, accumulateSparse(accumulator, series, 
+                expected.length));
+
+        final int band = 50;
+        Layout layout = new Layout() {
+            public long index(int i, int j) {
+                if (j <= i || j > i + band) return -1;
+                return OFFSET + (long) i * band + (j - i - 1);
+            }
+        };
+        expected = reference(series, layout, OFFSET + frames * band);
+        accumulator = TwoTimeAccumulator.forBand(frames, band, OFFSET, 16, 1);
+        accumulator.setSparseOccupancy(0.25);
+        assertIdentical(expected, accumulateSparse(accumulator, series, 
+                expected.length));
+    }
+
+    private static Layout triangle(final int frames) {
+        return new Layout() {
+            public long index(int i, int j) {
+                if (j <= i) return -1;
+                return OFFSET + (long) i * (2 * frames - i - 1) / 2 + 
+                        (j - i - 1);
+            }
+        };
+    }
+
+    private static int triangleSize(int frames) {
+        return (int) (OFFSET + TwoTimeAccumulator.getTriangleSize(frames));
+    }
+
+    /**
+     * Series with a random fraction of non zero frames per pixel, at least 
+     *  minOccupancy.
+     */
+    private static double[][] randomSeries(int frames, int pixels, 
+            double minOccupancy, long seed) {
+        Random generator = new Random(seed);
+        double series[][] = new double[pixels][frames];
+        for (int p = 0; p < pixels; p++) {
+            double occupancy = minOccupancy + 
+                    (1 - minOccupancy) * generator.nextDouble();
+            for (int i = 0; i < frames; i++) {
+                if (generator.nextDouble() < occupancy) {
+                    series[p][i] = 1 + generator.nextInt(3) * 
+                            (0.5 + generator.nextDouble());
+                }
+            }
+        }
+        return series;
+    }
+
+    /**
+     * Add the products of every stored frame pair, one pixel at a time.
+     */
+    private static double[] reference(double[][] series, Layout layout, 
+            int size) {
+        double result[] = new double[size];
+        for (double[] s : series) {
+            for (int i = 0; i < s.length; i++) {
+                if (s[i] == 0) continue;
+                for (int j = i + 1; j < s.length; j++) {
+                    long k = layout.index(i, j);
+                    if (k >= 0) {
+                        result[(int) k] += s[i] * s[j];
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The pixel by pixel update of the two-time reducer.
+     */
+    private static void update(double[] intensities, double[] result, 
+            int frameCount) {
+        int index = 1;
+        for (int i = 0; i < intensities.length; i++) {
+            if (intensities[i] == 0) {
+                index += ((frameCount - 1) - i);
+                continue;
+            }
+            for (int j = i + 1; j < intensities.length; j++) {
+                result[index] += intensities[i] * intensities[j];
+                index++;
+            }
+        }
+    }
+
+    private static double[] accumulate(TwoTimeAccumulator accumulator, 
+            double[][] series, int size) {
+        double result[] = new double[size];
+        try {
+            for (double[] s : series) {
+                if (accumulator.add(s)) {
+                    accumulator.flush(result);
+                }
+            }
+            accumulator.flush(result);
+        } finally {
+            accumulator.close();
+        }
+        return result;
+    }
+
+    private static double[] accumulateSparse(TwoTimeAccumulator accumulator, 
+            double[][] series, int size) {
+        double result[] = new double[size];
+        TwoTimeStore store = TwoTimeStore.wrap(result);
+        try {
+            for (double[] s : series) {
+                accumulator.add(s, store);
+            }
+            accumulator.flush(store);
+        } finally {
+            accumulator.close();
+        }
+        return result;
+    }
+
+    private static void assertIdentical(double[] expected, double[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int k = 0; k < expected.length; k++) {
+            assertEquals("element " + k, 
+                    Double.doubleToLongBits(expected[k]), 
+                    Double.doubleToLongBits(actual[k]));
+        }
+    }
+}